@@ -0,0 +1,410 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTables;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTables.Mode;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.Tablebase;
+import uk.ac.bris.cs.scotlandyard.model.TicketReachability;
+
+/**
+ * Iterative deepening alpha-beta for MrX, with the detectives minimising together (paranoid)
+ * and seeing MrX at all times.
+ * <br>
+ * Depth is counted in rounds: an MrX move and the whole detective round after it are one ply
+ * of depth. The detectives move one at a time in the order of
+ * {@link SearchState#generateRoundMoves(MoveList, boolean)}, so the same round is not searched
+ * once per ordering and a refuting round is found without listing all the others. Below the
+ * root MrX does not consider double moves, nor secret moves that go where an ordinary ticket
+ * goes. Leaves are scored by how far the detectives are from MrX; a detective low on tickets
+ * is as far as its {@link TicketReachability} budget allows.
+ * <br>
+ * Every thread runs the whole iterative deepening on its own copy of the state (Lazy SMP);
+ * they share work only through a lockless {@link TranspositionTable}, and half of them start a
+ * ply deeper so that they fill the table ahead of the others. The deepest completed iteration
+ * of any thread is played, and published as a candidate as soon as it completes.
+ * <br>
+ * Openings in an {@link OpeningBook}, on either side, and endgames a {@link Tablebase} shows MrX
+ * winning are played without a search. Other detective turns are handed to an {@link MctsAi}.
+ */
+public final class AlphaBetaAi implements Ai {
+
+	static final int WIN = 1_000_000;
+	private static final int INFINITY = WIN + 1;
+	private static final int MATE = WIN - 1000;
+	private static final int MAX_DEPTH = 64;
+	private static final int NO_MOVE = 0xF_FFFF;
+	private static final long MARGIN = TimeUnit.MILLISECONDS.toNanos(300);
+	private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+	// detectives with this many ordinary tickets or fewer are measured by what they can afford
+	private static final int FEW_TICKETS = 6;
+
+	// the best move of the deepest iteration any thread completed
+	private static final class Best {
+		int depth;
+		long move;
+		int score;
+	}
+
+	private final class Worker implements Runnable {
+		private final int id;
+		private final SearchState state;
+		private final CompiledGraph graph;
+		private final DistanceTables distances;
+		private final TicketReachability reachability;
+		private final long end;
+		private final AtomicBoolean stop;
+		private final Best best;
+		private final LongAdder nodes;
+		private final MoveList[] lists = new MoveList[MAX_DEPTH * 8];
+		private final int[][] scores = new int[MAX_DEPTH * 8][];
+		private long count;
+		private boolean stopped;
+		private long rootMove;
+
+		Worker(int id, SearchState state, long end, AtomicBoolean stop, Best best,
+		       LongAdder nodes) {
+			this.id = id;
+			this.state = state;
+			this.graph = CompiledGraph.of(state.setup());
+			this.distances = DistanceTables.of(graph);
+			this.reachability = TicketReachability.of(graph);
+			this.end = end;
+			this.stop = stop;
+			this.best = best;
+			this.nodes = nodes;
+		}
+
+		@Override public void run() {
+			try {
+				for (int depth = 1 + (id & 1); depth <= MAX_DEPTH; depth++) {
+					int score = search(depth, -INFINITY, INFINITY, 0);
+					if (stopped) return;
+					report(depth, rootMove, score);
+					// the game is decided either way, searching deeper changes nothing
+					if (Math.abs(score) >= MATE) return;
+				}
+			} finally {
+				nodes.add(count);
+			}
+		}
+
+		private void report(int depth, long move, int score) {
+			synchronized (best) {
+				if (depth <= best.depth) return;
+				best.depth = depth;
+				best.move = move;
+				best.score = score;
+			}
+		}
+
+		private int search(int depth, int alpha, int beta, int ply) {
+			if ((++count & 1023) == 0 && (stop.get() || System.nanoTime() >= end)) {
+				stop.set(true);
+				stopped = true;
+			}
+			if (stopped) return 0;
+			int winner = state.winner();
+			if (winner == SearchState.MRX) return WIN - ply;
+			if (winner == SearchState.DETECTIVES) return -WIN + ply;
+			boolean max = state.isMrXTurn();
+			if (max && depth <= 0) return evaluate();
+
+			long key = state.zobristKey();
+			long entry = table.probe(key);
+			int hint = NO_MOVE;
+			if (entry != TranspositionTable.MISS) {
+				hint = TranspositionTable.move(entry);
+				if (ply != 0 && TranspositionTable.depth(entry) >= depth) {
+					int score = fromTable(TranspositionTable.score(entry), ply);
+					switch (TranspositionTable.bound(entry)) {
+						case TranspositionTable.EXACT: return score;
+						case TranspositionTable.LOWER: if (score >= beta) return score; break;
+						case TranspositionTable.UPPER: if (score <= alpha) return score; break;
+					}
+				}
+			}
+
+			if (lists[ply] == null) lists[ply] = new MoveList();
+			MoveList moves = lists[ply];
+			moves.clear();
+			if (max) state.generateMoves(moves);
+			else state.generateRoundMoves(moves, true);
+			if (scores[ply] == null || scores[ply].length < moves.size())
+				scores[ply] = new int[Math.max(64, moves.size() * 2)];
+			int[] order = scores[ply];
+			int candidates = max ? orderMrX(moves, order, ply) : orderDetectives(moves, order);
+			if (hint < moves.size() && order[hint] != Integer.MIN_VALUE)
+				order[hint] = Integer.MAX_VALUE;
+			if (candidates == 0) return evaluate();
+
+			int childDepth = max ? depth - 1 : depth;
+			int alphaStart = alpha, betaStart = beta;
+			int bestScore = max ? -INFINITY : INFINITY;
+			int bestMove = NO_MOVE;
+			for (int n = 0; n < candidates; n++) {
+				int i = next(order, moves.size());
+				long move = moves.get(i);
+				state.make(move);
+				int score = search(childDepth, alpha, beta, ply + 1);
+				state.unmake();
+				if (stopped) return 0;
+				if (max ? score > bestScore : score < bestScore) {
+					bestScore = score;
+					bestMove = i;
+				}
+				if (max) alpha = Math.max(alpha, score);
+				else beta = Math.min(beta, score);
+				if (alpha >= beta) break;
+			}
+			int bound = bestScore >= betaStart ? TranspositionTable.LOWER :
+					bestScore <= alphaStart ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+			if (ply == 0) rootMove = moves.get(bestMove);
+			table.store(key, toTable(bestScore, ply), depth, bound, bestMove);
+			return bestScore;
+		}
+
+		// picks the highest scored move left and crosses it out
+		private int next(int[] order, int size) {
+			int best = -1;
+			for (int i = 0; i < size; i++)
+				if (order[i] != Integer.MIN_VALUE && (best == -1 || order[i] > order[best]))
+					best = i;
+			order[best] = Integer.MIN_VALUE;
+			return best;
+		}
+
+		// further from the nearest detective first; below the root no doubles, and no secret
+		// moves that an ordinary ticket could make
+		private int orderMrX(MoveList moves, int[] order, int ply) {
+			int count = 0;
+			for (int i = 0; i < moves.size(); i++) {
+				long move = moves.get(i);
+				if (ply != 0 && (PackedMove.isDouble(move) || redundantSecret(moves, move))) {
+					order[i] = Integer.MIN_VALUE;
+					continue;
+				}
+				int to = graph.index(PackedMove.finalDestination(move));
+				int nearest = DistanceTables.UNREACHABLE;
+				for (int p = 1; p < state.playerCount(); p++)
+					nearest = Math.min(nearest, distance(graph.index(state.location(p)), to));
+				order[i] = nearest * 4 - (PackedMove.isDouble(move) ? 2 : 0) -
+						(PackedMove.ticket1(move) == Ticket.SECRET ? 1 : 0);
+				count++;
+			}
+			return count;
+		}
+
+		private boolean redundantSecret(MoveList moves, long move) {
+			if (PackedMove.ticket1(move) != Ticket.SECRET) return false;
+			int destination = PackedMove.destination1(move);
+			for (int i = 0; i < moves.size(); i++) {
+				long other = moves.get(i);
+				if (!PackedMove.isDouble(other) && PackedMove.ticket1(other) != Ticket.SECRET &&
+						PackedMove.destination1(other) == destination) return true;
+			}
+			return false;
+		}
+
+		// closer to MrX first
+		private int orderDetectives(MoveList moves, int[] order) {
+			int mrX = graph.index(state.location(0));
+			for (int i = 0; i < moves.size(); i++)
+				order[i] = -distance(graph.index(PackedMove.destination1(moves.get(i))), mrX);
+			return moves.size();
+		}
+
+		private int distance(int from, int to) {
+			return distances.between(Mode.DETECTIVE, from, to);
+		}
+
+		// from MrX's side: distance to the nearest detective counts most
+		private int evaluate() {
+			int mrX = graph.index(state.location(0));
+			int nearest = DistanceTables.UNREACHABLE;
+			int total = 0;
+			for (int p = 1; p < state.playerCount(); p++) {
+				int distance = distance(graph.index(state.location(p)), mrX);
+				if (distance < 8 && fewTickets(p)) {
+					int player = p;
+					distance = reachability.minMoves(state.location(p),
+							ticket -> state.tickets(player, ticket), state.location(0));
+				}
+				nearest = Math.min(nearest, distance);
+				total += Math.min(distance, 8);
+			}
+			return Math.min(nearest, 8) * 100 + total * 10 +
+					state.tickets(0, Ticket.SECRET) * 20 + state.tickets(0, Ticket.DOUBLE) * 80;
+		}
+
+		private boolean fewTickets(int player) {
+			return state.tickets(player, Ticket.TAXI) + state.tickets(player, Ticket.BUS) +
+					state.tickets(player, Ticket.UNDERGROUND) <= FEW_TICKETS;
+		}
+	}
+
+	private final int threads;
+	private final int tableBits;
+	private final MctsAi detectives;
+	private TranspositionTable table;
+	// keys do not cover the graph or the reveal rounds, so entries are only kept for one setup
+	private GameSetup tableSetup;
+	private ExecutorService pool;
+	private volatile long nodes;
+	private volatile double nodesPerSecond;
+	private volatile int depth;
+
+	/**
+	 * Searches on every available core with a 16MB table
+	 */
+	public AlphaBetaAi() { this(Runtime.getRuntime().availableProcessors(), 20); }
+
+	/**
+	 * @param threads the number of search threads
+	 * @param tableBits log2 of the number of transposition table entries, 16 bytes each
+	 */
+	public AlphaBetaAi(int threads, int tableBits) {
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+		this.tableBits = tableBits;
+		this.detectives = new MctsAi(threads);
+	}
+
+	@Nonnull @Override public String name() { return "Alpha-beta"; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, timeoutPair, move -> {});
+	}
+
+	@Nonnull @Override public synchronized Move pickMove(@Nonnull Board board,
+	                                                     Pair<Long, TimeUnit> timeoutPair,
+	                                                     @Nonnull Consumer<Move> candidates) {
+		var moves = board.getAvailableMoves();
+		if (moves.size() == 1) return moves.iterator().next();
+		var known = OpeningBook.find(board).flatMap(book -> book.move(board));
+		if (known.isPresent()) {
+			candidates.accept(known.get());
+			return known.get();
+		}
+		if (moves.stream().noneMatch(m -> m.commencedBy().isMrX()))
+			return detectives.pickMove(board, timeoutPair, candidates);
+		known = Tablebase.find(board).flatMap(tablebase -> tablebase.winningMove(board));
+		if (known.isPresent()) {
+			candidates.accept(known.get());
+			return known.get();
+		}
+		long start = System.nanoTime();
+		long timeout = timeoutPair.right().toNanos(timeoutPair.left());
+		long end = start + timeout - Math.min(timeout / 10, MARGIN);
+		if (table == null) table = new TranspositionTable(tableBits);
+		else if (board.getSetup() != tableSetup) table.clear();
+		tableSetup = board.getSetup();
+
+		var state = SearchState.of(board);
+		var stop = new AtomicBoolean();
+		var best = new Best();
+		var counter = new LongAdder();
+		var workers = pool();
+		var futures = new ArrayList<Future<?>>(threads);
+		for (int i = 0; i < threads; i++) {
+			futures.add(workers.submit(
+					new Worker(i, state.copy(), end, stop, best, counter)));
+		}
+		int published = 0;
+		try {
+			while (System.nanoTime() < end && !futures.stream().allMatch(Future::isDone)) {
+				TimeUnit.NANOSECONDS.sleep(Math.min(POLL_INTERVAL, end - System.nanoTime()));
+				synchronized (best) {
+					if (best.depth > published) {
+						published = best.depth;
+						candidates.accept(PackedMove.decode(best.move));
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// out of time, play what we have
+			Thread.currentThread().interrupt();
+		} finally {
+			stop.set(true);
+		}
+		for (var future : futures) {
+			try {
+				Uninterruptibles.getUninterruptibly(future);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		nodes = counter.sum();
+		nodesPerSecond = nodes / Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		synchronized (best) {
+			depth = best.depth;
+			if (best.depth == 0) return moves.iterator().next();
+			Move move = PackedMove.decode(best.move);
+			return moves.stream().filter(move::equals).findFirst().orElseThrow(
+					() -> new IllegalStateException("Searched an unavailable move: " + move));
+		}
+	}
+
+	private static int toTable(int score, int ply) {
+		return score >= MATE ? score + ply : score <= -MATE ? score - ply : score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		return score >= MATE ? score - ply : score <= -MATE ? score + ply : score;
+	}
+
+	private synchronized ExecutorService pool() {
+		if (pool == null || pool.isShutdown()) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("alpha-beta-%d")
+					.setDaemon(true)
+					.build());
+		}
+		return pool;
+	}
+
+	/**
+	 * @return the nodes searched for MrX's last move
+	 */
+	public long lastNodes() { return nodes; }
+
+	/**
+	 * @return the nodes per second of MrX's last move
+	 */
+	public double lastNodesPerSecond() { return nodesPerSecond; }
+
+	/**
+	 * @return the deepest iteration completed for MrX's last move, in rounds
+	 */
+	public int lastDepth() { return depth; }
+
+	@Override public synchronized void onTerminate() {
+		detectives.onTerminate();
+		if (pool != null) pool.shutdownNow();
+	}
+
+}
@@ -0,0 +1,293 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MoveList;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * A shared information set Monte Carlo search tree.
+ * <br>
+ * Every playout starts from a determinisation, a {@link SearchState} with MrX placed at one of
+ * the stations MrX could be at, drawn uniformly. All determinisations walk the same tree: a
+ * node only offers the children that are legal in the current determinisation and counts how
+ * often each child was available, which stands in for the parent's visits in UCB. When MrX is
+ * hidden, MrX's moves are merged by what the detectives get to see (the tickets, and the
+ * destination in reveal rounds), so the tree below them is shared by every determinisation and
+ * the statistics of all of them add up to one detective decision.
+ * <br>
+ * Detective nodes only offer {@link SearchState#generateRoundMoves(MoveList, boolean)}, so
+ * the tree does not hold the same round once for every order the detectives can move in.
+ * <br>
+ * Nodes are updated with atomics only; children are kept sorted by key in an array that is
+ * replaced with a compare-and-set when new ones are found. A thread counts its visit on the way
+ * down, which is a virtual loss until its playout is in.
+ */
+final class Ismcts {
+
+	private static final long VISIT = 1L << 32;
+	private static final double EXPLORATION = 0.7;
+	// a leaf is expanded the second time a thread reaches it
+	private static final int EXPAND_VISITS = 2;
+	private static final Node[] NONE = new Node[0];
+
+	static final class Node {
+		private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+		private static final AtomicIntegerFieldUpdater<Node> AVAILABLE =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "available");
+
+		// the packed move, or what the detectives see of it for hidden MrX moves
+		final long key;
+		// whether MrX made the move into this node, wins are counted for that side
+		final boolean mrX;
+		private final AtomicLong stats = new AtomicLong();
+		private volatile int available;
+		private volatile Node[] children;
+
+		Node(long key, boolean mrX) {
+			this.key = key;
+			this.mrX = mrX;
+		}
+
+		int visits() { return (int) (stats.get() >>> 32); }
+
+		int wins() { return (int) stats.get(); }
+
+		void visit() { stats.getAndAdd(VISIT); }
+
+		void win() { stats.getAndIncrement(); }
+
+		/**
+		 * @param key the key
+		 * @return the child with the key or null
+		 */
+		Node child(long key) {
+			Node[] children = this.children;
+			if (children == null) return null;
+			int i = search(children, children.length, key);
+			return i < 0 ? null : children[i];
+		}
+
+		/**
+		 * @return the most visited child, null if there are none
+		 */
+		Node mostVisited() {
+			Node[] children = this.children;
+			Node best = null;
+			if (children == null) return null;
+			for (Node child : children)
+				if (best == null || child.visits() > best.visits()) best = child;
+			return best;
+		}
+
+		/**
+		 * @param keys the keys, sorted
+		 * @return whether every child has one of the keys
+		 */
+		boolean childrenWithin(long[] keys) {
+			Node[] children = this.children;
+			if (children == null) return true;
+			for (Node child : children)
+				if (Arrays.binarySearch(keys, child.key) < 0) return false;
+			return true;
+		}
+
+		// makes sure there is a child for every key, keys are sorted and distinct
+		private Node[] ensure(long[] keys, int count, boolean mrX) {
+			while (true) {
+				Node[] children = this.children;
+				Node[] current = children == null ? NONE : children;
+				int missing = 0;
+				for (int i = 0; i < count; i++)
+					if (search(current, current.length, keys[i]) < 0) missing++;
+				if (missing == 0 && children != null) return children;
+				var merged = new Node[current.length + missing];
+				int a = 0, b = 0, m = 0;
+				while (a < current.length || b < count) {
+					if (b == count || (a < current.length && current[a].key <= keys[b])) {
+						if (b < count && current[a].key == keys[b]) b++;
+						merged[m++] = current[a++];
+					} else {
+						merged[m++] = new Node(keys[b++], mrX);
+					}
+				}
+				if (CHILDREN.compareAndSet(this, children, merged)) return merged;
+			}
+		}
+
+		private static int search(Node[] nodes, int length, long key) {
+			int low = 0, high = length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				long midKey = nodes[mid].key;
+				if (midKey < key) low = mid + 1;
+				else if (midKey > key) high = mid - 1;
+				else return mid;
+			}
+			return -low - 1;
+		}
+	}
+
+	private final GameSetup setup;
+	private final SearchState[] determinisations;
+	private final boolean hideMrX;
+	private final Node root;
+
+	/**
+	 * @param determinisations the states to draw from, never modified; all must have the same
+	 * pieces to move
+	 * @param hideMrX whether MrX's moves are merged by what the detectives see
+	 * @param root the root, may already have statistics from an earlier search
+	 */
+	Ismcts(SearchState[] determinisations, boolean hideMrX, Node root) {
+		if (determinisations.length == 0) throw new IllegalArgumentException("No determinisation");
+		this.setup = determinisations[0].setup();
+		this.determinisations = determinisations;
+		this.hideMrX = hideMrX;
+		this.root = root;
+	}
+
+	Node root() { return root; }
+
+	/**
+	 * Searches until the stop flag is set or the end, on the calling thread
+	 */
+	void search(SplittableRandom random, long end, AtomicBoolean stop, LongAdder counter) {
+		var states = new SearchState[determinisations.length];
+		var moves = new MoveList();
+		var keys = new long[64];
+		var path = new Node[64];
+		while (!stop.get() && System.nanoTime() < end) {
+			int d = random.nextInt(states.length);
+			if (states[d] == null) states[d] = determinisations[d].copy();
+			SearchState state = states[d];
+			int depth = 0;
+			Node node = root;
+			node.visit();
+			path[depth++] = node;
+			while (state.winner() == SearchState.NONE &&
+					(node.children != null || node.visits() >= EXPAND_VISITS)) {
+				boolean mrX = state.isMrXTurn();
+				moves.clear();
+				if (mrX) state.generateMoves(moves);
+				else state.generateRoundMoves(moves, true);
+				if (keys.length < moves.size()) keys = new long[moves.size() * 2];
+				int count = keys(state, moves, keys, mrX && hideMrX);
+				Node[] children = node.ensure(keys, count, mrX);
+				node = select(children, keys, count);
+				node.visit();
+				state.make(concrete(state, moves, node.key, mrX && hideMrX, random));
+				if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+				path[depth++] = node;
+			}
+			boolean mrXWon = playout(state, moves, random) == SearchState.MRX;
+			for (int i = depth - 1; i >= 0; i--) {
+				if (path[i].mrX == mrXWon) path[i].win();
+				if (i != 0) state.unmake();
+			}
+			counter.increment();
+		}
+	}
+
+	// sorted distinct keys of the moves
+	private int keys(SearchState state, MoveList moves, long[] keys, boolean hidden) {
+		for (int i = 0; i < moves.size(); i++)
+			keys[i] = hidden ? observation(state, moves.get(i)) : moves.get(i);
+		Arrays.sort(keys, 0, moves.size());
+		int count = 0;
+		for (int i = 0; i < moves.size(); i++)
+			if (count == 0 || keys[count - 1] != keys[i]) keys[count++] = keys[i];
+		return count;
+	}
+
+	/**
+	 * @return what the detectives see of an MrX move: the tickets, a double move flag and the
+	 * destinations of reveal rounds
+	 */
+	private long observation(SearchState state, long move) {
+		int round = state.round();
+		long key = PackedMove.ticket1Ordinal(move);
+		if (setup.moves.get(round)) key |= (long) PackedMove.destination1(move) << 8;
+		if (PackedMove.isDouble(move)) {
+			key |= 1L << 7 | (long) PackedMove.ticket2Ordinal(move) << 4;
+			if (setup.moves.get(round + 1)) key |= (long) PackedMove.destination2(move) << 24;
+		}
+		return key;
+	}
+
+	// UCB over the children that are available now, counting their availability
+	private static Node select(Node[] children, long[] keys, int count) {
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0, c = 0; i < count; i++) {
+			while (children[c].key != keys[i]) c++;
+			Node child = children[c];
+			int available = Node.AVAILABLE.incrementAndGet(child);
+			long stats = child.stats.get();
+			int visits = (int) (stats >>> 32);
+			double score = visits == 0 ? Double.POSITIVE_INFINITY :
+					(double) (int) stats / visits +
+							EXPLORATION * Math.sqrt(Math.log(available) / visits);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	// the move behind a key, a random one of those that look the same for hidden MrX moves
+	private long concrete(SearchState state, MoveList moves, long key, boolean hidden,
+	                      SplittableRandom random) {
+		if (!hidden) return key;
+		long chosen = 0;
+		int seen = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			if (observation(state, moves.get(i)) != key) continue;
+			if (random.nextInt(++seen) == 0) chosen = moves.get(i);
+		}
+		return chosen;
+	}
+
+	/**
+	 * Plays random moves to the end and takes them back. Detectives always take MrX when they
+	 * can and MrX mostly saves double moves, which keeps the games closer to real ones.
+	 *
+	 * @return the winner, see {@link SearchState#winner()}
+	 */
+	static int playout(SearchState state, MoveList moves, SplittableRandom random) {
+		int plies = 0;
+		while (state.winner() == SearchState.NONE) {
+			moves.clear();
+			state.generateMoves(moves);
+			state.make(pick(state, moves, random));
+			plies++;
+		}
+		int winner = state.winner();
+		for (int i = 0; i < plies; i++) state.unmake();
+		return winner;
+	}
+
+	private static long pick(SearchState state, MoveList moves, SplittableRandom random) {
+		if (!state.isMrXTurn()) {
+			int mrX = state.location(0);
+			for (int i = 0; i < moves.size(); i++)
+				if (PackedMove.finalDestination(moves.get(i)) == mrX) return moves.get(i);
+			return moves.get(random.nextInt(moves.size()));
+		}
+		long move = moves.get(random.nextInt(moves.size()));
+		for (int i = 0; i < 8 && PackedMove.isDouble(move) && random.nextInt(8) != 0; i++)
+			move = moves.get(random.nextInt(moves.size()));
+		return move;
+	}
+
+}
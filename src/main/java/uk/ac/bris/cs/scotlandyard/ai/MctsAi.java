@@ -0,0 +1,284 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXTracker;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Monte Carlo tree search for MrX and the detectives.
+ * <br>
+ * Every thread searches the same {@link Ismcts} tree, without locks. MrX knows where MrX is and
+ * searches the one real state. The detectives do not, so every playout of theirs starts from a
+ * fresh determinisation, MrX placed at one of the stations consistent with the travel log, and
+ * MrX's moves in their tree are merged by what the detectives get to see of them; thousands of
+ * determinisations are merged into one decision this way.
+ * <br>
+ * A detective's tree is kept for the next detective of the same round when the board matches
+ * the move that was picked, so later detectives start with the statistics of earlier ones.
+ * <br>
+ * Either side plays the move in the {@link OpeningBook} for the setup when there is one,
+ * without searching. Otherwise the search runs for most of the time given to {@link #pickMove},
+ * publishing the most visited move as a candidate as it goes.
+ */
+public final class MctsAi implements Ai {
+
+	private static final long MARGIN = TimeUnit.MILLISECONDS.toNanos(300);
+	private static final long PUBLISH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final int threads;
+	private ExecutorService pool;
+	private volatile long playouts;
+	private volatile double playoutsPerSecond;
+	private volatile int determinisations;
+	// follows the log from one detective turn to the next
+	private MrXTracker tracker = new MrXTracker();
+	// the detectives' subtree below the last move picked, and what the detectives should see of
+	// the board it is reused on
+	private Ismcts.Node reuse;
+	private View reuseView;
+
+	/**
+	 * Searches on every available core
+	 */
+	public MctsAi() { this(Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * @param threads the number of search threads
+	 */
+	public MctsAi(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+	}
+
+	@Nonnull @Override public String name() { return "MCTS"; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, timeoutPair, move -> {});
+	}
+
+	@Nonnull @Override public synchronized Move pickMove(@Nonnull Board board,
+	                                                     Pair<Long, TimeUnit> timeoutPair,
+	                                                     @Nonnull Consumer<Move> candidates) {
+		var moves = board.getAvailableMoves();
+		if (moves.size() == 1) return moves.iterator().next();
+		var known = OpeningBook.find(board).flatMap(book -> book.move(board));
+		if (known.isPresent()) {
+			candidates.accept(known.get());
+			return known.get();
+		}
+		boolean mrX = moves.stream().anyMatch(m -> m.commencedBy().isMrX());
+		long start = System.nanoTime();
+		long timeout = timeoutPair.right().toNanos(timeoutPair.left());
+		long end = start + timeout - Math.min(timeout / 10, MARGIN);
+
+		var tree = tree(board, mrX);
+		var random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+		var counter = new LongAdder();
+		var stop = new AtomicBoolean();
+		var workers = pool();
+		var futures = new ArrayList<Future<?>>(threads);
+		for (int i = 0; i < threads; i++) {
+			var split = random.split();
+			futures.add(workers.submit(() -> tree.search(split, end, stop, counter)));
+		}
+		try {
+			long publish = start + PUBLISH_INTERVAL;
+			while (System.nanoTime() < end) {
+				TimeUnit.NANOSECONDS.sleep(Math.max(0, Math.min(end, publish) - System.nanoTime()));
+				if (System.nanoTime() >= publish) {
+					var best = tree.root().mostVisited();
+					if (best != null) candidates.accept(toMove(board, best.key));
+					publish += PUBLISH_INTERVAL;
+				}
+			}
+		} catch (InterruptedException e) {
+			// out of time, play what we have
+			Thread.currentThread().interrupt();
+		} finally {
+			stop.set(true);
+		}
+		// every thread stops after its current playout
+		for (var future : futures) {
+			try {
+				Uninterruptibles.getUninterruptibly(future);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		playouts = counter.sum();
+		playoutsPerSecond = playouts / Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		var best = tree.root().mostVisited();
+		if (best == null) return moves.iterator().next();
+		Move move = toMove(board, best.key);
+		if (!mrX) {
+			reuse = best;
+			reuseView = View.of(board, move);
+		}
+		return move;
+	}
+
+	private Ismcts tree(Board board, boolean mrX) {
+		if (mrX) {
+			reuse = null;
+			this.determinisations = 1;
+			return new Ismcts(new SearchState[]{SearchState.of(board)}, false,
+					new Ismcts.Node(0, false));
+		}
+		tracker.update(board);
+		int[] candidates = tracker.stations();
+		if (candidates.length == 0) throw new IllegalStateException("MrX is nowhere");
+		var determinisations = new SearchState[candidates.length];
+		for (int i = 0; i < candidates.length; i++)
+			determinisations[i] = SearchState.of(board, candidates[i]);
+		this.determinisations = determinisations.length;
+		Ismcts.Node root = reuse != null && reuseView.equals(View.of(board, null)) &&
+				reuse.childrenWithin(board.getAvailableMoves().stream()
+						.mapToLong(PackedMove::encode).sorted().toArray()) ?
+				reuse : new Ismcts.Node(0, false);
+		reuse = null;
+		reuseView = null;
+		return new Ismcts(determinisations, true, root);
+	}
+
+	/**
+	 * What the detectives see of a board: the setup, the log, where the detectives are, their
+	 * tickets and who is still to move this round. A detective's subtree is only reused on a
+	 * board the detectives see exactly as the search did.
+	 */
+	private static final class View {
+		private final GameSetup setup;
+		private final ImmutableList<LogEntry> log;
+		private final int[] locations;
+		private final int[] tickets;
+		private final ImmutableSet<Piece> remaining;
+
+		private View(GameSetup setup, ImmutableList<LogEntry> log, int[] locations,
+		             int[] tickets, ImmutableSet<Piece> remaining) {
+			this.setup = setup;
+			this.log = log;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.remaining = remaining;
+		}
+
+		/**
+		 * @param board the board
+		 * @param move a detective's move to apply to the board, or null
+		 * @return what the detectives see of the board after the move
+		 */
+		static View of(Board board, Move move) {
+			var detectives = board.getPlayers().stream()
+					.filter(Piece::isDetective)
+					.map(Piece.Detective.class::cast)
+					.collect(ImmutableList.toImmutableList());
+			var locations = new int[detectives.size()];
+			var tickets = new int[detectives.size() * TICKETS.length];
+			for (int i = 0; i < detectives.size(); i++) {
+				var piece = detectives.get(i);
+				locations[i] = board.getDetectiveLocation(piece).orElseThrow();
+				var counts = board.getPlayerTickets(piece).orElseThrow();
+				for (Ticket ticket : TICKETS)
+					tickets[i * TICKETS.length + ticket.ordinal()] = counts.getCount(ticket);
+				if (move != null && move.commencedBy() == piece) {
+					locations[i] = PackedMove.finalDestination(PackedMove.encode(move));
+					for (Ticket ticket : move.tickets())
+						tickets[i * TICKETS.length + ticket.ordinal()]--;
+				}
+			}
+			var remaining = board.getAvailableMoves().stream()
+					.map(Move::commencedBy)
+					.filter(piece -> move == null || piece != move.commencedBy())
+					.collect(ImmutableSet.toImmutableSet());
+			return new View(board.getSetup(), board.getMrXTravelLog(), locations, tickets,
+					remaining);
+		}
+
+		@Override public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof View)) return false;
+			View that = (View) o;
+			return setup == that.setup && log.equals(that.log) &&
+					Arrays.equals(locations, that.locations) &&
+					Arrays.equals(tickets, that.tickets) &&
+					remaining.equals(that.remaining);
+		}
+
+		@Override public int hashCode() {
+			return Objects.hash(log, Arrays.hashCode(locations), Arrays.hashCode(tickets),
+					remaining);
+		}
+	}
+
+	private static Move toMove(Board board, long move) {
+		Move decoded = PackedMove.decode(move);
+		return board.getAvailableMoves().stream()
+				.filter(decoded::equals)
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException("Searched an unavailable move: " +
+						decoded));
+	}
+
+	private synchronized ExecutorService pool() {
+		if (pool == null || pool.isShutdown()) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("mcts-%d")
+					.setDaemon(true)
+					.build());
+		}
+		return pool;
+	}
+
+	/**
+	 * @return the number of playouts of the last search
+	 */
+	public long lastPlayouts() { return playouts; }
+
+	/**
+	 * @return the playouts per second of the last search
+	 */
+	public double lastPlayoutsPerSecond() { return playoutsPerSecond; }
+
+	/**
+	 * @return the number of stations MrX could be at in the last search, 1 for MrX's own
+	 */
+	public int lastDeterminisations() { return determinisations; }
+
+	@Override public synchronized void onTerminate() {
+		reuse = null;
+		reuseView = null;
+		tracker = new MrXTracker();
+		if (pool != null) pool.shutdownNow();
+	}
+
+}
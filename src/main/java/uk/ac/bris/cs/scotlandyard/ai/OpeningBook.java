@@ -0,0 +1,431 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Zobrist;
+
+/**
+ * The first rounds of play from every standard start, searched ahead of time and looked up by
+ * position key, for MrX and the detectives alike.
+ * <br>
+ * A book belongs to one {@link GameSetup}. {@link #build} plays every start with MrX on one of
+ * {@link ScotlandYard#MRX_LOCATIONS} and the detectives on distinct
+ * {@link ScotlandYard#DETECTIVE_LOCATIONS}, with default tickets, for a given number of rounds,
+ * many starts at a time. Every move of the line the {@link Ai} plays is stored under the key of
+ * the position it was picked in, so a game that follows the line is played from the book until
+ * the line ends or a side leaves it.
+ * <br>
+ * Positions are keyed by {@link #key(Board)}. It tells detectives apart by station rather than
+ * colour, so the colours do not multiply the starts, and a move is stored without its colour and
+ * found again by station. It leaves out where MrX is on the detectives' turns: the detectives
+ * cannot know it, so starts that only differ there share those positions, and each gets the move
+ * the Ai picked most often.
+ * <br>
+ * The file holds the keys in ascending order followed by the moves in the same order;
+ * {@link #load} maps it into memory and {@link #move(Board)} binary searches it.
+ * {@link #find(Board)} loads the book for a board's setup from the {@value #DIRECTORY_PROPERTY}
+ * directory.
+ */
+public final class OpeningBook {
+
+	/**
+	 * The system property naming the directory opening books are loaded from
+	 */
+	public static final String DIRECTORY_PROPERTY = "scotlandyard.openings";
+
+	private static final int MAGIC = 0x53594F42; // SYOB
+	private static final int VERSION = 2;
+	private static final int HEADER = 20;
+	// log entries are keyed like pieces after the players, one for each entry
+	private static final int LOG = ScotlandYard.ALL_PIECES.size();
+
+	private static final LoadingCache<GameSetup, Optional<OpeningBook>> FOUND = CacheBuilder
+			.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(OpeningBook::locate));
+
+	private final long setup;
+	private final LongBuffer keys;
+	private final LongBuffer moves;
+
+	private OpeningBook(long setup, LongBuffer keys, LongBuffer moves) {
+		this.setup = setup;
+		this.keys = keys;
+		this.moves = moves;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return a key for the graph and the rounds MrX is revealed in; the same in every JVM
+	 */
+	public static long setupKey(@Nonnull GameSetup setup) {
+		return CompiledGraph.of(setup).fingerprint() * 31 + setup.moves.hashCode();
+	}
+
+	/**
+	 * @param board the board
+	 * @return the key of the position as the side to move sees it, with detectives ranked by
+	 * station; empty when the game is over
+	 */
+	@Nonnull public static OptionalLong key(@Nonnull Board board) {
+		var available = board.getAvailableMoves();
+		if (available.isEmpty()) return OptionalLong.empty();
+		var log = board.getMrXTravelLog();
+		long key = Zobrist.round(log.size());
+		for (int i = 0; i < log.size(); i++) {
+			var entry = log.get(i);
+			key ^= Zobrist.tickets(LOG + i, entry.ticket().ordinal(), 1) ^
+					Zobrist.location(LOG + i, entry.location().orElse(0));
+		}
+		var mrXTickets = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		var mrX = available.stream()
+				.filter(move -> move.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst();
+		// only MrX knows where MrX is
+		key ^= mrX.isPresent() ?
+				part(0, mrX.getAsInt(), mrXTickets) ^ Zobrist.remaining(0) :
+				part(0, 0, mrXTickets);
+		var moving = available.stream().map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+		var detectives = board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(Piece.Detective.class::cast)
+				.sorted(Comparator.comparingInt(piece ->
+						board.getDetectiveLocation(piece).orElseThrow()))
+				.collect(ImmutableList.toImmutableList());
+		for (int rank = 0; rank < detectives.size(); rank++) {
+			var piece = detectives.get(rank);
+			key ^= part(rank + 1, board.getDetectiveLocation(piece).orElseThrow(),
+					board.getPlayerTickets(piece).orElseThrow());
+			if (moving.contains(piece)) key ^= Zobrist.remaining(rank + 1);
+		}
+		return OptionalLong.of(key);
+	}
+
+	private static long part(int rank, int station, TicketBoard tickets) {
+		long key = Zobrist.location(rank, station);
+		for (Ticket ticket : Ticket.values())
+			key ^= Zobrist.tickets(rank, ticket.ordinal(), tickets.getCount(ticket));
+		return key;
+	}
+
+	/**
+	 * @param detectives the number of detectives
+	 * @return every start, MrX's station followed by the detectives' in ascending order
+	 */
+	@Nonnull public static ImmutableList<int[]> starts(int detectives) {
+		if (detectives < 1 || detectives > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("detectives: " + detectives);
+		var locations = ScotlandYard.DETECTIVE_LOCATIONS.stream()
+				.mapToInt(Integer::intValue).sorted().toArray();
+		var starts = ImmutableList.<int[]>builder();
+		for (int mrX : ScotlandYard.MRX_LOCATIONS) {
+			var start = new int[detectives + 1];
+			start[0] = mrX;
+			combinations(locations, start, 1, 0, starts);
+		}
+		return starts.build();
+	}
+
+	private static void combinations(int[] locations, int[] start, int next, int from,
+	                                 ImmutableList.Builder<int[]> starts) {
+		if (next == start.length) {
+			starts.add(start.clone());
+			return;
+		}
+		for (int i = from; i < locations.length; i++) {
+			start[next] = locations[i];
+			combinations(locations, start, next + 1, i + 1, starts);
+		}
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param start MrX's station followed by the detectives', see {@link #starts(int)}
+	 * @return the board at the start, detectives taking colours in station order
+	 */
+	@Nonnull public static Board.GameState board(@Nonnull GameSetup setup, @Nonnull int[] start) {
+		var colours = ScotlandYard.DETECTIVES.asList();
+		var detectives = IntStream.range(1, start.length)
+				.mapToObj(i -> new Player(colours.get(i - 1),
+						ScotlandYard.defaultDetectiveTickets(), start[i]))
+				.collect(ImmutableList.toImmutableList());
+		return new MyGameStateFactory().build(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), start[0]), detectives);
+	}
+
+	/**
+	 * Plays every start for the given number of rounds and stores every move played
+	 *
+	 * @param setup the game setup
+	 * @param starts the starts to play, see {@link #starts(int)}
+	 * @param rounds the number of rounds, MrX's turn and the detectives', played from each start
+	 * @param ai makes the Ais, a fresh one for each start playing both sides
+	 * @param timeout the time the Ai gets for each move
+	 * @param threads the number of starts played at once
+	 * @return the book, held in memory
+	 * @throws InterruptedException if interrupted while waiting for the searches
+	 */
+	@Nonnull public static OpeningBook build(@Nonnull GameSetup setup,
+	                                         @Nonnull List<int[]> starts,
+	                                         int rounds,
+	                                         @Nonnull Supplier<Ai> ai,
+	                                         @Nonnull Duration timeout,
+	                                         int threads) throws InterruptedException {
+		if (rounds < 1) throw new IllegalArgumentException("rounds < 1");
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		var pool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("opening-book-%d")
+				.setDaemon(true)
+				.build());
+		var lines = new long[starts.size()][];
+		try {
+			var futures = new ArrayList<Future<?>>(starts.size());
+			for (int i = 0; i < starts.size(); i++) {
+				int index = i;
+				futures.add(pool.submit(() -> {
+					lines[index] = line(setup, starts.get(index), rounds, ai, timeout);
+				}));
+			}
+			for (var future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Search failed", e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		// the move picked most often in a position, the first one picked on a tie
+		var picked = new HashMap<Long, LinkedHashMap<Long, Integer>>();
+		for (long[] line : lines) {
+			for (int i = 0; i < line.length; i += 2) {
+				picked.computeIfAbsent(line[i], key -> new LinkedHashMap<>())
+						.merge(line[i + 1], 1, Integer::sum);
+			}
+		}
+		var keys = picked.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+		var moves = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			moves[i] = picked.get(keys[i]).entrySet().stream()
+					.reduce(BinaryOperator.maxBy(Map.Entry.comparingByValue()))
+					.orElseThrow().getKey();
+		}
+		return new OpeningBook(setupKey(setup), LongBuffer.wrap(keys), LongBuffer.wrap(moves));
+	}
+
+	// the key and the move of every turn played from the start, in turn
+	private static long[] line(GameSetup setup, int[] start, int rounds,
+	                           Supplier<Ai> ai, Duration timeout) {
+		Ai instance = ai.get();
+		instance.onStart();
+		try {
+			var timeoutPair = new Pair<>(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			var line = new ArrayList<Long>();
+			Board.GameState board = board(setup, start);
+			int turns = 0;
+			while (board.getWinner().isEmpty()) {
+				var available = board.getAvailableMoves();
+				boolean mrX = available.stream().anyMatch(move -> move.commencedBy().isMrX());
+				if (mrX && turns++ == rounds) break;
+				Move move = instance.pickMove(board, timeoutPair);
+				if (!available.contains(move))
+					throw new IllegalStateException("Ai picked an unavailable move: " + move);
+				line.add(key(board).orElseThrow());
+				line.add(withoutPiece(PackedMove.encode(move)));
+				board = board.advance(move);
+			}
+			return line.stream().mapToLong(Long::longValue).toArray();
+		} finally {
+			instance.onTerminate();
+		}
+	}
+
+	// the pieces are told apart by the source station, the colour is left out
+	private static long withoutPiece(long move) {
+		return PackedMove.isDouble(move) ?
+				PackedMove.doubleMove(0, PackedMove.source(move),
+						PackedMove.ticket1Ordinal(move), PackedMove.destination1(move),
+						PackedMove.ticket2Ordinal(move), PackedMove.destination2(move)) :
+				PackedMove.single(0, PackedMove.source(move),
+						PackedMove.ticket1Ordinal(move), PackedMove.destination1(move));
+	}
+
+	public int size() { return keys.limit(); }
+
+	/**
+	 * @param board the board
+	 * @return the book move for the side to move, if the board is in the book
+	 */
+	@Nonnull public Optional<Move> move(@Nonnull Board board) {
+		if (setupKey(board.getSetup()) != setup) return Optional.empty();
+		var key = key(board);
+		if (key.isEmpty()) return Optional.empty();
+		int low = 0, high = size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long probe = keys.get(middle);
+			if (probe < key.getAsLong()) low = middle + 1;
+			else if (probe > key.getAsLong()) high = middle - 1;
+			else {
+				long move = moves.get(middle);
+				return board.getAvailableMoves().stream()
+						.filter(available -> withoutPiece(PackedMove.encode(available)) == move)
+						.findFirst();
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * @param board the board
+	 * @return the book for the board's setup, loaded once from the {@value #DIRECTORY_PROPERTY}
+	 * directory, if there is one
+	 */
+	@Nonnull public static Optional<OpeningBook> find(@Nonnull Board board) {
+		return FOUND.getUnchecked(board.getSetup());
+	}
+
+	private static Optional<OpeningBook> locate(GameSetup setup) {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		if (directory == null) return Optional.empty();
+		var file = Path.of(directory).resolve(fileName(setup));
+		if (!Files.isRegularFile(file)) return Optional.empty();
+		try {
+			return Optional.of(load(file, setup));
+		} catch (IOException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the name of the file the book for the setup is saved as
+	 */
+	@Nonnull public static String fileName(@Nonnull GameSetup setup) {
+		return String.format("openings-%016x.bin", setupKey(setup));
+	}
+
+	/**
+	 * Writes the book to a file, replacing it atomically where the file system allows
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(@Nonnull Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			var crc = new CRC32();
+			try (var out = new DataOutputStream(new CheckedOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)), crc))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(setup);
+				out.writeInt(size());
+				for (int i = 0; i < size(); i++) out.writeLong(keys.get(i));
+				for (int i = 0; i < size(); i++) out.writeLong(moves.get(i));
+				out.flush();
+				out.writeLong(crc.getValue());
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Maps a book into memory, read only
+	 *
+	 * @param file a file written by {@link #save(Path)}
+	 * @param setup the game setup the book must be for
+	 * @return the book
+	 * @throws IOException if the file cannot be read, is damaged, or is for another setup
+	 */
+	@Nonnull public static OpeningBook load(@Nonnull Path file,
+	                                        @Nonnull GameSetup setup) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER + Long.BYTES || length > Integer.MAX_VALUE)
+				throw new IOException("Not an opening book: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC) throw new IOException("Not an opening book: " + file);
+			int version = buffer.getInt(4);
+			if (version != VERSION) throw new IOException("Unsupported version: " + version);
+			long key = buffer.getLong(8);
+			if (key != setupKey(setup))
+				throw new IOException("Opening book is for another setup: " + file);
+			int size = buffer.getInt(16);
+			if (size < 0 || HEADER + 2L * size * Long.BYTES + Long.BYTES != length)
+				throw new IOException("Damaged header: " + file);
+			var crc = new CRC32();
+			crc.update(buffer.duplicate().limit((int) length - Long.BYTES));
+			if (buffer.getLong((int) length - Long.BYTES) != crc.getValue())
+				throw new IOException("Checksum mismatch: " + file);
+			var keys = buffer.duplicate().position(HEADER).limit(HEADER + size * Long.BYTES)
+					.slice().asLongBuffer();
+			var moves = buffer.duplicate().position(HEADER + size * Long.BYTES)
+					.limit(HEADER + 2 * size * Long.BYTES).slice().asLongBuffer();
+			return new OpeningBook(key, keys, moves);
+		}
+	}
+
+}
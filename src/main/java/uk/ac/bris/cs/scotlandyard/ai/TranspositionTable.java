@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size, always-replace transposition table shared by every search thread without locks.
+ * <br>
+ * An entry is two longs, the data and the key XOR the data. Threads write both without any
+ * synchronisation, so a reader can see halves of two different writes; such an entry fails
+ * the key check and reads as a miss (the usual lockless hashing trick).
+ */
+final class TranspositionTable {
+
+	static final int EXACT = 0;
+	static final int LOWER = 1;
+	static final int UPPER = 2;
+
+	/**
+	 * Returned by {@link #probe(long)} on a miss
+	 */
+	static final long MISS = -1;
+
+	private final long[] table;
+	private final int mask;
+
+	/**
+	 * @param bits log2 of the number of entries
+	 */
+	TranspositionTable(int bits) {
+		if (bits < 1 || bits > 28) throw new IllegalArgumentException("Bad size: " + bits);
+		this.table = new long[2 << bits];
+		this.mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * @param key the position key
+	 * @return the data of the entry, or {@link #MISS}
+	 */
+	long probe(long key) {
+		int slot = ((int) key & mask) << 1;
+		long data = table[slot + 1];
+		return (table[slot] ^ data) == key ? data : MISS;
+	}
+
+	void store(long key, int score, int depth, int bound, int move) {
+		long data = (score & 0xFFFF_FFFFL) | (long) (depth & 0xFF) << 32 |
+				(long) bound << 40 | (long) (move & 0xF_FFFF) << 42;
+		int slot = ((int) key & mask) << 1;
+		table[slot] = key ^ data;
+		table[slot + 1] = data;
+	}
+
+	static int score(long data) { return (int) data; }
+
+	static int depth(long data) { return (int) (data >>> 32) & 0xFF; }
+
+	static int bound(long data) { return (int) (data >>> 40) & 0b11; }
+
+	/**
+	 * @return the index of the best move in generation order, or {@code 0xFFFFF} for none
+	 */
+	static int move(long data) { return (int) (data >>> 42) & 0xF_FFFF; }
+
+	void clear() { Arrays.fill(table, 0); }
+
+}
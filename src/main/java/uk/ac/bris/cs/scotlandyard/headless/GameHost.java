@@ -0,0 +1,328 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutor;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.headless.MatchRunner.Match;
+import uk.ac.bris.cs.scotlandyard.headless.MatchRunner.Result;
+
+/**
+ * Hosts many games at once with a fixed number of AIs thinking.
+ * <br>
+ * A game does not own a thread. Each turn (one {@link Ai#pickMove} call and the move it picks)
+ * needs one of the host's {@code n} slots; games waiting for a slot queue in a shared FIFO
+ * queue, and when a turn is done the game queues its next turn at the back. With any number of
+ * games, at most {@code n} AIs are thinking at once and every game waiting for a slot gets one
+ * turn before any game gets a second, so a slow game only slows itself down.
+ * <br>
+ * Every {@link Ai#pickMove} call goes through an {@link AiExecutor}, so each game's timeout is
+ * enforced, and the thread the AI thinks on is the executor's: no host thread waits for an AI.
+ * The host's {@code n} threads only start turns and apply the moves picked. Turns of one game
+ * never overlap, so the {@link Model} and the AIs of a game are only used by one thread at a
+ * time, though not always the same one.
+ */
+public final class GameHost implements AutoCloseable {
+
+	/**
+	 * A game on the host
+	 */
+	public final class Game {
+		private final int id;
+		private final Match match;
+		private final Model model;
+		private final Ai mrXAi;
+		private final Ai detectivesAi;
+		private final Pair<Long, TimeUnit> timeout;
+		private final long start = System.nanoTime();
+		private final CompletableFuture<Result> result = new CompletableFuture<>();
+		private volatile Board board;
+		private volatile int moves;
+		private volatile boolean cancelled;
+		private volatile CompletableFuture<Move> pending;
+
+		private Game(int id, Match match, Model model, Ai mrXAi, Ai detectivesAi, Duration timeout) {
+			this.id = id;
+			this.match = match;
+			this.model = model;
+			this.mrXAi = mrXAi;
+			this.detectivesAi = detectivesAi;
+			this.timeout = new Pair<>(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			this.board = model.getCurrentBoard();
+		}
+
+		/**
+		 * @return the id of the game, unique on this host
+		 */
+		public int id() { return id; }
+
+		/**
+		 * @return the board after the last move, safe to read from any thread
+		 */
+		@Nonnull public Board board() { return board; }
+
+		/**
+		 * @return the number of moves made so far
+		 */
+		public int moves() { return moves; }
+
+		/**
+		 * @return whether the game has ended, normally or not
+		 */
+		public boolean isDone() { return result.isDone(); }
+
+		/**
+		 * @return the result, completed when the game ends; never completed exceptionally
+		 */
+		@Nonnull public CompletableFuture<Result> result() { return result; }
+
+		/**
+		 * Ends the game before its next turn; an AI that is thinking is not interrupted
+		 */
+		public void cancel() { cancelled = true; }
+
+		// runs on a host thread while this game holds a slot
+		private void turn() {
+			if (cancelled) {
+				end("Cancelled");
+				return;
+			}
+			Ai ai;
+			ImmutableSet<Move> available;
+			try {
+				Board board = model.getCurrentBoard();
+				if (!board.getWinner().isEmpty()) {
+					end(null);
+					return;
+				}
+				available = board.getAvailableMoves();
+				boolean mrXTurn = available.stream().anyMatch(m -> m.commencedBy().isMrX());
+				ai = mrXTurn ? mrXAi : detectivesAi;
+				pending = ais.submit(ai, board, timeout);
+			} catch (RuntimeException e) {
+				end("Model threw " + e);
+				return;
+			}
+			// the move is applied on a host thread once it is picked
+			pending.whenCompleteAsync((move, e) -> played(ai, available, move, e),
+					GameHost.this::run);
+		}
+
+		private void played(Ai ai, ImmutableSet<Move> available, Move move, Throwable e) {
+			pending = null;
+			if (e != null) {
+				Throwable cause = e instanceof CompletionException && e.getCause() != null ?
+						e.getCause() : e;
+				if (cause instanceof TimeoutException) end(cause.getMessage());
+				else if (cause instanceof CancellationException) end("Host closed");
+				else end("Ai threw " + cause);
+				return;
+			}
+			try {
+				if (!available.contains(move)) {
+					end("Ai(" + ai.name() + ") selected an invalid move: " + move);
+					return;
+				}
+				model.chooseMove(move);
+				this.board = model.getCurrentBoard();
+				moves++;
+				totalMoves.increment();
+			} catch (RuntimeException ex) {
+				end("Model threw " + ex);
+				return;
+			}
+			// back of the queue first, so the slot goes to whoever has waited longest
+			synchronized (waiting) {
+				waiting.add(this);
+			}
+			release();
+		}
+
+		// ends the turn and the game, giving up the slot
+		private void end(String error) {
+			finish(error);
+			release();
+		}
+
+		private void finish(String error) {
+			try {
+				mrXAi.onTerminate();
+				detectivesAi.onTerminate();
+			} catch (RuntimeException e) {
+				if (error == null) error = "Ai threw " + e + " on terminate";
+			}
+			games.remove(id);
+			Board board = this.board;
+			result.complete(new Result(id, match,
+					error == null ? board.getWinner() : ImmutableSet.of(),
+					board.getMrXTravelLog().size(), moves,
+					Duration.ofNanos(System.nanoTime() - start), Optional.ofNullable(error)));
+		}
+	}
+
+	private final Factory<Model> modelFactory;
+	private final ExecutorService executor;
+	private final AiExecutor ais;
+	private final ConcurrentHashMap<Integer, Game> games = new ConcurrentHashMap<>();
+	private final AtomicInteger ids = new AtomicInteger();
+	private final LongAdder totalMoves = new LongAdder();
+	// games waiting for a slot, and the number of free slots, guarded by waiting
+	private final Queue<Game> waiting = new ArrayDeque<>();
+	private int free;
+
+	/**
+	 * A host that plays through {@link MyModelFactory} on every available core
+	 */
+	public GameHost() {
+		this(new MyModelFactory(), Runtime.getRuntime().availableProcessors(), new AiExecutor());
+	}
+
+	/**
+	 * @param modelFactory the model factory
+	 * @param threads the number of slots, the most AIs that are thinking at once, and of threads
+	 * starting turns and applying moves
+	 * @param ais runs the AIs and enforces their timeouts, may be shared
+	 */
+	public GameHost(@Nonnull Factory<Model> modelFactory, int threads, @Nonnull AiExecutor ais) {
+		this.modelFactory = Objects.requireNonNull(modelFactory);
+		this.ais = Objects.requireNonNull(ais);
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.free = threads;
+		// a plain FIFO queue is what makes the scheduling fair
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+				.setNameFormat("game-host-%d")
+				.setDaemon(true)
+				.build());
+	}
+
+	/**
+	 * Starts a game; {@link Ai#onStart()} is called on the calling thread
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX
+	 * @param detectives the detectives
+	 * @param mrXAi MrX's AI, used by this game only
+	 * @param detectivesAi the detectives' AI, used by this game only
+	 * @param timeout the timeout of the AIs of this game
+	 * @return the game
+	 */
+	@Nonnull public Game host(@Nonnull GameSetup setup,
+	                          @Nonnull Player mrX,
+	                          @Nonnull ImmutableList<Player> detectives,
+	                          @Nonnull Ai mrXAi,
+	                          @Nonnull Ai detectivesAi,
+	                          @Nonnull Duration timeout) {
+		Objects.requireNonNull(mrXAi);
+		Objects.requireNonNull(detectivesAi);
+		Objects.requireNonNull(timeout);
+		if (executor.isShutdown()) throw new IllegalStateException("Host closed");
+		Model model = modelFactory.build(setup, mrX, detectives);
+		mrXAi.onStart();
+		detectivesAi.onStart();
+		var game = new Game(ids.getAndIncrement(), new Match(mrX, detectives), model,
+				mrXAi, detectivesAi, timeout);
+		games.put(game.id, game);
+		synchronized (waiting) {
+			waiting.add(game);
+		}
+		dispatch();
+		return game;
+	}
+
+	// starts the turns of the games at the head of the queue while there are free slots
+	private void dispatch() {
+		while (true) {
+			Game game;
+			synchronized (waiting) {
+				if (free == 0 || waiting.isEmpty()) return;
+				free--;
+				game = waiting.remove();
+			}
+			run(game::turn);
+		}
+	}
+
+	private void release() {
+		synchronized (waiting) {
+			free++;
+		}
+		dispatch();
+	}
+
+	// on a host thread, or on the calling one once the host is closed so that games still end
+	private void run(Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * @return every game that has not ended yet
+	 */
+	@Nonnull public ImmutableList<Game> games() { return ImmutableList.copyOf(games.values()); }
+
+	/**
+	 * @return the number of games that have not ended yet
+	 */
+	public int active() { return games.size(); }
+
+	/**
+	 * @return the number of moves made by every game so far
+	 */
+	public long moves() { return totalMoves.sum(); }
+
+	/**
+	 * Stops the threads; games that have not ended end with an error
+	 */
+	@Override public void close() {
+		for (Game game : games.values()) game.cancel();
+		executor.shutdown();
+		// thinking AIs are interrupted, their games end when the executor gives up on them
+		for (Game game : games.values()) {
+			var pending = game.pending;
+			if (pending != null) pending.cancel(true);
+		}
+		List<Game> queued;
+		synchronized (waiting) {
+			queued = new ArrayList<>(waiting);
+			waiting.clear();
+		}
+		for (Game game : queued) game.finish("Cancelled");
+	}
+
+}
@@ -0,0 +1,32 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import uk.ac.bris.cs.scotlandyard.model.GraphFormat;
+
+/**
+ * Converts a graph file between the text format and the binary format of {@link GraphFormat};
+ * the output is binary if its name ends in {@code .bin}.
+ */
+public final class GraphConverter {
+
+	private GraphConverter() {}
+
+	/**
+	 * Arguments: {@code <input graph> <output graph>}
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: GraphConverter <input graph> <output graph>");
+			System.exit(2);
+		}
+		Path from = Paths.get(args[0]);
+		Path to = Paths.get(args[1]);
+		long start = System.nanoTime();
+		GraphFormat.convert(from, to);
+		System.out.printf("Converted %s to %s in %.1fms%n", from, to,
+				(System.nanoTime() - start) / 1e6);
+	}
+
+}
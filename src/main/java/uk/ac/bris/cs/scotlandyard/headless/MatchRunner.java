@@ -0,0 +1,341 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutor;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Plays complete AI-vs-AI games without the JavaFX UI.
+ * <br>
+ * Every game gets its own {@link Model} and its own {@link Ai} instances, so games can run on
+ * all cores at once. A game moves on as soon as the AI responds. Calls go through an
+ * {@link AiExecutor}, so an AI that misses the timeout is interrupted. An AI that times out,
+ * throws or picks a move that is not available ends its game with no winner and the error
+ * recorded in the {@link Result}.
+ */
+public final class MatchRunner {
+
+	/**
+	 * Start positions of one game
+	 */
+	public static final class Match {
+		public final Player mrX;
+		public final ImmutableList<Player> detectives;
+		public Match(@Nonnull Player mrX, @Nonnull ImmutableList<Player> detectives) {
+			this.mrX = Objects.requireNonNull(mrX);
+			this.detectives = Objects.requireNonNull(detectives);
+		}
+		@Override public String toString() {
+			return mrX.location() + ":" + detectives.stream()
+					.map(p -> String.valueOf(p.location()))
+					.collect(Collectors.joining(","));
+		}
+	}
+
+	/**
+	 * Outcome of one game
+	 */
+	public static final class Result {
+		/**
+		 * Index of the game in the list given to {@link #run}
+		 */
+		public final int game;
+		public final Match match;
+		/**
+		 * The winner; empty if the game ended with an error
+		 */
+		public final ImmutableSet<Piece> winner;
+		/**
+		 * Number of entries in MrX's travel log at the end
+		 */
+		public final int rounds;
+		public final int moves;
+		public final Duration duration;
+		public final Optional<String> error;
+		Result(int game, Match match, ImmutableSet<Piece> winner, int rounds, int moves,
+		       Duration duration, Optional<String> error) {
+			this.game = game;
+			this.match = match;
+			this.winner = winner;
+			this.rounds = rounds;
+			this.moves = moves;
+			this.duration = duration;
+			this.error = error;
+		}
+		/**
+		 * @return whether MrX won the game
+		 */
+		public boolean mrXWon() { return winner.stream().anyMatch(Piece::isMrX); }
+		/**
+		 * @return whether the detectives won the game
+		 */
+		public boolean detectivesWon() { return winner.stream().anyMatch(Piece::isDetective); }
+		/**
+		 * @return this result as one tab separated line, see {@link #HEADER}
+		 */
+		@Nonnull public String toLine() {
+			return String.join("\t", String.valueOf(game),
+					mrXWon() ? "MRX" : detectivesWon() ? "DETECTIVES" : "NONE",
+					String.valueOf(rounds), String.valueOf(moves),
+					String.valueOf(duration.toMillis()), match.toString(),
+					error.map(e -> e.replaceAll("\\s+", " ")).orElse(""));
+		}
+		@Override public String toString() { return toLine(); }
+	}
+
+	/**
+	 * Column names of {@link Result#toLine()}
+	 */
+	public static final String HEADER =
+			String.join("\t", "game", "winner", "rounds", "moves", "millis", "start", "error");
+
+	private final GameSetup setup;
+	private final Supplier<? extends Ai> mrXAi;
+	private final Supplier<? extends Ai> detectivesAi;
+	private final Factory<Model> modelFactory;
+	private final Duration timeout;
+	private final int threads;
+	private final AiExecutor executor;
+
+	/**
+	 * A runner that plays through {@link MyModelFactory} with the UI's default 30 second
+	 * timeout on every available core
+	 */
+	public MatchRunner(@Nonnull GameSetup setup,
+	                   @Nonnull Supplier<? extends Ai> mrXAi,
+	                   @Nonnull Supplier<? extends Ai> detectivesAi) {
+		this(setup, mrXAi, detectivesAi, new MyModelFactory(), Duration.ofSeconds(30),
+				Runtime.getRuntime().availableProcessors(), new AiExecutor());
+	}
+
+	/**
+	 * @param setup the game setup of every game
+	 * @param mrXAi creates MrX's AI, called once per game
+	 * @param detectivesAi creates the detectives' AI, called once per game
+	 * @param modelFactory the model factory
+	 * @param timeout the timeout given to the AIs
+	 * @param threads the number of games played at once
+	 * @param executor runs the AIs, may be shared
+	 */
+	public MatchRunner(@Nonnull GameSetup setup,
+	                   @Nonnull Supplier<? extends Ai> mrXAi,
+	                   @Nonnull Supplier<? extends Ai> detectivesAi,
+	                   @Nonnull Factory<Model> modelFactory,
+	                   @Nonnull Duration timeout,
+	                   int threads,
+	                   @Nonnull AiExecutor executor) {
+		this.setup = Objects.requireNonNull(setup);
+		this.mrXAi = Objects.requireNonNull(mrXAi);
+		this.detectivesAi = Objects.requireNonNull(detectivesAi);
+		this.modelFactory = Objects.requireNonNull(modelFactory);
+		this.timeout = Objects.requireNonNull(timeout);
+		if (threads < 1) throw new IllegalArgumentException("threads < 1");
+		this.threads = threads;
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * @param games the number of games
+	 * @param detectives the number of detectives per game
+	 * @param seed the seed; the same seed gives the same matches
+	 * @return matches with random start locations, see
+	 * {@link ScotlandYard#generateMrXLocation(int)}, and the default tickets
+	 */
+	@Nonnull public static ImmutableList<Match> randomMatches(int games, int detectives, long seed) {
+		var pieces = ScotlandYard.DETECTIVES.asList();
+		if (detectives < 1 || detectives > pieces.size())
+			throw new IllegalArgumentException("Bad detective count " + detectives);
+		var matches = ImmutableList.<Match>builderWithExpectedSize(games);
+		for (int i = 0; i < games; i++) {
+			int gameSeed = Long.hashCode(seed * 31 + i);
+			var locations = ScotlandYard.generateDetectiveLocations(gameSeed, detectives);
+			var players = ImmutableList.<Player>builder();
+			for (int d = 0; d < detectives; d++) {
+				players.add(new Player(pieces.get(d), ScotlandYard.defaultDetectiveTickets(),
+						locations.get(d)));
+			}
+			matches.add(new Match(new Player(MrX.MRX,
+					ScotlandYard.defaultMrXTickets(),
+					ScotlandYard.generateMrXLocation(gameSeed)), players.build()));
+		}
+		return matches.build();
+	}
+
+	/**
+	 * Plays every match, {@code threads} at a time
+	 *
+	 * @param matches the matches
+	 * @param output where each result is written as soon as its game ends, as tab separated
+	 * lines under {@link #HEADER}; null to not write anything
+	 * @return the results, in the order of the matches
+	 * @throws IOException if the output cannot be written
+	 * @throws InterruptedException if interrupted while waiting for games
+	 */
+	@Nonnull public ImmutableList<Result> run(@Nonnull List<Match> matches,
+	                                          @Nullable Path output)
+			throws IOException, InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("match-%d")
+				.setDaemon(true)
+				.build());
+		var completion = new ExecutorCompletionService<Result>(executor);
+		try (Writer writer = output == null ? Writer.nullWriter() : Files.newBufferedWriter(output)) {
+			for (int i = 0; i < matches.size(); i++) {
+				int game = i;
+				completion.submit(() -> play(game, matches.get(game)));
+			}
+			writer.write(HEADER);
+			writer.write(System.lineSeparator());
+			var results = new ArrayList<Result>(matches.size());
+			for (int i = 0; i < matches.size(); i++) {
+				Result result = completion.take().get();
+				results.add(result);
+				writer.write(result.toLine());
+				writer.write(System.lineSeparator());
+				writer.flush();
+			}
+			results.sort(Comparator.comparingInt(r -> r.game));
+			return ImmutableList.copyOf(results);
+		} catch (ExecutionException e) {
+			// play catches everything the AIs throw, so this is a bug in the model
+			throw new IllegalStateException("Game failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Plays one game on the calling thread
+	 *
+	 * @param game the index of the game, only used in the result
+	 * @param match the start positions
+	 * @return the result
+	 */
+	@Nonnull public Result play(int game, @Nonnull Match match) {
+		long start = System.nanoTime();
+		Model model = modelFactory.build(setup, match.mrX, match.detectives);
+		Ai mrX = mrXAi.get();
+		Ai detectives = detectivesAi.get();
+		int moves = 0;
+		String error = null;
+		try {
+			mrX.onStart();
+			detectives.onStart();
+			var timeout = new Pair<>(this.timeout.toMillis(), TimeUnit.MILLISECONDS);
+			while (model.getCurrentBoard().getWinner().isEmpty()) {
+				Board board = model.getCurrentBoard();
+				var available = board.getAvailableMoves();
+				boolean mrXTurn = available.stream().anyMatch(m -> m.commencedBy().isMrX());
+				Ai ai = mrXTurn ? mrX : detectives;
+				Move move = executor.pickMove(ai, board, timeout);
+				if (!available.contains(move)) {
+					error = "Ai(" + ai.name() + ") selected an invalid move: " + move;
+					break;
+				}
+				model.chooseMove(move);
+				moves++;
+			}
+		} catch (TimeoutException e) {
+			error = e.getMessage();
+		} catch (ExecutionException e) {
+			error = "Ai threw " + e.getCause();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			error = "Interrupted";
+		} catch (RuntimeException e) {
+			error = "Ai threw " + e;
+		} finally {
+			mrX.onTerminate();
+			detectives.onTerminate();
+		}
+		Board board = model.getCurrentBoard();
+		return new Result(game, match,
+				error == null ? board.getWinner() : ImmutableSet.of(),
+				board.getMrXTravelLog().size(), moves,
+				Duration.ofNanos(System.nanoTime() - start), Optional.ofNullable(error));
+	}
+
+	/**
+	 * Plays games on the standard graph and writes the results to a file
+	 * <br>
+	 * Arguments: {@code <mrX Ai class> <detectives Ai class> <games> <output file>
+	 * [detectives=5] [threads=cores] [timeout seconds=30] [seed=0]}
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.err.println("usage: MatchRunner <mrX Ai class> <detectives Ai class> <games> " +
+					"<output> [detectives] [threads] [timeout seconds] [seed]");
+			System.exit(2);
+		}
+		Supplier<Ai> mrX = aiOf(args[0]);
+		Supplier<Ai> detectives = aiOf(args[1]);
+		int games = Integer.parseInt(args[2]);
+		Path output = Paths.get(args[3]);
+		int count = args.length > 4 ? Integer.parseInt(args[4]) : ScotlandYard.DETECTIVES.size();
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) :
+				Runtime.getRuntime().availableProcessors();
+		var timeout = Duration.ofSeconds(args.length > 6 ? Long.parseLong(args[6]) : 30);
+		long seed = args.length > 7 ? Long.parseLong(args[7]) : 0;
+
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		var executor = new AiExecutor();
+		var runner = new MatchRunner(setup, mrX, detectives, new MyModelFactory(), timeout, threads,
+				executor);
+		var results = runner.run(randomMatches(games, count, seed), output);
+		executor.latencies().forEach((name, latency) -> System.out.println(name + ": " + latency));
+		executor.close();
+		long mrXWins = results.stream().filter(Result::mrXWon).count();
+		long detectiveWins = results.stream().filter(Result::detectivesWon).count();
+		System.out.printf("%d games: MrX %d, detectives %d, errors %d%n", results.size(),
+				mrXWins, detectiveWins, results.size() - mrXWins - detectiveWins);
+	}
+
+	private static Supplier<Ai> aiOf(String className) throws ClassNotFoundException {
+		Class<? extends Ai> type = Class.forName(className).asSubclass(Ai.class);
+		return () -> {
+			try {
+				return type.getConstructor().newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("Unable to create Ai instance of " + type, e);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,51 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import uk.ac.bris.cs.scotlandyard.ai.AlphaBetaAi;
+import uk.ac.bris.cs.scotlandyard.ai.OpeningBook;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Plays the first rounds from every standard start with {@link AlphaBetaAi} on both sides and
+ * saves the {@link OpeningBook} where {@link OpeningBook#find} looks for it when
+ * {@value OpeningBook#DIRECTORY_PROPERTY} names the output directory.
+ */
+public final class OpeningBookGenerator {
+
+	private OpeningBookGenerator() {}
+
+	/**
+	 * Arguments: {@code <output directory> [detectives=5] [milliseconds per move=1000]
+	 * [threads=cores] [rounds=2]}
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: OpeningBookGenerator <output directory> [detectives] " +
+					"[milliseconds per move] [threads] [rounds]");
+			System.exit(2);
+		}
+		Path directory = Paths.get(args[0]);
+		int detectives = args.length > 1 ? Integer.parseInt(args[1]) :
+				ScotlandYard.DETECTIVES.size();
+		var timeout = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 1000);
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) :
+				Runtime.getRuntime().availableProcessors();
+		int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		var starts = OpeningBook.starts(detectives);
+		long start = System.nanoTime();
+		// one search thread per Ai, the starts are what runs in parallel
+		var book = OpeningBook.build(setup, starts, rounds, () -> new AlphaBetaAi(1, 18),
+				timeout, threads);
+		Path file = directory.resolve(OpeningBook.fileName(setup));
+		book.save(file);
+		System.out.printf("Played %d starts for %d rounds in %.1fs, %d positions: %s%n",
+				starts.size(), rounds, (System.nanoTime() - start) / 1e9, book.size(), file);
+	}
+
+}
@@ -0,0 +1,42 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.Tablebase;
+
+/**
+ * Solves endgames on the standard graph and saves the {@link Tablebase} where
+ * {@link Tablebase#find} looks for it when {@value Tablebase#DIRECTORY_PROPERTY} names the
+ * output directory.
+ */
+public final class TablebaseGenerator {
+
+	private TablebaseGenerator() {}
+
+	/**
+	 * Arguments: {@code <output directory> <detectives> <log entries left> [double tickets=2]}
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("usage: TablebaseGenerator <output directory> <detectives> " +
+					"<log entries left> [double tickets]");
+			System.exit(2);
+		}
+		Path directory = Paths.get(args[0]);
+		int detectives = Integer.parseInt(args[1]);
+		int slots = Integer.parseInt(args[2]);
+		int doubles = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+		var graph = CompiledGraph.of(ScotlandYard.standardGraph());
+		long start = System.nanoTime();
+		var tablebase = Tablebase.solve(graph, detectives, slots, Math.min(doubles, slots / 2));
+		Path file = directory.resolve(Tablebase.fileName(graph, detectives));
+		tablebase.save(file);
+		System.out.printf("Solved %d detectives, %d entries in %.1fs: %s%n", detectives, slots,
+				(System.nanoTime() - start) / 1e9, file);
+	}
+
+}
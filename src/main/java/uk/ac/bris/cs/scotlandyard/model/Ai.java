@@ -6,6 +6,7 @@ import io.atlassian.fugue.Pair;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
 
@@ -34,6 +35,25 @@ public interface Ai {
 	 */
 	@Nonnull Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair);
 
+	/**
+	 * Anytime version of {@link #pickMove(Board, Pair)}; this is the method the game calls.
+	 * Each time the AI finds a better move it may hand it to {@code candidates}. If the AI has
+	 * not returned when the time in {@code timeoutPair} is up, the game plays the last candidate
+	 * instead of ending on a timeout, and interrupts the AI. An AI can therefore keep searching
+	 * until it is interrupted rather than stopping early to be safe.
+	 * Defaults to {@link #pickMove(Board, Pair)} without any candidates
+	 *
+	 * @param board       the game board
+	 * @param timeoutPair see {@link #pickMove(Board, Pair)}
+	 * @param candidates  takes the best move found so far, may be called from any thread
+	 * @return a correct move from {@link Board#getAvailableMoves()} in the game board
+	 */
+	@Nonnull default Move pickMove(@Nonnull Board board,
+	                               Pair<Long, TimeUnit> timeoutPair,
+	                               @Nonnull Consumer<Move> candidates) {
+		return pickMove(board, timeoutPair);
+	}
+
 
 	/**
 	 * Called after the game has ended and that this Ai is about to be terminated
@@ -0,0 +1,287 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * Runs {@link Ai#pickMove} calls with a hard deadline.
+ * <br>
+ * The deadline of a call is its timeout pair, counted from when the call is submitted. AIs are
+ * called through {@link Ai#pickMove(Board, Pair, Consumer)}; at the deadline the call settles
+ * on the last candidate the AI handed over, or fails with a {@link TimeoutException} if there
+ * is none. Either way the thread running the AI is interrupted; an AI that checks {@link Thread#interrupted()} (or blocks in anything that does)
+ * stops there. Java cannot stop a thread that ignores the interrupt, so a thread still inside
+ * the AI a grace period after the deadline is quarantined instead: it drops to the lowest
+ * priority and is counted by {@link #quarantined()} until the AI returns, after which the
+ * thread is reused as normal. A late move is thrown away.
+ * <br>
+ * The time every call spends in the AI is recorded per {@link Ai#name()}, see
+ * {@link #latencies()}.
+ */
+public final class AiExecutor implements AutoCloseable {
+
+	/**
+	 * Latency of the calls made to one AI
+	 */
+	public static final class Latency {
+		public final long calls;
+		public final long timeouts;
+		/**
+		 * Calls that timed out and settled on a candidate, counted in {@link #timeouts} too
+		 */
+		public final long candidates;
+		public final long failures;
+		public final Duration total;
+		public final Duration max;
+		private Latency(long calls, long timeouts, long candidates, long failures,
+		                long total, long max) {
+			this.calls = calls;
+			this.timeouts = timeouts;
+			this.candidates = candidates;
+			this.failures = failures;
+			this.total = Duration.ofNanos(total);
+			this.max = Duration.ofNanos(max);
+		}
+		/**
+		 * @return the mean time spent in the AI, zero if it was never called
+		 */
+		@Nonnull public Duration mean() {
+			return calls == 0 ? Duration.ZERO : total.dividedBy(calls);
+		}
+		@Override public String toString() {
+			return "Latency{calls=" + calls + ", timeouts=" + timeouts +
+					", candidates=" + candidates + ", failures=" + failures +
+					", mean=" + mean().toMillis() + "ms, max=" + max.toMillis() + "ms}";
+		}
+	}
+
+	private static final class Recorder {
+		private long calls, timeouts, candidates, failures, total, max;
+		synchronized void record(long nanos, boolean timedOut, boolean candidate, boolean failed) {
+			calls++;
+			if (timedOut) timeouts++;
+			if (candidate) candidates++;
+			if (failed) failures++;
+			total += nanos;
+			max = Math.max(max, nanos);
+		}
+		synchronized Latency snapshot() {
+			return new Latency(calls, timeouts, candidates, failures, total, max);
+		}
+	}
+
+	private final class Call implements Runnable {
+		private final Ai ai;
+		private final Board board;
+		private final Pair<Long, TimeUnit> timeout;
+		private final CompletableFuture<Move> future = new CompletableFuture<>();
+		private ScheduledFuture<?> deadline;
+		private volatile Move candidate;
+		// the thread inside the AI, whether the AI returned, and whether the deadline settled on
+		// a candidate, all guarded by this
+		private Thread thread;
+		private boolean returned;
+		private boolean settled;
+
+		private Call(Ai ai, Board board, Pair<Long, TimeUnit> timeout) {
+			this.ai = ai;
+			this.board = board;
+			this.timeout = timeout;
+		}
+
+		@Override public void run() {
+			var current = Thread.currentThread();
+			synchronized (this) {
+				if (future.isDone()) return;
+				thread = current;
+			}
+			long start = System.nanoTime();
+			Move move = null;
+			Throwable failure = null;
+			try {
+				move = ai.pickMove(board, timeout, this::offer);
+			} catch (Throwable e) {
+				failure = e;
+			}
+			long nanos = System.nanoTime() - start;
+			boolean timedOut, settled;
+			synchronized (this) {
+				thread = null;
+				returned = true;
+				timedOut = future.isDone();
+				settled = this.settled;
+			}
+			// nothing interrupts the thread after it left the AI, clear what is left
+			Thread.interrupted();
+			if (quarantined.remove(current)) current.setPriority(Thread.NORM_PRIORITY);
+			deadline.cancel(false);
+			// recorded first so that whoever sees the move also sees its latency
+			latencies.computeIfAbsent(ai.name(), k -> new Recorder())
+					.record(nanos, timedOut, settled, failure != null);
+			if (failure == null) future.complete(move);
+			else future.completeExceptionally(failure);
+		}
+
+		private synchronized void interrupt() {
+			if (thread != null) thread.interrupt();
+		}
+
+		private void offer(Move move) {
+			candidate = Objects.requireNonNull(move);
+		}
+
+		private void expire() {
+			synchronized (this) {
+				// too late, the move is on its way
+				if (returned) return;
+				Move candidate = this.candidate;
+				boolean expired = candidate != null ?
+						(settled = future.complete(candidate)) :
+						future.completeExceptionally(new TimeoutException(
+								"Ai(" + ai.name() + ") did not pick a move within " +
+										timeout.left() + " " + timeout.right()));
+				if (!expired) return;
+				interrupt();
+			}
+			watchdog.schedule(this::quarantine, grace.toNanos(), TimeUnit.NANOSECONDS);
+		}
+
+		private synchronized void quarantine() {
+			if (thread == null) return;
+			quarantined.add(thread);
+			thread.setPriority(Thread.MIN_PRIORITY);
+		}
+	}
+
+	private final ThreadPoolExecutor workers;
+	private final ScheduledThreadPoolExecutor watchdog;
+	private final Duration grace;
+	private final Set<Thread> quarantined = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<String, Recorder> latencies = new ConcurrentHashMap<>();
+
+	/**
+	 * An executor with at most 256 threads and a one second grace period
+	 */
+	public AiExecutor() { this(256, Duration.ofSeconds(1)); }
+
+	/**
+	 * @param maxThreads the most calls that can be inside an AI at once, quarantined ones
+	 * included; calls beyond that fail with a {@link RejectedExecutionException}
+	 * @param grace how long an AI has to return after the deadline before its thread is
+	 * quarantined
+	 */
+	public AiExecutor(int maxThreads, @Nonnull Duration grace) {
+		if (maxThreads < 1) throw new IllegalArgumentException("maxThreads < 1");
+		this.grace = Objects.requireNonNull(grace);
+		this.workers = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), new ThreadFactoryBuilder()
+				.setNameFormat("ai-thread-%d")
+				.setDaemon(true)
+				.build());
+		this.watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+				.setNameFormat("ai-watchdog-%d")
+				.setDaemon(true)
+				.build());
+		this.watchdog.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Starts a call
+	 *
+	 * @param ai the AI
+	 * @param board the board, passed to the AI as is
+	 * @param timeout the timeout, passed to the AI as is and used as the deadline
+	 * @return the move, or the last candidate at the deadline; fails with a
+	 * {@link TimeoutException} at the deadline if there is no candidate or with whatever the AI
+	 * throws. Cancelling it interrupts the AI.
+	 */
+	@Nonnull public CompletableFuture<Move> submit(@Nonnull Ai ai,
+	                                               @Nonnull Board board,
+	                                               @Nonnull Pair<Long, TimeUnit> timeout) {
+		var call = new Call(Objects.requireNonNull(ai), Objects.requireNonNull(board),
+				Objects.requireNonNull(timeout));
+		call.future.whenComplete((move, e) -> {
+			if (e instanceof CancellationException) call.interrupt();
+		});
+		try {
+			call.deadline = watchdog.schedule(call::expire,
+					timeout.right().toNanos(timeout.left()), TimeUnit.NANOSECONDS);
+			workers.execute(call);
+		} catch (RejectedExecutionException e) {
+			if (call.deadline != null) call.deadline.cancel(false);
+			call.future.completeExceptionally(e);
+		}
+		return call.future;
+	}
+
+	/**
+	 * Makes a call and waits for it
+	 *
+	 * @param ai the AI
+	 * @param board the board
+	 * @param timeout the timeout
+	 * @return the move, or the last candidate at the deadline
+	 * @throws TimeoutException if the AI missed the deadline without a candidate
+	 * @throws ExecutionException if the AI threw, the exception is the cause
+	 * @throws InterruptedException if interrupted while waiting, the AI is interrupted too
+	 */
+	@Nonnull public Move pickMove(@Nonnull Ai ai,
+	                              @Nonnull Board board,
+	                              @Nonnull Pair<Long, TimeUnit> timeout)
+			throws TimeoutException, ExecutionException, InterruptedException {
+		var future = submit(ai, board, timeout);
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TimeoutException) throw (TimeoutException) e.getCause();
+			throw e;
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the threads that are still inside an AI after the deadline and grace period
+	 */
+	@Nonnull public ImmutableSet<Thread> quarantined() { return ImmutableSet.copyOf(quarantined); }
+
+	/**
+	 * @return the latency of every AI called so far, by {@link Ai#name()}
+	 */
+	@Nonnull public ImmutableMap<String, Latency> latencies() {
+		return latencies.entrySet().stream().collect(ImmutableMap.toImmutableMap(
+				Map.Entry::getKey, e -> e.getValue().snapshot()));
+	}
+
+	/**
+	 * Interrupts every AI and stops the threads
+	 */
+	@Override public void close() {
+		watchdog.shutdownNow();
+		workers.shutdownNow();
+	}
+
+}
@@ -0,0 +1,436 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.StationBitboards.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.StationBitboards.TICKET_COUNT;
+
+/**
+ * A {@link GameState} factory backed by {@link StationBitboards}.
+ * <br>
+ * Detective occupancy and MrX's candidate stations are kept as bitsets so that destination
+ * filtering is a word-wise {@code AND NOT} over the per-ticket adjacency masks. Moves and the
+ * winner are only computed when asked for, and {@link GameState#getAvailableMoveList()} and
+ * {@link GameState#advance(long)} work on {@link PackedMove}s directly.
+ */
+public final class BitboardGameStateFactory implements Factory<GameState> {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	@Nonnull @Override public GameState build(GameSetup setup,
+	                                          Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		Objects.requireNonNull(mrX);
+		return restore(setup, mrX, detectives, ImmutableList.of(), ImmutableSet.of(mrX.piece()));
+	}
+
+	/**
+	 * Creates a game state in the middle of a game, e.g. one read back by {@link BoardCodec}.
+	 * With an empty log and only MrX remaining this is the same as
+	 * {@link #build(GameSetup, Player, ImmutableList)}.
+	 * <br>
+	 * MrX's candidate stations are rebuilt from the log alone: every station before the last
+	 * reveal (or MrX's location if nothing was logged yet) followed by the logged tickets, so
+	 * they may include stations that were ruled out by detective positions in earlier rounds.
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @param log MrX's travel log so far
+	 * @param remaining the players yet to move; only MrX, only detectives or nobody
+	 * @return the game state
+	 */
+	@Nonnull public GameState restore(GameSetup setup,
+	                                  Player mrX,
+	                                  ImmutableList<Player> detectives,
+	                                  ImmutableList<LogEntry> log,
+	                                  ImmutableSet<Piece> remaining) {
+		Objects.requireNonNull(setup);
+		Objects.requireNonNull(mrX);
+		Objects.requireNonNull(detectives);
+		Objects.requireNonNull(log);
+		Objects.requireNonNull(remaining);
+		if (detectives.contains(null)) throw new NullPointerException();
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Empty graph");
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Empty moves");
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is not MrX: " + mrX);
+
+		var boards = StationBitboards.of(setup.graph);
+		int players = detectives.size() + 1;
+		var pieces = new Piece[players];
+		var pieceIndices = new int[players];
+		var locations = new int[players];
+		var tickets = new int[players * TICKET_COUNT];
+		var present = new int[players];
+		var occupied = boards.newSet();
+		for (int i = 0; i < players; i++) {
+			Player player = i == 0 ? mrX : detectives.get(i - 1);
+			if (i != 0) {
+				if (!player.isDetective())
+					throw new IllegalArgumentException("Not a detective: " + player);
+				if (player.has(Ticket.DOUBLE) || player.has(Ticket.SECRET))
+					throw new IllegalArgumentException("Detective with MrX tickets: " + player);
+			}
+			for (int j = 0; j < i; j++)
+				if (pieces[j] == player.piece())
+					throw new IllegalArgumentException("Duplicate piece: " + player);
+			int location = boards.index(player.location());
+			if (location == -1)
+				throw new IllegalArgumentException("Location not in graph: " + player);
+			if (i != 0) {
+				if (StationBitboards.test(occupied, location))
+					throw new IllegalArgumentException("Overlapping detectives: " + player);
+				StationBitboards.set(occupied, location);
+			}
+			pieces[i] = player.piece();
+			pieceIndices[i] = PackedMove.pieceIndex(player.piece());
+			locations[i] = location;
+			for (Ticket ticket : TICKETS)
+				tickets[i * TICKET_COUNT + ticket.ordinal()] = player.count(ticket);
+			present[i] = player.present();
+		}
+		if (log.size() > setup.moves.size())
+			throw new IllegalArgumentException("Log longer than the setup: " + log.size());
+		int remainingMask = 0;
+		for (Piece piece : remaining) {
+			int index = Arrays.asList(pieces).indexOf(piece);
+			if (index == -1) throw new IllegalArgumentException("Not a player: " + piece);
+			remainingMask |= 1 << index;
+		}
+		if ((remainingMask & 1) != 0 && remainingMask != 1)
+			throw new IllegalArgumentException("MrX remaining with detectives: " + remaining);
+
+		var candidates = boards.newSet();
+		int from = log.size();
+		while (from > 0 && log.get(from - 1).location().isEmpty()) from--;
+		if (from > 0) {
+			int revealed = boards.index(log.get(from - 1).location().orElseThrow());
+			if (revealed == -1)
+				throw new IllegalArgumentException("Log entry not in graph: " + log.get(from - 1));
+			StationBitboards.set(candidates, revealed);
+		} else if (log.isEmpty()) {
+			StationBitboards.set(candidates, locations[0]);
+		} else {
+			for (int i = 0; i < boards.size; i++) StationBitboards.set(candidates, i);
+		}
+		for (int i = from; i < log.size(); i++) {
+			var next = boards.newSet();
+			boards.expand(candidates, log.get(i).ticket().ordinal(), next);
+			candidates = next;
+		}
+		for (int w = 0; w < candidates.length; w++) candidates[w] &= ~occupied[w];
+
+		long key = Zobrist.round(log.size());
+		for (int i = 0; i < players; i++) {
+			key ^= BitboardGameState.playerKey(boards, pieceIndices, locations, tickets, i);
+			if ((remainingMask & (1 << i)) != 0) key ^= Zobrist.remaining(pieceIndices[i]);
+		}
+		return new BitboardGameState(setup, boards, pieces, pieceIndices, locations, tickets,
+				present, occupied, candidates, remainingMask, TravelLog.of(log), key);
+	}
+
+	/**
+	 * The game state; pieces are indexed with MrX at 0 followed by the detectives in the order
+	 * they were given to {@link #build(GameSetup, Player, ImmutableList)}.
+	 */
+	public static final class BitboardGameState implements GameState, RemainingPieces {
+		private final GameSetup setup;
+		private final StationBitboards boards;
+		private final Piece[] pieces;
+		private final int[] pieceIndices;
+		private final int[] locations;
+		private final int[] tickets;
+		// the tickets in each player's ticket map, MrX is only given tickets in the map
+		private final int[] present;
+		private final long[] occupied;
+		private final long[] candidates;
+		private final int remaining;
+		private final TravelLog log;
+		private final long key;
+
+		private ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+
+		private BitboardGameState(GameSetup setup,
+		                          StationBitboards boards,
+		                          Piece[] pieces,
+		                          int[] pieceIndices,
+		                          int[] locations,
+		                          int[] tickets,
+		                          int[] present,
+		                          long[] occupied,
+		                          long[] candidates,
+		                          int remaining,
+		                          TravelLog log,
+		                          long key) {
+			this.setup = setup;
+			this.boards = boards;
+			this.pieces = pieces;
+			this.pieceIndices = pieceIndices;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.present = present;
+			this.occupied = occupied;
+			this.candidates = candidates;
+			this.remaining = remaining;
+			this.log = log;
+			this.key = key;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+			return ImmutableSet.copyOf(pieces);
+		}
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int index = indexOf(detective);
+			return index <= 0 ? Optional.empty() :
+					Optional.of(boards.station(locations[index]));
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int index = indexOf(piece);
+			if (index == -1) return Optional.empty();
+			return Optional.of(ticket -> tickets[index * TICKET_COUNT + ticket.ordinal()]);
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() { return log.asList(); }
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			if (winner == null) winner = computeWinner();
+			return winner;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			if (moves == null) moves = computeMoves();
+			return moves;
+		}
+
+		/**
+		 * @param station the station
+		 * @return whether MrX could be at the station given everything the detectives have seen
+		 */
+		public boolean isMrXCandidate(int station) {
+			int index = boards.index(station);
+			return index != -1 && StationBitboards.test(candidates, index);
+		}
+
+		/**
+		 * @return the number of stations MrX could be at
+		 */
+		public int mrXCandidateCount() {
+			int count = 0;
+			for (long word : candidates) count += Long.bitCount(word);
+			return count;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			long packed = PackedMove.encode(move);
+			if (!isLegal(packed)) throw new IllegalArgumentException("Illegal move: " + move);
+			return apply(packed);
+		}
+
+		@Nonnull @Override public GameState advance(long move) {
+			if (!isLegal(move))
+				throw new IllegalArgumentException("Illegal move: " + Long.toHexString(move));
+			return apply(move);
+		}
+
+		@Nonnull @Override public MoveList getAvailableMoveList() {
+			var list = new MoveList();
+			if (getWinner().isEmpty()) generate(list);
+			return list;
+		}
+
+		private GameState apply(long move) {
+			int index = playerOf(PackedMove.pieceIndex(move));
+			if (index != 0)
+				return advanceDetective(index, PackedMove.ticket1Ordinal(move),
+						PackedMove.destination1(move));
+			return PackedMove.isDouble(move) ?
+					advanceMrX(PackedMove.ticket1Ordinal(move), PackedMove.destination1(move),
+							PackedMove.ticket2Ordinal(move), PackedMove.destination2(move)) :
+					advanceMrX(PackedMove.ticket1Ordinal(move), PackedMove.destination1(move),
+							-1, 0);
+		}
+
+		private GameState advanceMrX(int ticket1, int destination1,
+		                             int ticket2, int destination2) {
+			var newTickets = tickets.clone();
+			var newCandidates = hop(candidates, log.size(), ticket1, destination1);
+			var newLog = log.append(entry(log.size(), ticket1, destination1));
+			newTickets[ticket1]--;
+			if (ticket2 != -1) {
+				newCandidates = hop(newCandidates, newLog.size(), ticket2, destination2);
+				newLog = newLog.append(entry(newLog.size(), ticket2, destination2));
+				newTickets[ticket2]--;
+				newTickets[DOUBLE]--;
+			}
+			var newLocations = locations.clone();
+			newLocations[0] = boards.index(ticket2 == -1 ? destination1 : destination2);
+			int newRemaining = ((1 << pieces.length) - 1) & ~1;
+			long newKey = key
+					^ playerKey(boards, pieceIndices, locations, tickets, 0)
+					^ playerKey(boards, pieceIndices, newLocations, newTickets, 0)
+					^ remainingKey(remaining) ^ remainingKey(newRemaining)
+					^ Zobrist.round(log.size()) ^ Zobrist.round(newLog.size());
+			return new BitboardGameState(setup, boards, pieces, pieceIndices, newLocations,
+					newTickets, present, occupied, newCandidates, newRemaining, newLog, newKey);
+		}
+
+		private long[] hop(long[] from, int round, int ticket, int destination) {
+			var to = boards.newSet();
+			if (setup.moves.get(round)) {
+				StationBitboards.set(to, boards.index(destination));
+			} else {
+				boards.expand(from, ticket, to);
+				for (int w = 0; w < to.length; w++) to[w] &= ~occupied[w];
+			}
+			return to;
+		}
+
+		private LogEntry entry(int round, int ticket, int destination) {
+			return setup.moves.get(round) ?
+					LogEntry.reveal(TICKETS[ticket], destination) :
+					LogEntry.hidden(TICKETS[ticket]);
+		}
+
+		private GameState advanceDetective(int index, int ticket, int destination) {
+			int location = boards.index(destination);
+			var newLocations = locations.clone();
+			newLocations[index] = location;
+			var newTickets = tickets.clone();
+			newTickets[index * TICKET_COUNT + ticket]--;
+			if ((present[0] & (1 << ticket)) != 0) newTickets[ticket]++;
+			var newOccupied = occupied.clone();
+			StationBitboards.clear(newOccupied, locations[index]);
+			StationBitboards.set(newOccupied, location);
+			var newCandidates = candidates.clone();
+			StationBitboards.clear(newCandidates, location);
+
+			// a stuck detective keeps its turn in case a later move this round frees it
+			int newRemaining = remaining & ~(1 << index);
+			boolean stuck = true;
+			for (int i = 1; i < pieces.length && stuck; i++)
+				stuck = (newRemaining & (1 << i)) == 0 ||
+						!canMove(i, newLocations, newTickets, newOccupied);
+			if (stuck) newRemaining = log.size() != setup.moves.size() ? 1 : 0;
+			long newKey = key
+					^ playerKey(boards, pieceIndices, locations, tickets, index)
+					^ playerKey(boards, pieceIndices, newLocations, newTickets, index)
+					^ playerKey(boards, pieceIndices, locations, tickets, 0)
+					^ playerKey(boards, pieceIndices, newLocations, newTickets, 0)
+					^ remainingKey(remaining) ^ remainingKey(newRemaining);
+			return new BitboardGameState(setup, boards, pieces, pieceIndices, newLocations,
+					newTickets, present, newOccupied, newCandidates, newRemaining, log, newKey);
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> remainingPieces() {
+			var pieces = ImmutableSet.<Piece>builder();
+			for (int i = 0; i < this.pieces.length; i++)
+				if ((remaining & (1 << i)) != 0) pieces.add(this.pieces[i]);
+			return pieces.build();
+		}
+
+		@Override public long zobristKey() { return key; }
+
+		@Override public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			BitboardGameState that = (BitboardGameState) o;
+			return key == that.key && remaining == that.remaining &&
+					Arrays.equals(pieces, that.pieces) &&
+					Arrays.equals(locations, that.locations) &&
+					Arrays.equals(tickets, that.tickets) &&
+					Arrays.equals(present, that.present) &&
+					log.equals(that.log) &&
+					(setup == that.setup || setup.equals(that.setup));
+		}
+
+		@Override public int hashCode() { return Long.hashCode(key); }
+
+		static long playerKey(StationBitboards boards, int[] pieceIndices,
+		                      int[] locations, int[] tickets, int index) {
+			long key = Zobrist.location(pieceIndices[index], boards.station(locations[index]));
+			for (int ticket = 0; ticket < TICKET_COUNT; ticket++) {
+				key ^= Zobrist.tickets(pieceIndices[index], ticket,
+						tickets[index * TICKET_COUNT + ticket]);
+			}
+			return key;
+		}
+
+		private long remainingKey(int remaining) {
+			long key = 0;
+			for (int i = 0; i < pieces.length; i++)
+				if ((remaining & (1 << i)) != 0) key ^= Zobrist.remaining(pieceIndices[i]);
+			return key;
+		}
+
+		private ImmutableSet<Piece> computeWinner() {
+			for (int i = 1; i < pieces.length; i++)
+				if (locations[i] == locations[0]) return detectives();
+			boolean detectivesStuck = true;
+			for (int i = 1; i < pieces.length && detectivesStuck; i++)
+				detectivesStuck = !canMove(i, locations, tickets, occupied);
+			if (detectivesStuck || remaining == 0) return ImmutableSet.of(pieces[0]);
+			if (remaining == 1 && !canMove(0, locations, tickets, occupied)) return detectives();
+			return ImmutableSet.of();
+		}
+
+		private ImmutableSet<Piece> detectives() {
+			return ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+		}
+
+		private boolean canMove(int index, int[] locations, int[] tickets, long[] occupied) {
+			return boards.canMove(tickets, index * TICKET_COUNT, locations[index], occupied);
+		}
+
+		private ImmutableSet<Move> computeMoves() {
+			return getAvailableMoveList().toMoves();
+		}
+
+		private void generate(MoveList into) {
+			for (int i = 0; i < pieces.length; i++) {
+				if ((remaining & (1 << i)) == 0) continue;
+				boards.generate(into, pieceIndices[i], locations[i],
+						tickets, i * TICKET_COUNT, occupied, canDoubleMove());
+			}
+		}
+
+		private boolean canDoubleMove() { return log.size() + 2 <= setup.moves.size(); }
+
+		private boolean isLegal(long move) {
+			int index = playerOf(PackedMove.pieceIndex(move));
+			return index != -1 && (remaining & (1 << index)) != 0 &&
+					boards.isLegal(move, pieceIndices[index], locations[index],
+							tickets, index * TICKET_COUNT, occupied, canDoubleMove()) &&
+					getWinner().isEmpty();
+		}
+
+		private int playerOf(int pieceIndex) {
+			for (int i = 0; i < pieceIndices.length; i++)
+				if (pieceIndices[i] == pieceIndex) return i;
+			return -1;
+		}
+
+		private int indexOf(Piece piece) {
+			for (int i = 0; i < pieces.length; i++)
+				if (pieces[i] == piece) return i;
+			return -1;
+		}
+	}
+
+}
@@ -74,6 +74,53 @@ public interface Board {
 		 * {@link #getAvailableMoves()}
 		 */
 		@Nonnull GameState advance(Move move);
+		/**
+		 * Same as {@link #getAvailableMoves()} but with every move packed into a {@code long},
+		 * see {@link PackedMove}. Implementations may generate the list without creating any
+		 * {@link Move} instances.
+		 *
+		 * @return the current available moves as a new list
+		 */
+		@Nonnull default MoveList getAvailableMoveList() {
+			return MoveList.of(getAvailableMoves());
+		}
+		/**
+		 * Same as {@link #advance(Move)} but with the move packed into a {@code long}
+		 *
+		 * @param move the move to make, see {@link PackedMove}
+		 * @return the game state of which the given move has been made
+		 * @throws IllegalArgumentException if the move was not a move from
+		 * {@link #getAvailableMoves()}
+		 */
+		@Nonnull default GameState advance(long move) {
+			return advance(PackedMove.decode(move));
+		}
+		/**
+		 * A 64-bit key of the positions, ticket counts, players yet to move and travel log
+		 * length of this state, see {@link Zobrist}. Equal states have equal keys.
+		 * <br>
+		 * The default implementation recomputes the key from what {@link Board} exposes, which
+		 * does not include MrX's location; implementations that know it should include it and
+		 * keep the key up to date in {@link #advance(Move)}.
+		 *
+		 * @return the Zobrist key
+		 */
+		default long zobristKey() {
+			long key = Zobrist.round(getMrXTravelLog().size());
+			for (Piece piece : getPlayers()) {
+				int index = Zobrist.pieceIndex(piece);
+				if (piece.isDetective()) {
+					key ^= Zobrist.location(index,
+							getDetectiveLocation((Detective) piece).orElseThrow());
+				}
+				TicketBoard tickets = getPlayerTickets(piece).orElseThrow();
+				for (Ticket ticket : Ticket.values())
+					key ^= Zobrist.tickets(index, ticket.ordinal(), tickets.getCount(ticket));
+			}
+			return key ^ Zobrist.remaining(getAvailableMoves().stream()
+					.map(Move::commencedBy)
+					.collect(ImmutableSet.toImmutableSet()));
+		}
 	}
 
 
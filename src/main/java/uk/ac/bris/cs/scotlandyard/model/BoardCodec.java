@@ -0,0 +1,331 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A compact, versioned binary format for boards, moves and setups.
+ * <br>
+ * The graph itself is never written, only its {@link CompiledGraph#fingerprint()}; readers
+ * supply the graph and get an {@link IOException} if it is not the one the data was written
+ * with. A board of the standard game with six players fits in 128 bytes:
+ * <pre>
+ * byte    format version, {@link #VERSION}
+ * long    graph fingerprint
+ * varint  number of rounds, then one bit per round, set for reveal rounds
+ * byte    number of players, MrX first
+ *         per player: byte piece index in {@link ScotlandYard#ALL_PIECES}, varint location
+ *         (0 if MrX's location is unknown), one varint per ticket in ordinal order
+ * byte    players yet to move, bit i for the i-th player written
+ * varint  number of log entries
+ *         per entry: byte ticket ordinal, 0x80 set for reveals followed by a varint location
+ * </pre>
+ * Moves are written as their {@link PackedMove} {@code long}.
+ */
+public final class BoardCodec {
+
+	private BoardCodec() {}
+
+	/**
+	 * The format version written by this codec
+	 */
+	public static final int VERSION = 1;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int REVEAL = 0x80;
+
+	/**
+	 * Same as {@link #write(DataOutput, Board)} into a new array
+	 */
+	@Nonnull public static byte[] encode(@Nonnull Board board) {
+		return encode(out -> write(out, board));
+	}
+
+	/**
+	 * Same as {@link #write(DataOutput, Board, int)} into a new array
+	 */
+	@Nonnull public static byte[] encode(@Nonnull Board board, int mrXLocation) {
+		return encode(out -> write(out, board, mrXLocation));
+	}
+
+	/**
+	 * Same as {@link #read(DataInput, ImmutableValueGraph)} from an array
+	 *
+	 * @throws IllegalArgumentException if the data is malformed or was written for another graph
+	 */
+	@Nonnull public static GameState decode(@Nonnull byte[] bytes,
+	                                        @Nonnull ImmutableValueGraph<Integer,
+			                                        ImmutableSet<Transport>> graph) {
+		try {
+			return read(new DataInputStream(new ByteArrayInputStream(bytes)), graph);
+		} catch (IOException e) { throw new IllegalArgumentException(e.getMessage(), e); }
+	}
+
+	/**
+	 * Writes a board with MrX's location taken from the available moves if it is MrX's turn and
+	 * left unknown otherwise, see {@link #write(DataOutput, Board, int)}
+	 *
+	 * @param out the output
+	 * @param board the board
+	 * @throws IOException if the output fails
+	 */
+	public static void write(@Nonnull DataOutput out, @Nonnull Board board) throws IOException {
+		write(out, board, board.getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst().orElse(0));
+	}
+
+	/**
+	 * Writes a board. Players yet to move are taken from the game states of this package, and
+	 * from the available moves of any other board; a board that is over is written so that
+	 * reading it back gives the same winner.
+	 *
+	 * @param out the output
+	 * @param board the board
+	 * @param mrXLocation MrX's location, 0 if unknown; boards with an unknown location can be
+	 * written but not read back as a {@link GameState}
+	 * @throws IOException if the output fails
+	 */
+	public static void write(@Nonnull DataOutput out, @Nonnull Board board, int mrXLocation)
+			throws IOException {
+		GameSetup setup = board.getSetup();
+		var players = new ArrayList<Piece>();
+		board.getPlayers().stream().filter(Piece::isMrX).forEach(players::add);
+		board.getPlayers().stream().filter(Piece::isDetective).forEach(players::add);
+		if (players.isEmpty() || !players.get(0).isMrX())
+			throw new IllegalArgumentException("Board has no MrX");
+
+		out.writeByte(VERSION);
+		writeSetup(out, setup);
+		out.writeByte(players.size());
+		for (Piece piece : players) {
+			out.writeByte(PackedMove.pieceIndex(piece));
+			writeVarInt(out, piece.isMrX() ? mrXLocation :
+					board.getDetectiveLocation((Detective) piece).orElseThrow());
+			var tickets = board.getPlayerTickets(piece).orElseThrow();
+			for (Ticket ticket : TICKETS) writeVarInt(out, tickets.getCount(ticket));
+		}
+		int remaining = 0;
+		if (board instanceof RemainingPieces) {
+			for (Piece piece : ((RemainingPieces) board).remainingPieces())
+				remaining |= 1 << players.indexOf(piece);
+		} else {
+			for (Move move : board.getAvailableMoves())
+				remaining |= 1 << players.indexOf(move.commencedBy());
+			// a stuck MrX on MrX's own turn is the only way to end a game with someone yet to
+			// move
+			if (remaining == 0 && !board.getWinner().isEmpty() &&
+					!board.getWinner().contains(players.get(0))) remaining = 1;
+		}
+		out.writeByte(remaining);
+		var log = board.getMrXTravelLog();
+		writeVarInt(out, log.size());
+		for (LogEntry entry : log) {
+			if (entry.location().isEmpty()) out.writeByte(entry.ticket().ordinal());
+			else {
+				out.writeByte(entry.ticket().ordinal() | REVEAL);
+				writeVarInt(out, entry.location().get());
+			}
+		}
+	}
+
+	/**
+	 * Reads a board written by {@link #write(DataOutput, Board, int)} as a playable game state,
+	 * see {@link BitboardGameStateFactory#restore}
+	 *
+	 * @param in the input
+	 * @param graph the graph the board was written with
+	 * @return the game state
+	 * @throws IOException if the input fails, the data is malformed, was written for another
+	 * graph or does not have MrX's location
+	 */
+	@Nonnull public static GameState read(@Nonnull DataInput in,
+	                                      @Nonnull ImmutableValueGraph<Integer,
+			                                      ImmutableSet<Transport>> graph)
+			throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) throw new IOException("Unsupported version " + version);
+		GameSetup setup = readSetup(in, graph);
+		int count = in.readUnsignedByte();
+		if (count == 0) throw new IOException("No players");
+		var players = new ArrayList<Player>(count);
+		for (int i = 0; i < count; i++) {
+			int piece = in.readUnsignedByte();
+			if (piece >= ScotlandYard.ALL_PIECES.size())
+				throw new IOException("Unknown piece " + piece);
+			int location = readVarInt(in);
+			var tickets = ImmutableMap.<Ticket, Integer>builder();
+			for (Ticket ticket : TICKETS) tickets.put(ticket, readVarInt(in));
+			players.add(new Player(ScotlandYard.ALL_PIECES.get(piece), tickets.build(), location));
+		}
+		if (players.get(0).location() == 0) throw new IOException("MrX's location is unknown");
+		int mask = in.readUnsignedByte();
+		var remaining = ImmutableSet.<Piece>builder();
+		for (int i = 0; i < count; i++)
+			if ((mask & (1 << i)) != 0) remaining.add(players.get(i).piece());
+		int size = readVarInt(in);
+		if (size > setup.moves.size()) throw new IOException("Log longer than the game");
+		var log = ImmutableList.<LogEntry>builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) {
+			int entry = in.readUnsignedByte();
+			if ((entry & ~REVEAL) >= TICKETS.length) throw new IOException("Unknown ticket");
+			Ticket ticket = TICKETS[entry & ~REVEAL];
+			log.add((entry & REVEAL) != 0 ?
+					LogEntry.reveal(ticket, readVarInt(in)) :
+					LogEntry.hidden(ticket));
+		}
+		try {
+			return new BitboardGameStateFactory().restore(setup, players.get(0),
+					ImmutableList.copyOf(players.subList(1, count)), log.build(), remaining.build());
+		} catch (IllegalArgumentException e) { throw new IOException(e.getMessage(), e); }
+	}
+
+	/**
+	 * Writes a setup as the graph fingerprint and the reveal rounds
+	 *
+	 * @param out the output
+	 * @param setup the setup
+	 * @throws IOException if the output fails
+	 */
+	public static void writeSetup(@Nonnull DataOutput out, @Nonnull GameSetup setup)
+			throws IOException {
+		out.writeLong(CompiledGraph.of(setup).fingerprint());
+		writeVarInt(out, setup.moves.size());
+		int bits = 0;
+		for (int i = 0; i < setup.moves.size(); i++) {
+			if (setup.moves.get(i)) bits |= 1 << (i & 7);
+			if ((i & 7) == 7 || i == setup.moves.size() - 1) {
+				out.writeByte(bits);
+				bits = 0;
+			}
+		}
+	}
+
+	/**
+	 * @param in the input
+	 * @param graph the graph the setup was written with
+	 * @return the setup written by {@link #writeSetup(DataOutput, GameSetup)}
+	 * @throws IOException if the input fails or the setup was written for another graph
+	 */
+	@Nonnull public static GameSetup readSetup(@Nonnull DataInput in,
+	                                           @Nonnull ImmutableValueGraph<Integer,
+			                                           ImmutableSet<Transport>> graph)
+			throws IOException {
+		long fingerprint = in.readLong();
+		if (fingerprint != CompiledGraph.of(graph).fingerprint())
+			throw new IOException("Written for another graph");
+		int rounds = readVarInt(in);
+		// the count is not trusted to size anything, a bad one runs out of input instead
+		var moves = ImmutableList.<Boolean>builder();
+		int bits = 0;
+		for (int i = 0; i < rounds; i++) {
+			if ((i & 7) == 0) bits = in.readUnsignedByte();
+			moves.add((bits & (1 << (i & 7))) != 0);
+		}
+		return new GameSetup(graph, moves.build());
+	}
+
+	/**
+	 * @param out the output
+	 * @param move the move, written as its {@link PackedMove}
+	 * @throws IOException if the output fails
+	 */
+	public static void writeMove(@Nonnull DataOutput out, @Nonnull Move move) throws IOException {
+		out.writeLong(PackedMove.encode(move));
+	}
+
+	/**
+	 * @param in the input
+	 * @return the move written by {@link #writeMove(DataOutput, Move)}
+	 * @throws IOException if the input fails
+	 */
+	@Nonnull public static Move readMove(@Nonnull DataInput in) throws IOException {
+		return PackedMove.decode(in.readLong());
+	}
+
+	/**
+	 * @param moves the moves
+	 * @return the moves, each as its {@link PackedMove}
+	 */
+	@Nonnull public static byte[] encodeMoves(@Nonnull List<Move> moves) {
+		return encode(out -> {
+			writeVarInt(out, moves.size());
+			for (Move move : moves) writeMove(out, move);
+		});
+	}
+
+	/**
+	 * @param bytes the output of {@link #encodeMoves(List)}
+	 * @return the moves
+	 * @throws IllegalArgumentException if the data is malformed
+	 */
+	@Nonnull public static ImmutableList<Move> decodeMoves(@Nonnull byte[] bytes) {
+		try {
+			var in = new DataInputStream(new ByteArrayInputStream(bytes));
+			int size = readVarInt(in);
+			if (size > in.available() / Long.BYTES)
+				throw new IOException("Expected " + size + " moves");
+			var moves = ImmutableList.<Move>builderWithExpectedSize(size);
+			for (int i = 0; i < size; i++) moves.add(readMove(in));
+			return moves.build();
+		} catch (IOException e) { throw new IllegalArgumentException(e.getMessage(), e); }
+	}
+
+	/**
+	 * Writes a non-negative int in 7-bit groups, least significant first
+	 */
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		if (value < 0) throw new IllegalArgumentException("Negative value " + value);
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			// the fifth group only has room for the last 3 bits of a non-negative int
+			if (shift == 28 && b > 0x07) throw new IOException("Malformed varint");
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private interface Writer {
+		void write(DataOutput out) throws IOException;
+	}
+
+	private static byte[] encode(Writer writer) {
+		var bytes = new ByteArrayOutputStream(96);
+		try {
+			writer.write(new DataOutputStream(bytes));
+		} catch (IOException e) { throw new UncheckedIOException(e); }
+		return bytes.toByteArray();
+	}
+
+}
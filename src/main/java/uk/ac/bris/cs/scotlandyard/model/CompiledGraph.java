@@ -0,0 +1,186 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A game graph compiled into flat {@code int[]} arrays so that it can be walked without boxing.
+ * <br>
+ * Stations are remapped to a dense index range {@code [0, size)} in ascending station order.
+ * Adjacency is kept in compressed sparse row form: the neighbours of node {@code u} over a
+ * transport are {@code targets(t)[offsets(t)[u] .. offsets(t)[u + 1])}, as dense indices in
+ * ascending order. {@link #neighbourOffsets()} and {@link #neighbourTargets()} hold the same
+ * for any transport, each neighbour listed once.
+ * <br>
+ * Graphs are compiled once per graph instance and shared, so every state of a game (and every
+ * game of the same {@link GameSetup}) reads the same arrays; they must never be modified.
+ */
+public final class CompiledGraph {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>,
+			CompiledGraph> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(CompiledGraph::new));
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final int size;
+	private final int[] stations;
+	private final int minStation;
+	private final int[] indices;
+	private final int[][] offsets;
+	private final int[][] targets;
+	private final int[] neighbourOffsets;
+	private final int[] neighbourTargets;
+	private final long fingerprint;
+
+	private CompiledGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		this.stations = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		this.size = stations.length;
+		this.minStation = size == 0 ? 0 : stations[0];
+		this.indices = new int[size == 0 ? 0 : stations[size - 1] - minStation + 1];
+		Arrays.fill(indices, -1);
+		for (int i = 0; i < size; i++) indices[stations[i] - minStation] = i;
+
+		this.offsets = new int[TRANSPORTS.length][size + 1];
+		this.targets = new int[TRANSPORTS.length][];
+		this.neighbourOffsets = new int[size + 1];
+		// counting pass, then a fill pass over the same (sorted) neighbour order
+		int[][] rows = new int[size][];
+		for (int u = 0; u < size; u++) {
+			rows[u] = graph.adjacentNodes(stations[u]).stream()
+					.mapToInt(this::index).sorted().toArray();
+			neighbourOffsets[u + 1] = neighbourOffsets[u] + rows[u].length;
+			for (int v : rows[u]) {
+				for (Transport transport : edge(graph, u, v))
+					offsets[transport.ordinal()][u + 1]++;
+			}
+		}
+		for (int[] offset : offsets)
+			for (int u = 0; u < size; u++) offset[u + 1] += offset[u];
+		this.neighbourTargets = new int[neighbourOffsets[size]];
+		int[] next = new int[TRANSPORTS.length];
+		for (int t = 0; t < TRANSPORTS.length; t++) targets[t] = new int[offsets[t][size]];
+		for (int u = 0; u < size; u++) {
+			System.arraycopy(rows[u], 0, neighbourTargets, neighbourOffsets[u], rows[u].length);
+			for (int v : rows[u]) {
+				for (Transport transport : edge(graph, u, v))
+					targets[transport.ordinal()][next[transport.ordinal()]++] = v;
+			}
+		}
+		long fingerprint = mix(stations, size);
+		for (int t = 0; t < TRANSPORTS.length; t++) {
+			fingerprint = mix(offsets[t], fingerprint);
+			fingerprint = mix(targets[t], fingerprint);
+		}
+		this.fingerprint = fingerprint;
+	}
+
+	// SplitMix64 over every value in order, seeded with the previous result
+	private static long mix(int[] values, long seed) {
+		long z = seed;
+		for (int value : values) {
+			z += 0x9E3779B97F4A7C15L + value;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			z ^= z >>> 31;
+		}
+		return z;
+	}
+
+	private ImmutableSet<Transport> edge(
+			ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph, int u, int v) {
+		return graph.edgeValueOrDefault(stations[u], stations[v], ImmutableSet.of());
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the compiled graph of the setup
+	 */
+	@Nonnull public static CompiledGraph of(@Nonnull GameSetup setup) { return of(setup.graph); }
+
+	/**
+	 * @param graph the graph
+	 * @return the compiled graph, compiled once per graph instance
+	 */
+	@Nonnull public static CompiledGraph of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @return a 64-bit hash of the stations and every edge with its transport; two graphs with
+	 * the same fingerprint are, for all practical purposes, the same graph
+	 */
+	public long fingerprint() { return fingerprint; }
+
+	/**
+	 * @return the number of stations
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param station the station
+	 * @return the dense index of the station or -1 if the station is not part of the graph
+	 */
+	public int index(int station) {
+		int i = station - minStation;
+		return i < 0 || i >= indices.length ? -1 : indices[i];
+	}
+
+	/**
+	 * @param index the dense index
+	 * @return the station at the index
+	 */
+	public int station(int index) { return stations[index]; }
+
+	/**
+	 * @param transport the transport
+	 * @return row offsets of the transport, {@code size() + 1} entries; never modify
+	 */
+	@Nonnull public int[] offsets(@Nonnull Transport transport) {
+		return offsets[transport.ordinal()];
+	}
+
+	/**
+	 * @param transport the transport
+	 * @return dense indices of the neighbours over the transport, see {@link #offsets}; never
+	 * modify
+	 */
+	@Nonnull public int[] targets(@Nonnull Transport transport) {
+		return targets[transport.ordinal()];
+	}
+
+	/**
+	 * @return row offsets of the neighbours over any transport; never modify
+	 */
+	@Nonnull public int[] neighbourOffsets() { return neighbourOffsets; }
+
+	/**
+	 * @return dense indices of the neighbours over any transport, see
+	 * {@link #neighbourOffsets()}; never modify
+	 */
+	@Nonnull public int[] neighbourTargets() { return neighbourTargets; }
+
+	/**
+	 * @param u the dense index of one station
+	 * @param v the dense index of the other station
+	 * @param transport the transport
+	 * @return whether the two stations are connected by the transport; this is a binary search
+	 */
+	public boolean connected(int u, int v, @Nonnull Transport transport) {
+		int[] offset = offsets[transport.ordinal()];
+		return Arrays.binarySearch(targets[transport.ordinal()],
+				offset[u], offset[u + 1], v) >= 0;
+	}
+
+}
@@ -0,0 +1,300 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Fewest moves between every pair of stations, one {@code byte} matrix per {@link Mode},
+ * indexed by the dense indices of a {@link CompiledGraph}.
+ * <br>
+ * Tables are computed once per graph, one breadth-first search per source station in
+ * parallel, and shared. {@link #of(CompiledGraph)} first looks for tables saved by an earlier
+ * run in {@link #directory()} (next to {@code graph.txt} when that is a file on disk) and saves
+ * them there after computing them; the file is named after the graph's
+ * {@link CompiledGraph#fingerprint()}, so an edited graph never loads stale tables.
+ */
+public final class DistanceTables {
+
+	/**
+	 * Which routes a path may use
+	 */
+	public enum Mode {
+		TAXI(EnumSet.of(Transport.TAXI)),
+		BUS(EnumSet.of(Transport.BUS)),
+		UNDERGROUND(EnumSet.of(Transport.UNDERGROUND)),
+		FERRY(EnumSet.of(Transport.FERRY)),
+		/**
+		 * What a detective can travel on, anything but the ferry
+		 */
+		DETECTIVE(EnumSet.of(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND)),
+		/**
+		 * What MrX can travel on with secret tickets, any route
+		 */
+		ANY(EnumSet.allOf(Transport.class));
+
+		private final ImmutableSet<Transport> transports;
+
+		Mode(EnumSet<Transport> transports) {
+			this.transports = ImmutableSet.copyOf(transports);
+		}
+
+		@Nonnull public ImmutableSet<Transport> transports() { return transports; }
+	}
+
+	/**
+	 * Distance between stations that are not connected; paths that would be longer are stored
+	 * as {@code UNREACHABLE - 1}
+	 */
+	public static final int UNREACHABLE = Byte.MAX_VALUE;
+
+	/**
+	 * The system property naming the directory tables are saved to and loaded from
+	 */
+	public static final String DIRECTORY_PROPERTY = "scotlandyard.distances";
+
+	private static final int MAGIC = 0x53594454; // SYDT
+	private static final int VERSION = 1;
+	private static final Mode[] MODES = Mode.values();
+
+	private static final LoadingCache<CompiledGraph, DistanceTables> CACHE = CacheBuilder
+			.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(DistanceTables::loadOrCompute));
+
+	private final CompiledGraph graph;
+	private final int size;
+	private final byte[][] matrices;
+
+	private DistanceTables(CompiledGraph graph, byte[][] matrices) {
+		this.graph = graph;
+		this.size = graph.size();
+		this.matrices = matrices;
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the tables of the graph, loaded or computed once per graph
+	 */
+	@Nonnull public static DistanceTables of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the tables of the board's graph
+	 */
+	@Nonnull public static DistanceTables of(@Nonnull Board board) {
+		return of(CompiledGraph.of(board.getSetup()));
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return new tables, computed without looking at the cache or any saved tables
+	 */
+	@Nonnull public static DistanceTables compute(@Nonnull CompiledGraph graph) {
+		var matrices = new byte[MODES.length][];
+		for (Mode mode : MODES) matrices[mode.ordinal()] = compute(graph, mode);
+		return new DistanceTables(graph, matrices);
+	}
+
+	private static byte[] compute(CompiledGraph graph, Mode mode) {
+		int size = graph.size();
+		var matrix = new byte[size * size];
+		Arrays.fill(matrix, (byte) UNREACHABLE);
+		var transports = mode.transports().toArray(new Transport[0]);
+		IntStream.range(0, size).parallel().forEach(source -> {
+			int base = source * size;
+			var queue = new int[size];
+			int head = 0, tail = 0;
+			matrix[base + source] = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int u = queue[head++];
+				int next = Math.min(matrix[base + u] + 1, UNREACHABLE - 1);
+				for (Transport transport : transports) {
+					int[] offsets = graph.offsets(transport);
+					int[] targets = graph.targets(transport);
+					for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+						int v = targets[e];
+						if (matrix[base + v] != UNREACHABLE) continue;
+						matrix[base + v] = (byte) next;
+						queue[tail++] = v;
+					}
+				}
+			}
+		});
+		return matrix;
+	}
+
+	private static DistanceTables loadOrCompute(CompiledGraph graph) {
+		var file = directory().map(directory -> directory.resolve(fileName(graph)));
+		if (file.isPresent() && Files.isRegularFile(file.get())) {
+			try {
+				return load(file.get(), graph);
+			} catch (IOException e) {
+				// stale or damaged, computed and saved again below
+			}
+		}
+		var tables = compute(graph);
+		if (file.isPresent()) {
+			try {
+				tables.save(file.get());
+			} catch (IOException | UncheckedIOException e) {
+				// read-only location, the tables are computed again next time
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * @return where tables are saved: the {@value #DIRECTORY_PROPERTY} system property, or the
+	 * directory of {@code graph.txt} when it is a file on disk
+	 */
+	@Nonnull public static Optional<Path> directory() {
+		String property = System.getProperty(DIRECTORY_PROPERTY);
+		if (property != null) return Optional.of(Path.of(property));
+		try {
+			var resource = Resources.getResource("graph.txt");
+			if (!resource.getProtocol().equals("file")) return Optional.empty();
+			return Optional.of(Path.of(resource.toURI()).getParent());
+		} catch (IllegalArgumentException | URISyntaxException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the name of the file the tables of the graph are saved as
+	 */
+	@Nonnull public static String fileName(@Nonnull CompiledGraph graph) {
+		return String.format("distances-%016x.bin", graph.fingerprint());
+	}
+
+	/**
+	 * Writes the tables to a file, replacing it atomically where the file system allows
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(@Nonnull Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			var crc = new CRC32();
+			try (var out = new DataOutputStream(new CheckedOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)), crc))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(graph.fingerprint());
+				out.writeInt(size);
+				out.writeInt(matrices.length);
+				for (byte[] matrix : matrices) out.write(matrix);
+				out.flush();
+				out.writeLong(crc.getValue());
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @param file a file written by {@link #save(Path)}
+	 * @param graph the graph the tables must be for
+	 * @return the tables
+	 * @throws IOException if the file cannot be read, is damaged, or is for another graph
+	 */
+	@Nonnull public static DistanceTables load(@Nonnull Path file,
+	                                           @Nonnull CompiledGraph graph) throws IOException {
+		var crc = new CRC32();
+		try (var in = new DataInputStream(new CheckedInputStream(
+				new BufferedInputStream(Files.newInputStream(file)), crc))) {
+			if (in.readInt() != MAGIC) throw new IOException("Not a distance table: " + file);
+			int version = in.readInt();
+			if (version != VERSION) throw new IOException("Unsupported version: " + version);
+			if (in.readLong() != graph.fingerprint() || in.readInt() != graph.size() ||
+					in.readInt() != MODES.length)
+				throw new IOException("Tables are for another graph: " + file);
+			var matrices = new byte[MODES.length][graph.size() * graph.size()];
+			for (byte[] matrix : matrices) in.readFully(matrix);
+			long expected = crc.getValue();
+			if (in.readLong() != expected) throw new IOException("Checksum mismatch: " + file);
+			if (in.read() != -1) throw new IOException("Trailing bytes: " + file);
+			return new DistanceTables(graph, matrices);
+		}
+	}
+
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param mode the routes the path may use
+	 * @param from the dense index of one station
+	 * @param to the dense index of the other station
+	 * @return the distance, or {@link #UNREACHABLE}
+	 */
+	public int between(@Nonnull Mode mode, int from, int to) {
+		return matrices[mode.ordinal()][from * size + to];
+	}
+
+	/**
+	 * @param mode the routes the path may use
+	 * @param from one station
+	 * @param to the other station
+	 * @return the distance, or {@link #UNREACHABLE}
+	 * @throws IllegalArgumentException if a station is not on the graph
+	 */
+	public int distance(@Nonnull Mode mode, int from, int to) {
+		int u = graph.index(from), v = graph.index(to);
+		if (u == -1 || v == -1)
+			throw new IllegalArgumentException("Not on the graph: " + (u == -1 ? from : to));
+		return between(mode, u, v);
+	}
+
+	/**
+	 * @param board the board, must be on the graph of these tables
+	 * @param station the station
+	 * @return the fewest detective moves any detective on the board needs to reach the station,
+	 * or {@link #UNREACHABLE}
+	 */
+	public int nearestDetective(@Nonnull Board board, int station) {
+		int nearest = UNREACHABLE;
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			int location = board.getDetectiveLocation((Piece.Detective) piece).orElseThrow();
+			nearest = Math.min(nearest, distance(Mode.DETECTIVE, location, station));
+		}
+		return nearest;
+	}
+
+}
@@ -0,0 +1,415 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Reads and writes graphs in the text format of {@code graph.txt} and in a compact binary
+ * format, without going through a {@code String} per line.
+ * <br>
+ * The text reader streams bytes from a channel, or straight from a (memory-mapped) buffer, and
+ * parses numbers and transport names in place. Routes between the same two stations are merged
+ * into one transport bitmask in a primitive hash table and the graph is built once at the end,
+ * with one shared {@link ImmutableSet} per combination of transports. It accepts exactly what
+ * {@link ScotlandYard#readGraph(String)} accepts.
+ * <br>
+ * The binary format is a header ({@code SYGB}, version, node count, edge count), the stations
+ * as {@code int}s, every edge as two stations and a byte of transports by ordinal, and a CRC32
+ * of everything before it. {@link #read(Path)} tells the formats apart by the header.
+ */
+public final class GraphFormat {
+
+	private GraphFormat() {}
+
+	private static final int MAGIC = 0x53594742; // SYGB
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int EDGE_BYTES = 9;
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final byte[][] NAMES = Arrays.stream(TRANSPORTS)
+			.map(transport -> transport.name().getBytes(StandardCharsets.US_ASCII))
+			.toArray(byte[][]::new);
+	// every combination of transports, indexed by bitmask
+	private static final List<ImmutableSet<Transport>> SETS = IntStream
+			.range(0, 1 << TRANSPORTS.length)
+			.mapToObj(mask -> Sets.immutableEnumSet(Arrays.stream(TRANSPORTS)
+					.filter(transport -> (mask & 1 << transport.ordinal()) != 0)
+					.collect(Collectors.toList())))
+			.collect(ImmutableList.toImmutableList());
+
+	/**
+	 * @param content the graph in the text format
+	 * @return the graph
+	 * @throws IllegalArgumentException if the content is not a valid graph
+	 */
+	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	readText(@Nonnull ByteBuffer content) {
+		try {
+			return readText(new Input(null, content.duplicate()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // a buffer has nothing to fail on
+		}
+	}
+
+	/**
+	 * @param channel the graph in the text format, read to the end but not closed
+	 * @return the graph
+	 * @throws IOException if the channel cannot be read
+	 * @throws IllegalArgumentException if the content is not a valid graph
+	 */
+	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	readText(@Nonnull ReadableByteChannel channel) throws IOException {
+		return readText(new Input(channel, ByteBuffer.allocate(1 << 16).flip()));
+	}
+
+	/**
+	 * @param file a graph in either format
+	 * @return the graph, read through a memory mapping of the file
+	 * @throws IOException if the file cannot be read or is a damaged binary graph
+	 * @throws IllegalArgumentException if the file is not a valid text graph
+	 */
+	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	read(@Nonnull Path file) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException("Too large: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return isBinary(buffer) ? readBinary(buffer) : readText(buffer);
+		}
+	}
+
+	private static boolean isBinary(ByteBuffer buffer) {
+		return buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) == MAGIC;
+	}
+
+	// a byte at a time from a buffer, refilled from the channel if there is one
+	private static final class Input {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer;
+		private byte[] line = new byte[64];
+		private int length;
+
+		Input(ReadableByteChannel channel, ByteBuffer buffer) {
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		private int read() throws IOException {
+			if (!buffer.hasRemaining()) {
+				if (channel == null) return -1;
+				buffer.clear();
+				int read;
+				do read = channel.read(buffer); while (read == 0);
+				buffer.flip();
+				if (read < 0) return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		// the next line into line[0, length) without the line break; false at the end
+		boolean next() throws IOException {
+			length = 0;
+			int c = read();
+			if (c == -1) return false;
+			for (; c != -1 && c != '\n'; c = read()) {
+				if (length == line.length) line = Arrays.copyOf(line, length * 2);
+				line[length++] = (byte) c;
+			}
+			if (length > 0 && line[length - 1] == '\r') length--;
+			return true;
+		}
+
+		// the end of the space separated field starting at from
+		int end(int from) {
+			int end = from;
+			while (end < length && line[end] != ' ') end++;
+			return end;
+		}
+
+		// as Integer.parseInt, which accepts a sign but nothing else that is not a digit
+		int parseInt(int from, int to) {
+			boolean negative = from < to && line[from] == '-';
+			int start = from < to && (negative || line[from] == '+') ? from + 1 : from;
+			if (start == to) throw bad();
+			long value = 0;
+			for (int i = start; i < to; i++) {
+				int digit = line[i] - '0';
+				if (digit < 0 || digit > 9) throw bad();
+				value = value * 10 + digit;
+				if (value > (negative ? 1L << 31 : Integer.MAX_VALUE)) throw bad();
+			}
+			return (int) (negative ? -value : value);
+		}
+
+		int parseTransport(int from, int to) {
+			for (int t = 0; t < NAMES.length; t++) {
+				byte[] name = NAMES[t];
+				if (name.length != to - from) continue;
+				int i = 0;
+				while (i < name.length && Character.toUpperCase(line[from + i]) == name[i]) i++;
+				if (i == name.length) return t;
+			}
+			throw bad();
+		}
+
+		IllegalArgumentException bad() {
+			return new IllegalArgumentException(
+					"Bad line: " + new String(line, 0, length, StandardCharsets.UTF_8));
+		}
+	}
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	readText(Input input) throws IOException {
+		if (!input.next()) throw new IllegalArgumentException("No lines");
+		int first = input.end(0);
+		if (first == input.length) throw input.bad();
+		int nodeCount = input.parseInt(0, first);
+		int edgeCount = input.parseInt(first + 1, input.end(first + 1));
+		// the counts are not trusted to size anything, the arrays grow as lines are read
+		var builder = new Builder(Math.min(Math.max(nodeCount, 0), 1 << 16),
+				Math.min(Math.max(edgeCount, 0), 1 << 16));
+		for (int i = 0; i < nodeCount; i++) {
+			if (!input.next()) throw new IllegalArgumentException("Expected " + nodeCount + " nodes");
+			if (input.length == 0) continue;
+			builder.node(input.parseInt(0, input.length));
+		}
+		for (int i = 0; i < edgeCount; i++) {
+			if (!input.next()) throw new IllegalArgumentException("Expected " + edgeCount + " edges");
+			if (input.length == 0) continue;
+			int a = input.end(0);
+			int b = a < input.length ? input.end(a + 1) : a;
+			int c = b < input.length ? input.end(b + 1) : b;
+			// trailing spaces are ignored, as String.split does
+			int last = input.length;
+			while (last > c && input.line[last - 1] == ' ') last--;
+			if (b >= input.length || c != last) throw input.bad();
+			builder.edge(input.parseInt(0, a), input.parseInt(a + 1, b),
+					1 << input.parseTransport(b + 1, c));
+		}
+		return builder.build();
+	}
+
+	// nodes in insertion order and the merged transports of every pair of stations
+	private static final class Builder {
+		private int[] nodes;
+		private int nodeCount;
+		private long[] pairs;
+		private int[] us;
+		private int[] vs;
+		private byte[] masks;
+		private int edgeCount;
+		// open addressing over the pairs, slots hold edge index + 1
+		private int[] slots;
+
+		Builder(int nodes, int edges) {
+			this.nodes = new int[Math.max(nodes, 16)];
+			this.pairs = new long[Math.max(edges, 16)];
+			this.us = new int[pairs.length];
+			this.vs = new int[pairs.length];
+			this.masks = new byte[pairs.length];
+			this.slots = new int[Integer.highestOneBit(pairs.length) << 2];
+		}
+
+		void node(int station) {
+			if (nodeCount == nodes.length) nodes = Arrays.copyOf(nodes, nodeCount * 2);
+			nodes[nodeCount++] = station;
+		}
+
+		void edge(int u, int v, int mask) {
+			long pair = (long) Math.min(u, v) << 32 | (Math.max(u, v) & 0xFFFF_FFFFL);
+			int mix = (int) (pair * 0x9E3779B97F4A7C15L >>> 32);
+			int slot = mix & slots.length - 1;
+			for (; slots[slot] != 0; slot = slot + 1 & slots.length - 1) {
+				int edge = slots[slot] - 1;
+				if (pairs[edge] == pair) {
+					masks[edge] |= (byte) mask;
+					return;
+				}
+			}
+			if (edgeCount == pairs.length) {
+				int capacity = edgeCount * 2;
+				pairs = Arrays.copyOf(pairs, capacity);
+				us = Arrays.copyOf(us, capacity);
+				vs = Arrays.copyOf(vs, capacity);
+				masks = Arrays.copyOf(masks, capacity);
+			}
+			pairs[edgeCount] = pair;
+			us[edgeCount] = u;
+			vs[edgeCount] = v;
+			masks[edgeCount] = (byte) mask;
+			slots[slot] = ++edgeCount;
+			if (edgeCount * 2 > slots.length) rehash();
+		}
+
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			for (int edge = 0; edge < edgeCount; edge++) {
+				int slot = (int) (pairs[edge] * 0x9E3779B97F4A7C15L >>> 32) & slots.length - 1;
+				while (slots[slot] != 0) slot = slot + 1 & slots.length - 1;
+				slots[slot] = edge + 1;
+			}
+		}
+
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> build() {
+			var graph = ValueGraphBuilder.undirected()
+					.expectedNodeCount(nodeCount)
+					.<Integer, ImmutableSet<Transport>>immutable();
+			for (int i = 0; i < nodeCount; i++) graph.addNode(nodes[i]);
+			for (int i = 0; i < edgeCount; i++) graph.putEdgeValue(us[i], vs[i], SETS.get(masks[i]));
+			return graph.build();
+		}
+	}
+
+	/**
+	 * @param content a graph in the binary format
+	 * @return the graph
+	 * @throws IOException if the content is damaged
+	 */
+	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	readBinary(@Nonnull ByteBuffer content) throws IOException {
+		var buffer = content.slice();
+		if (buffer.remaining() < HEADER + Long.BYTES || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a binary graph");
+		int version = buffer.getInt(4);
+		if (version != VERSION) throw new IOException("Unsupported version: " + version);
+		int nodeCount = buffer.getInt(8);
+		int edgeCount = buffer.getInt(12);
+		long length = HEADER + (long) nodeCount * Integer.BYTES + (long) edgeCount * EDGE_BYTES +
+				Long.BYTES;
+		if (nodeCount < 0 || edgeCount < 0 || length != buffer.remaining())
+			throw new IOException("Damaged header");
+		var crc = new CRC32();
+		crc.update(buffer.duplicate().limit((int) length - Long.BYTES));
+		if (buffer.getLong((int) length - Long.BYTES) != crc.getValue())
+			throw new IOException("Checksum mismatch");
+		var builder = new Builder(nodeCount, edgeCount);
+		buffer.position(HEADER);
+		for (int i = 0; i < nodeCount; i++) builder.node(buffer.getInt());
+		for (int i = 0; i < edgeCount; i++) {
+			int u = buffer.getInt();
+			int v = buffer.getInt();
+			int mask = buffer.get();
+			if (mask <= 0 || mask >= 1 << TRANSPORTS.length)
+				throw new IOException("Bad transports: " + mask);
+			builder.edge(u, v, mask);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param channel a graph in the binary format, read to the end but not closed
+	 * @return the graph
+	 * @throws IOException if the channel cannot be read or the content is damaged
+	 */
+	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	readBinary(@Nonnull ReadableByteChannel channel) throws IOException {
+		return readBinary(ByteBuffer.wrap(Channels.newInputStream(channel).readAllBytes()));
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param channel where the graph is written in the binary format, not closed
+	 * @throws IOException if the channel cannot be written
+	 */
+	public static void writeBinary(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                               @Nonnull WritableByteChannel channel) throws IOException {
+		int nodeCount = graph.nodes().size();
+		int edgeCount = graph.edges().size();
+		var buffer = ByteBuffer.allocate(HEADER + nodeCount * Integer.BYTES +
+				edgeCount * EDGE_BYTES + Long.BYTES);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(edgeCount);
+		for (int node : graph.nodes()) buffer.putInt(node);
+		for (var edge : graph.edges()) {
+			int mask = 0;
+			for (Transport transport : graph.edgeValue(edge).orElseThrow())
+				mask |= 1 << transport.ordinal();
+			buffer.putInt(edge.nodeU()).putInt(edge.nodeV()).put((byte) mask);
+		}
+		var crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putLong(crc.getValue()).flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param channel where the graph is written in the text format, one line per transport of
+	 * every edge; not closed
+	 * @throws IOException if the channel cannot be written
+	 */
+	public static void writeText(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                             @Nonnull WritableByteChannel channel) throws IOException {
+		var builder = new StringBuilder();
+		int lines = 0;
+		for (var edge : graph.edges()) lines += graph.edgeValue(edge).orElseThrow().size();
+		builder.append(graph.nodes().size()).append(' ').append(lines).append('\n');
+		for (int node : graph.nodes()) builder.append(node).append('\n');
+		for (var edge : graph.edges()) {
+			for (Transport transport : graph.edgeValue(edge).orElseThrow()) {
+				String name = transport.name();
+				builder.append(edge.nodeU()).append(' ').append(edge.nodeV()).append(' ')
+						.append(name.charAt(0))
+						.append(name.substring(1).toLowerCase(Locale.ENGLISH))
+						.append('\n');
+			}
+		}
+		var buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+
+	/**
+	 * Converts a graph file in either format, writing binary if the output ends in
+	 * {@code .bin} and text otherwise; the output is replaced atomically where the file system
+	 * allows
+	 *
+	 * @param from the graph file
+	 * @param to the file to write
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void convert(@Nonnull Path from, @Nonnull Path to) throws IOException {
+		var graph = read(from);
+		Path parent = to.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, to.getFileName().toString(), ".tmp");
+		try {
+			try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				if (to.getFileName().toString().endsWith(".bin")) writeBinary(graph, channel);
+				else writeText(graph, channel);
+			}
+			try {
+				Files.move(temporary, to, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temporary, to, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A list of whole detective rounds, as filled by
+ * {@link SearchState#generateRounds(JointMoveList, boolean)}.
+ * <br>
+ * A round is the {@link PackedMove}s of the detectives that move, in an order they can be made
+ * in, together with the Zobrist key of the state after it. No two rounds in a list end in the
+ * same state. Instances are mutable and not thread safe; keep one per ply and {@link #clear()}
+ * it like a {@link MoveList}.
+ */
+public final class JointMoveList {
+
+	private long[] moves = new long[256];
+	private int[] offsets = new int[65];
+	private long[] keys = new long[64];
+	private int size;
+	// open addressing over the keys, slots hold round index + 1
+	private int[] slots = new int[128];
+
+	// scratch space for the generator: a move list for each step and the current path
+	private final MoveList[] lists = new MoveList[8];
+	final long[] path = new long[8];
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * @param round the round index
+	 * @return the number of moves in the round
+	 */
+	public int length(int round) {
+		if (round >= size) throw new IndexOutOfBoundsException(round);
+		return offsets[round + 1] - offsets[round];
+	}
+
+	/**
+	 * @param round the round index
+	 * @param index the index of the move in the round
+	 * @return the packed move
+	 */
+	public long get(int round, int index) {
+		if (index >= length(round)) throw new IndexOutOfBoundsException(index);
+		return moves[offsets[round] + index];
+	}
+
+	/**
+	 * @param round the round index
+	 * @return the Zobrist key of the state after the round
+	 */
+	public long key(int round) {
+		if (round >= size) throw new IndexOutOfBoundsException(round);
+		return keys[round];
+	}
+
+	/**
+	 * Removes all rounds but keeps the backing arrays
+	 */
+	public void clear() {
+		if (size != 0) Arrays.fill(slots, 0);
+		size = 0;
+	}
+
+	MoveList list(int index) {
+		if (lists[index] == null) lists[index] = new MoveList(16);
+		return lists[index];
+	}
+
+	/**
+	 * Appends a round unless one that ends in the same state is already in the list
+	 *
+	 * @return whether the round was added
+	 */
+	boolean add(long[] path, int length, long key) {
+		int mask = slots.length - 1;
+		int slot = (int) (key ^ key >>> 32) & mask;
+		for (; slots[slot] != 0; slot = (slot + 1) & mask)
+			if (keys[slots[slot] - 1] == key) return false;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2 + 1);
+		}
+		int start = offsets[size];
+		if (start + length > moves.length)
+			moves = Arrays.copyOf(moves, Math.max(moves.length * 2, start + length));
+		System.arraycopy(path, 0, moves, start, length);
+		offsets[size + 1] = start + length;
+		keys[size] = key;
+		slots[slot] = ++size;
+		if (size * 2 > slots.length) rehash();
+		return true;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = (int) (keys[i] ^ keys[i] >>> 32) & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = i + 1;
+		}
+	}
+
+	@Override public String toString() {
+		var builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i != 0) builder.append(", ");
+			builder.append('(');
+			for (int m = offsets[i]; m < offsets[i + 1]; m++) {
+				if (m != offsets[i]) builder.append(", ");
+				builder.append(PackedMove.toString(moves[m]));
+			}
+			builder.append(')');
+		}
+		return builder.append(']').toString();
+	}
+}
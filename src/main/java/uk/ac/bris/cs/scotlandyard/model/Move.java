@@ -39,6 +39,22 @@ public interface Move extends Serializable {
 	 */
 	<T> T accept(Visitor<T> visitor);
 
+	/**
+	 * Mixes two values with the SplitMix64 finaliser; moves compute their hash once with this so
+	 * that hashing them is a field read and moves that differ in any field rarely collide
+	 */
+	private static int hash(long a, long b) {
+		long z = a * 0x9E3779B97F4A7C15L + b;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z ^= z >>> 31;
+		return (int) (z ^ (z >>> 32));
+	}
+
+	private static long pack(int source, Ticket ticket, int destination) {
+		return ((long) source << 40) ^ ((long) ticket.ordinal() << 32) ^ (destination & 0xFFFFFFFFL);
+	}
+
 	/**
 	 * A generic visitor for use with the {@link Move#accept(Visitor)} method.
 	 *
@@ -88,12 +104,15 @@ public interface Move extends Serializable {
 		 * The destination
 		 */
 		public final int destination;
+		// derived, so not part of the serialised form, which stays as it was before the cache
+		private final transient int hash;
 		public SingleMove(@Nonnull Piece piece, int source,
 		                  @Nonnull Ticket ticket, int destination) {
 			this.piece = Objects.requireNonNull(piece);
 			this.source = source;
 			this.ticket = Objects.requireNonNull(ticket);
 			this.destination = destination;
+			this.hash = Move.hash(piece.webColour().hashCode(), pack(source, ticket, destination));
 		}
 		@Nonnull @Override public Piece commencedBy() { return piece; }
 		@Nonnull @Override public Iterable<Ticket> tickets() { return ImmutableList.of(ticket); }
@@ -103,10 +122,11 @@ public interface Move extends Serializable {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
 			SingleMove that = (SingleMove) o;
-			return source == that.source && destination == that.destination &&
+			return hash == that.hash && source == that.source && destination == that.destination &&
 					piece == that.piece && ticket == that.ticket;
 		}
-		@Override public int hashCode() { return Objects.hash(piece, ticket, destination); }
+		@Override public int hashCode() { return hash; }
+		private Object readResolve() { return new SingleMove(piece, source, ticket, destination); }
 		@Override public String toString() {
 			return ticket.name() + "(" + piece + "@" + source + ", " + destination + ")";
 		}
@@ -135,6 +155,8 @@ public interface Move extends Serializable {
 		 * The second destination
 		 */
 		public final int destination2;
+		// derived, so not part of the serialised form, which stays as it was before the cache
+		private final transient int hash;
 		public DoubleMove(@Nonnull Piece piece, int source,
 		                  @Nonnull Ticket ticket1, int destination1,
 		                  @Nonnull Ticket ticket2, int destination2) {
@@ -144,6 +166,8 @@ public interface Move extends Serializable {
 			this.destination1 = destination1;
 			this.ticket2 = Objects.requireNonNull(ticket2);
 			this.destination2 = destination2;
+			this.hash = Move.hash(Move.hash(piece.webColour().hashCode(),
+					pack(source, ticket1, destination1)), pack(0, ticket2, destination2));
 		}
 		@Nonnull @Override public Piece commencedBy() { return piece; }
 		@Nonnull @Override
@@ -154,12 +178,13 @@ public interface Move extends Serializable {
 			if (this == o) return true;
 			if (o == null || getClass() != o.getClass()) return false;
 			DoubleMove that = (DoubleMove) o;
-			return piece == that.piece && source == that.source &&
+			return hash == that.hash && piece == that.piece && source == that.source &&
 					ticket1 == that.ticket1 && destination1 == that.destination1 &&
 					ticket2 == that.ticket2 && destination2 == that.destination2;
 		}
-		@Override public int hashCode() {
-			return Objects.hash(piece, ticket1, destination1, ticket2, destination2);
+		@Override public int hashCode() { return hash; }
+		private Object readResolve() {
+			return new DoubleMove(piece, source, ticket1, destination1, ticket2, destination2);
 		}
 		@Override public String toString() {
 			return "x2(" + piece + "@" + source + ", " + ticket1 + ", " + destination1 + ", " + ticket2 + ", " + destination2 + ")";
@@ -0,0 +1,104 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A growable list of {@link PackedMove}s backed by a {@code long[]}.
+ * <br>
+ * Instances are mutable and not thread safe; search code is expected to keep one list per
+ * ply and {@link #clear()} it instead of allocating a new one.
+ */
+public final class MoveList {
+
+	private long[] moves;
+	private int size;
+
+	public MoveList() { this(64); }
+
+	/**
+	 * @param capacity the initial capacity
+	 */
+	public MoveList(int capacity) { this.moves = new long[Math.max(capacity, 1)]; }
+
+	/**
+	 * @param moves the moves
+	 * @return a new list with every move encoded through {@link PackedMove#encode(Move)}
+	 */
+	@Nonnull public static MoveList of(@Nonnull Iterable<Move> moves) {
+		var list = new MoveList();
+		for (Move move : moves) list.add(PackedMove.encode(move));
+		return list;
+	}
+
+	/**
+	 * @param move the packed move to append
+	 */
+	public void add(long move) {
+		if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+		moves[size++] = move;
+	}
+
+	/**
+	 * @param index the index
+	 * @return the packed move at the index
+	 */
+	public long get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException(index);
+		return moves[index];
+	}
+
+	/**
+	 * Swaps the moves at the two indices, useful for move ordering
+	 */
+	public void swap(int i, int j) {
+		if (i >= size || j >= size) throw new IndexOutOfBoundsException(Math.max(i, j));
+		long t = moves[i];
+		moves[i] = moves[j];
+		moves[j] = t;
+	}
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * Removes all moves but keeps the backing array
+	 */
+	public void clear() { size = 0; }
+
+	/**
+	 * @param move the packed move
+	 * @return whether the list contains the move; this is a linear scan
+	 */
+	public boolean contains(long move) {
+		for (int i = 0; i < size; i++) if (moves[i] == move) return true;
+		return false;
+	}
+
+	@Nonnull public long[] toArray() { return Arrays.copyOf(moves, size); }
+
+	@Nonnull public LongStream stream() { return Arrays.stream(moves, 0, size); }
+
+	/**
+	 * @return every move decoded through {@link PackedMove#decode(long)}
+	 */
+	@Nonnull public ImmutableSet<Move> toMoves() {
+		var builder = ImmutableSet.<Move>builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(PackedMove.decode(moves[i]));
+		return builder.build();
+	}
+
+	@Override public String toString() {
+		var builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i != 0) builder.append(", ");
+			builder.append(PackedMove.toString(moves[i]));
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Canonical {@link SingleMove} instances of a {@link CompiledGraph}, one per piece of
+ * {@link ScotlandYard#ALL_PIECES} and edge, created once so that move generation hands out
+ * shared instances instead of allocating.
+ * <br>
+ * Entries line up with the compiled graph: {@link #single(int, Transport, int)} takes an index
+ * into {@link CompiledGraph#targets(Transport)} and {@link #secret(int, int)} one into
+ * {@link CompiledGraph#neighbourTargets()}.
+ */
+final class MoveTable {
+
+	private static final LoadingCache<CompiledGraph, MoveTable> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(MoveTable::new));
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	// [piece][transport][edge], FERRY moves are the same instances as the secret ones
+	private final SingleMove[][][] singles;
+	// [piece][edge]
+	private final SingleMove[][] secrets;
+
+	private MoveTable(CompiledGraph graph) {
+		int pieces = ScotlandYard.ALL_PIECES.size();
+		this.singles = new SingleMove[pieces][TRANSPORTS.length][];
+		this.secrets = new SingleMove[pieces][];
+		for (int p = 0; p < pieces; p++) {
+			Piece piece = ScotlandYard.ALL_PIECES.get(p);
+			secrets[p] = create(graph, piece, graph.neighbourOffsets(), graph.neighbourTargets(),
+					Ticket.SECRET);
+			for (Transport transport : TRANSPORTS) {
+				singles[p][transport.ordinal()] = transport == Transport.FERRY ?
+						ferries(graph, secrets[p]) :
+						create(graph, piece, graph.offsets(transport), graph.targets(transport),
+								transport.requiredTicket());
+			}
+		}
+	}
+
+	private static SingleMove[] create(CompiledGraph graph, Piece piece,
+	                                   int[] offsets, int[] targets, Ticket ticket) {
+		var moves = new SingleMove[targets.length];
+		for (int u = 0; u < graph.size(); u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				moves[i] = new SingleMove(piece, graph.station(u), ticket,
+						graph.station(targets[i]));
+			}
+		}
+		return moves;
+	}
+
+	private static SingleMove[] ferries(CompiledGraph graph, SingleMove[] secrets) {
+		int[] offsets = graph.offsets(Transport.FERRY);
+		int[] targets = graph.targets(Transport.FERRY);
+		int[] neighbourOffsets = graph.neighbourOffsets();
+		int[] neighbourTargets = graph.neighbourTargets();
+		var moves = new SingleMove[targets.length];
+		for (int u = 0; u < graph.size(); u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+				// both rows are sorted and every ferry target is also a neighbour
+				int j = Arrays.binarySearch(neighbourTargets,
+						neighbourOffsets[u], neighbourOffsets[u + 1], targets[i]);
+				moves[i] = secrets[j];
+			}
+		}
+		return moves;
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the move table of the graph, created once per graph
+	 */
+	@Nonnull static MoveTable of(@Nonnull CompiledGraph graph) { return CACHE.getUnchecked(graph); }
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param transport the transport
+	 * @param edge index into {@link CompiledGraph#targets(Transport)}
+	 * @return the move of the piece along the edge with the ticket the transport requires
+	 */
+	@Nonnull SingleMove single(int piece, @Nonnull Transport transport, int edge) {
+		return singles[piece][transport.ordinal()][edge];
+	}
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param edge index into {@link CompiledGraph#neighbourTargets()}
+	 * @return the move of the piece to the neighbour with a {@link Ticket#SECRET} ticket
+	 */
+	@Nonnull SingleMove secret(int piece, int edge) { return secrets[piece][edge]; }
+
+}
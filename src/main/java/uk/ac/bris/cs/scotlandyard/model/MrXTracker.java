@@ -0,0 +1,152 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Where MrX could be, as far as the detectives can tell, kept up to date one log entry at a
+ * time.
+ * <br>
+ * The stations are a bitset over the dense indices of the {@link CompiledGraph}. It starts as
+ * {@link ScotlandYard#MRX_LOCATIONS} (every station if none of those are on the graph), a
+ * hidden entry moves it along every route of the ticket (any route for
+ * {@link Ticket#SECRET}), a revealed entry replaces it with the revealed station, and stations
+ * detectives have been seen on since are taken out. A double move is its two entries in turn.
+ * Following an entry only walks the routes out of the stations in the set.
+ * <br>
+ * Register it with {@link Model#registerObserver(Model.Observer)}, or feed it boards with
+ * {@link #update(Board)}; a board of another setup, with a shorter log or with another entry
+ * where the log seen so far ended starts over.
+ * A tracker follows one game at a time, and is safe to read from other threads.
+ */
+public final class MrXTracker implements Model.Observer {
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private GameSetup setup;
+	private CompiledGraph graph;
+	private long[] current;
+	private long[] next;
+	// the log seen so far is known by its size and its last entry, a board continues it if it
+	// has the same entry there, so checking a board does not walk the whole log
+	private int seen;
+	private LogEntry last;
+
+	/**
+	 * @param board the board
+	 * @return a tracker caught up with the board
+	 */
+	@Nonnull public static MrXTracker of(@Nonnull Board board) {
+		var tracker = new MrXTracker();
+		tracker.update(board);
+		return tracker;
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		update(board);
+	}
+
+	/**
+	 * Follows the log entries that are new since the last board, then takes out the stations
+	 * the detectives are on
+	 *
+	 * @param board the board
+	 */
+	public synchronized void update(@Nonnull Board board) {
+		var entries = board.getMrXTravelLog();
+		if (board.getSetup() != setup || entries.size() < seen ||
+				(seen > 0 && !entries.get(seen - 1).equals(last))) reset(board.getSetup());
+		for (int i = seen; i < entries.size(); i++) follow(entries.get(i));
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			var location = board.getDetectiveLocation((Piece.Detective) piece);
+			if (location.isEmpty()) continue;
+			int index = graph.index(location.get());
+			if (index != -1) current[index >>> 6] &= ~(1L << index);
+		}
+		seen = entries.size();
+		last = seen == 0 ? null : entries.get(seen - 1);
+	}
+
+	private void reset(GameSetup setup) {
+		this.setup = setup;
+		this.graph = CompiledGraph.of(setup);
+		this.current = new long[(graph.size() + 63) >>> 6];
+		this.next = new long[current.length];
+		this.seen = 0;
+		this.last = null;
+		for (int station : ScotlandYard.MRX_LOCATIONS) {
+			int index = graph.index(station);
+			if (index != -1) current[index >>> 6] |= 1L << index;
+		}
+		if (Arrays.stream(current).allMatch(word -> word == 0)) {
+			for (int i = 0; i < graph.size(); i++) current[i >>> 6] |= 1L << i;
+		}
+	}
+
+	private void follow(LogEntry entry) {
+		Arrays.fill(next, 0);
+		if (entry.location().isPresent()) {
+			int index = graph.index(entry.location().get());
+			if (index != -1) next[index >>> 6] |= 1L << index;
+		} else {
+			for (Transport transport : TRANSPORTS) {
+				if (entry.ticket() != Ticket.SECRET && transport.requiredTicket() != entry.ticket())
+					continue;
+				int[] offsets = graph.offsets(transport);
+				int[] targets = graph.targets(transport);
+				for (int w = 0; w < current.length; w++) {
+					for (long bits = current[w]; bits != 0; bits &= bits - 1) {
+						int u = (w << 6) | Long.numberOfTrailingZeros(bits);
+						for (int e = offsets[u]; e < offsets[u + 1]; e++)
+							next[targets[e] >>> 6] |= 1L << targets[e];
+					}
+				}
+			}
+		}
+		long[] swap = current;
+		current = next;
+		next = swap;
+	}
+
+	/**
+	 * @return the number of stations MrX could be at; zero before the first board, or if the
+	 * log cannot be explained by the graph
+	 */
+	public synchronized int size() {
+		if (current == null) return 0;
+		int size = 0;
+		for (long word : current) size += Long.bitCount(word);
+		return size;
+	}
+
+	/**
+	 * @param station the station
+	 * @return whether MrX could be at the station
+	 */
+	public synchronized boolean contains(int station) {
+		if (graph == null) return false;
+		int index = graph.index(station);
+		return index != -1 && (current[index >>> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * @return the stations MrX could be at, in ascending order
+	 */
+	@Nonnull public synchronized int[] stations() {
+		var stations = new int[size()];
+		int i = 0;
+		if (current != null) {
+			for (int w = 0; w < current.length; w++) {
+				for (long bits = current[w]; bits != 0; bits &= bits - 1)
+					stations[i++] = graph.station((w << 6) | Long.numberOfTrailingZeros(bits));
+			}
+		}
+		return stations;
+	}
+
+}
@@ -5,7 +5,6 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
@@ -13,6 +12,7 @@ import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
 import uk.ac.bris.cs.scotlandyard.model.Move.*;
 
 //TODO encapsulate all large blocks of code into many small helper functions with meaningful names for clarity
@@ -26,34 +26,52 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		GameSetup setup,
 		Player mrX,
 		ImmutableList<Player> detectives){
-			return new MyGameState(setup, ImmutableSet.of(mrX.piece()), ImmutableList.of(), mrX, detectives);
+			ImmutableSet<Piece> remaining = ImmutableSet.of(mrX.piece());
+			CompiledGraph graph = CompiledGraph.of(setup);
+			return new MyGameState(setup, graph, MoveTable.of(graph), remaining, TravelLog.empty(), mrX, detectives,
+					initialKey(mrX, detectives, remaining));
+	}
+
+	//Zobrist key of a new game, states created by advance update their parent's key instead
+	private static long initialKey(Player mrX, ImmutableList<Player> detectives, ImmutableSet<Piece> remaining) {
+		long key = Zobrist.player(mrX) ^ Zobrist.remaining(remaining) ^ Zobrist.round(0);
+		for (Player detective : detectives) key ^= Zobrist.player(detective);
+		return key;
 	}
 
 		
-	private final class MyGameState implements GameState {
-		private GameSetup setup;
-		private ImmutableSet<Piece> remaining; //the players who have yet to play in the round??
-		private ImmutableList<LogEntry> log;
-		private Player mrX;
-		private ImmutableList<Player> detectives;
+	private final class MyGameState implements GameState, RemainingPieces {
+		private final GameSetup setup;
+		private final CompiledGraph graph; //setup.graph without the boxing, shared by every state of the game
+		private final MoveTable moveTable; //every single move of the graph, created once and shared as well
+		private final ImmutableSet<Piece> remaining; //the players who have yet to play in the round??
+		private final TravelLog log; //shares all older entries with the parent state's log
+		private final Player mrX;
+		private final ImmutableList<Player> detectives;
+		private final long key;
+		//computed on first access, most intermediate states never have these read
 		private ImmutableSet<Move> moves;
 		private ImmutableSet<Piece> winner;
 
 		//constructor that gets called by the build function in MyGameStateFactory
 		private MyGameState(
 				final GameSetup setup,
+				final CompiledGraph graph,
+				final MoveTable moveTable,
 				final ImmutableSet<Piece> remaining,
-				final ImmutableList<LogEntry> log,
+				final TravelLog log,
 				final Player mrX,
-				final ImmutableList<Player> detectives) {
+				final ImmutableList<Player> detectives,
+				final long key) {
 
 			this.setup = setup;
+			this.graph = graph;
+			this.moveTable = moveTable;
 			this.remaining = remaining;
 			this.log = log;
 			this.mrX = mrX;
 			this.detectives = detectives;
-			this.winner = ImmutableSet.of();
-			this.moves = ImmutableSet.of();
+			this.key = key;
 
 			//checking for null inputs
 			if (mrX == null) throw new NullPointerException();
@@ -81,33 +99,25 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			if (setup.graph.nodes().size() == 0) throw new IllegalArgumentException();
 			//check empty moves
 			if (setup.moves.isEmpty()) throw new IllegalArgumentException();
+		}
 
-			//get mrX & detective moves
-			Set<Move> mrXMoves = getMoves(ImmutableList.of(mrX), detectives);
-			Set<Move> detectiveMoves = getMoves(detectives, detectives);
-
-			//if mrX is surrounded by detectives then detectives win aka mrX has no moves left
-			if (mrXMoves.isEmpty() && remaining.contains(mrX.piece()))
-				this.winner = getDetectivesAsImmutableSet();
+		//checks are ordered so that the cheapest decisive one returns first
+		private ImmutableSet<Piece> computeWinner() {
 			//if a detective is on the same square as mrX then the detectives win
-			for (Player detective : detectives) {
-				if (mrX.location() == detective.location()) {
-					this.winner = getDetectivesAsImmutableSet();
-					break;
-				}
-			}
+			if (detectiveOnLocation(mrX.location(), detectives))
+				return getDetectivesAsImmutableSet();
 			//if detectives have no moves left or logbook full then mrX wins
-			if (detectiveMoves.isEmpty() || (log.size() == setup.moves.size() && remaining.isEmpty()))
-				this.winner = ImmutableSet.of(mrX.piece());
-
+			if (log.size() == setup.moves.size() && remaining.isEmpty())
+				return ImmutableSet.of(mrX.piece());
+			if (detectives.stream().noneMatch(detective -> canMove(detective, detectives)))
+				return ImmutableSet.of(mrX.piece());
+			//if mrX is surrounded by detectives then detectives win aka mrX has no moves left
+			if (remaining.contains(mrX.piece()) && !canMove(mrX, detectives))
+				return getDetectivesAsImmutableSet();
 			//if none of the conditions above are met then carry on
-			if (this.winner.isEmpty()) {
-				//updates the ACTUAL moves list with the moves of the remaining players
-				Set<Move> allMoves = new HashSet<>(mrXMoves);
-				allMoves.addAll(detectiveMoves);
-				moves = ImmutableSet.copyOf(getRemainingPlayersMoves(allMoves));
-			}
+			return ImmutableSet.of();
 		}
+
 		private ImmutableSet<Piece> getDetectivesAsImmutableSet(){
 			return ImmutableSet.copyOf(this.detectives
 					.stream()
@@ -118,73 +128,98 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		/**
 		 * @implNote iterates over transport methods of "source" and returns available moves given tickets.
-		 * @apiNote used for both mrX and detectives
+		 * @apiNote used for both mrX and detectives, tickets is a mask from ticketMask so no player is needed
 		 */
-		private ImmutableSet<SingleMove> getSingleMoves(
-				GameSetup setup,
+		private ImmutableList<SingleMove> getSingleMoves(
 				ImmutableList<Player> detectives,
-				Player player,
-				int source) {
+				Piece player,
+				int source,
+				int tickets) {
 
 			//checking if source node exists
-			if (!setup.graph.nodes().contains(source)) throw new IllegalArgumentException();
-
-			ImmutableSet.Builder<SingleMove> playerMoves = ImmutableSet.builder();
-
-			//get available tickets from player
-			Set<Ticket> availableTickets = Stream.of(Ticket.values())
-					.filter(ticketType -> player.tickets().get(ticketType) > 0)
-					.collect(Collectors.toSet());
-
-			for (int destination : setup.graph.adjacentNodes(source)) {
-				//check if detective is on destination node
-				if (detectiveOnLocation(destination, detectives)) continue;
-				//gets all transport methods a player can use given their tickets, and adds to playerMoves
-				setup.graph
-						.edgeValueOrDefault(source, destination, ImmutableSet.of())
-						.stream()
-						.filter(transportMethod -> availableTickets.contains(transportMethod.requiredTicket()))
-						.forEach(transportMethod -> playerMoves.add(new SingleMove(
-								player.piece(),
-								source,
-								transportMethod.requiredTicket(),
-								destination
-						)));
-				//if player has a secret ticket then add move using secret ticket
-				if (availableTickets.contains(Ticket.SECRET))
-					playerMoves.add(new SingleMove(player.piece(), source, Ticket.SECRET, destination));
+			int node = this.graph.index(source);
+			if (node == -1) throw new IllegalArgumentException();
+
+			ImmutableList.Builder<SingleMove> playerMoves = ImmutableList.builder();
+			//moves of the standard pieces come from the move table, anything else gets new moves
+			int piece = ScotlandYard.ALL_PIECES.indexOf(player);
+
+			//gets all transport methods a player can use given their tickets, and adds to playerMoves
+			for (Transport transport : Transport.values()) {
+				//ferries need a secret ticket, those moves are all added below so skipping avoids duplicates
+				if (transport == Transport.FERRY) continue;
+				Ticket ticket = transport.requiredTicket();
+				if (!hasTicket(tickets, ticket)) continue;
+				int[] offsets = this.graph.offsets(transport);
+				int[] targets = this.graph.targets(transport);
+				for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+					int destination = this.graph.station(targets[i]);
+					//check if detective is on destination node
+					if (detectiveOnLocation(destination, detectives)) continue;
+					playerMoves.add(piece == -1 ?
+							new SingleMove(player, source, ticket, destination) :
+							this.moveTable.single(piece, transport, i));
+				}
+			}
+			//if player has a secret ticket then add move using secret ticket to every neighbour
+			if (hasTicket(tickets, Ticket.SECRET)) {
+				int[] offsets = this.graph.neighbourOffsets();
+				int[] targets = this.graph.neighbourTargets();
+				for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+					int destination = this.graph.station(targets[i]);
+					if (detectiveOnLocation(destination, detectives)) continue;
+					playerMoves.add(piece == -1 ?
+							new SingleMove(player, source, Ticket.SECRET, destination) :
+							this.moveTable.secret(piece, i));
+				}
 			}
 			return playerMoves.build();
 		}
 
 		/**
-		 * @implNote calls & iterates through getSingleMoves, then calls again to find double moves
-		 * @apiNote used for mrX only
+		 * @implNote pairs every first move with the single moves from its destination
+		 * @apiNote used for mrX only, firstMoves are the player's single moves from getSingleMoves
 		 */
-		private ImmutableSet<DoubleMove> getDoubleMoves(
-				GameSetup setup,
+		private ImmutableList<DoubleMove> getDoubleMoves(
 				ImmutableList<Player> detectives,
 				Player player,
-				int source) {
-			ImmutableSet.Builder<DoubleMove> doubleMoves = ImmutableSet.builder();
+				int tickets,
+				ImmutableList<SingleMove> firstMoves) {
 			// check if contains x2 ticket and has enough logbook space
-			if (player.tickets().get(Ticket.DOUBLE) == 0 || log.size() + 2 > setup.moves.size())
-				return doubleMoves.build();
-
-			//get single moves
-			ImmutableSet<SingleMove> firstMoveList = getSingleMoves(setup, detectives, player, source);
-
-			//iterate through every possible first move
-			for (SingleMove move1 : firstMoveList) {
-				//making hypothetical player that has used a ticket in order to find second move
-				Player hypotheticalPlayer = player.use(move1.ticket);
-				//getting second move & building DoubleMove from 2 SingleMoves
-				getSingleMoves(setup, detectives, hypotheticalPlayer, move1.destination)
-						.forEach(move2 -> doubleMoves.add(buildDoubleMove(move1, move2)));
+			if (!player.has(Ticket.DOUBLE) || log.size() + 2 > setup.moves.size())
+				return ImmutableList.of();
+
+			//second moves only depend on the node after the first move and the tickets left after it,
+			//so each (node, tickets) pair is expanded once and shared by all first moves leading there
+			Map<Long, ImmutableList<SingleMove>> secondMoves = new HashMap<>();
+			ImmutableList.Builder<DoubleMove> doubleMoves = ImmutableList.builder();
+			for (SingleMove move1 : firstMoves) {
+				//using the last ticket of a type takes it out of the mask, no hypothetical player needed
+				int ticketsLeft = player.count(move1.ticket) == 1 ?
+						tickets & ~(1 << move1.ticket.ordinal()) :
+						tickets;
+				long key = ((long) move1.destination << 32) | ticketsLeft;
+				ImmutableList<SingleMove> expansion = secondMoves.computeIfAbsent(key,
+						k -> getSingleMoves(detectives, player.piece(), move1.destination, ticketsLeft));
+				//first and second moves are both duplicate free so every pair is a new DoubleMove
+				for (SingleMove move2 : expansion) doubleMoves.add(buildDoubleMove(move1, move2));
 			}
 			return doubleMoves.build();
 		}
 
+		//bitmask of the ticket types (by ordinal) the player has at least one of
+		private int ticketMask(Player player) {
+			int mask = 0;
+			for (Ticket ticket : Ticket.values()) {
+				if (player.has(ticket)) mask |= 1 << ticket.ordinal();
+			}
+			return mask;
+		}
+
+		private boolean hasTicket(int tickets, Ticket ticket) {
+			return (tickets & (1 << ticket.ordinal())) != 0;
+		}
+
 
 		@Override
 		public GameSetup getSetup() {
@@ -221,42 +256,56 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					.findFirst();
 
 			if (referencedPlayer.isEmpty()) return Optional.empty();
-			return Optional.of(ticket -> referencedPlayer.get().tickets().get(ticket));
+			return Optional.of(ticket -> referencedPlayer.get().count(ticket));
 		}
 
 		@Override
 		public ImmutableList<LogEntry> getMrXTravelLog() {
-			return this.log;
+			return this.log.asList();
 		}
 
 		@Override
 		public ImmutableSet<Piece> getWinner() {
+			if (this.winner == null) this.winner = computeWinner();
 			return this.winner;
 		}
 
 		@Override
 		public ImmutableSet<Move> getAvailableMoves() {
+			if (this.moves == null) {
+				//updates the ACTUAL moves list with the moves of the remaining players
+				this.moves = getWinner().isEmpty() ?
+						getMoves(getRemainingPlayers(), detectives) :
+						ImmutableSet.of();
+			}
 			return this.moves;
 		}
 
 		@Override
 		public GameState advance(Move move) {
-			if (!moves.contains(move)) throw new IllegalArgumentException("Illegal move: " + move);
+			if (!getAvailableMoves().contains(move))
+				throw new IllegalArgumentException("Illegal move: " + move);
 
 			if (move.commencedBy() == this.mrX.piece()) {
 				//add move to log (checking if setup.move is hidden or not)
-				List<LogEntry> newLog = getNewLog(move, this.setup, this.log);
+				TravelLog newLog = getNewLog(move, this.setup, this.log);
 				//take used tickets away from mrX & move position to destination
-				this.mrX = this.mrX.use(move.tickets());
-				this.mrX = this.mrX.at(getMoveDestination(move));
+				Player newMrX = this.mrX.use(move.tickets()).at(getMoveDestination(move));
 				//swap to the detectives turn (update the remaining variable)
 				//mrX plays first therefore all the detectives have yet to play their turn
 				ImmutableSet<Piece> newRemainingPlayers = getDetectivesAsImmutableSet();
+				long newKey = this.key
+						^ Zobrist.player(this.mrX) ^ Zobrist.player(newMrX)
+						^ Zobrist.remaining(this.remaining) ^ Zobrist.remaining(newRemainingPlayers)
+						^ Zobrist.round(this.log.size()) ^ Zobrist.round(newLog.size());
 				return new MyGameState(this.setup,
+						this.graph,
+						this.moveTable,
 						newRemainingPlayers,
-						ImmutableList.copyOf(newLog),
-						this.mrX,
-						ImmutableList.copyOf(detectives)
+						newLog,
+						newMrX,
+						this.detectives,
+						newKey
 				);
 			}
 			//finding detective who made the move
@@ -266,36 +315,68 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			int index = this.detectives.indexOf(detective);
 			//move detective to destination & give ticket to mrX
 			detective = detective.at(getMoveDestination(move)).use(move.tickets());
-			mrX = mrX.give(getSingleMoveTicket(move));
-
-			//lambda expression needs value to be final
-			final Player finalDetective = detective;
-			//Ensure that particular detective won't move again this round (remove from remaining players)
-			Set<Piece> newRemainingPlayers = this.remaining.stream()
-					.filter(det -> det != finalDetective.piece())
-					.collect(Collectors.toSet());
-
-			//getting newRemainingPlayers in the form of ImmutableList<Player> for checking of moves afterwards
-			Set<Piece> finalNewRemainingPlayers = newRemainingPlayers;
-			ImmutableList<Player> remainingDetectives = ImmutableList.copyOf(detectives.stream()
-					.filter(det -> finalNewRemainingPlayers.contains(det.piece()))
-					.toList());
-			//if remaining detectives have no more moves to play then swap to mrX turn (update remaining variable)
-			if (getMoves(remainingDetectives, detectives).isEmpty())
-				newRemainingPlayers = Set.of(this.mrX.piece());
-			if (this.setup.moves.size() == this.log.size())
-				newRemainingPlayers = Set.of();
-
+			Player newMrX = this.mrX.give(getSingleMoveTicket(move));
 			List<Player> mutableDetectives = new ArrayList<>(this.detectives);
 			mutableDetectives.set(index, detective);
+			ImmutableList<Player> newDetectives = ImmutableList.copyOf(mutableDetectives);
+
+			//Ensure that particular detective won't move again this round (remove from remaining players)
+			ImmutableSet<Piece> others = this.remaining.stream()
+					.filter(piece -> piece != move.commencedBy())
+					.collect(ImmutableSet.toImmutableSet());
+			//if remaining detectives have no more moves to play (checked against the updated
+			//positions) then swap to mrX turn, unless the logbook is full in which case the game
+			//ends after this round; a stuck detective keeps its turn in case it is freed
+			ImmutableSet<Piece> newRemainingPlayers = newDetectives.stream().anyMatch(det ->
+					others.contains(det.piece()) && canMove(det, newDetectives)) ? others :
+					this.setup.moves.size() != this.log.size() ?
+							ImmutableSet.of(newMrX.piece()) : ImmutableSet.of();
+
+			//only the mover, mrX's tickets and the remaining players changed
+			long newKey = this.key
+					^ Zobrist.player(this.detectives.get(index)) ^ Zobrist.player(detective)
+					^ Zobrist.player(this.mrX) ^ Zobrist.player(newMrX)
+					^ Zobrist.remaining(this.remaining) ^ Zobrist.remaining(newRemainingPlayers);
 			return new MyGameState(this.setup,
-					ImmutableSet.copyOf(newRemainingPlayers),
-					this.log, this.mrX,
-					ImmutableList.copyOf(mutableDetectives)
+					this.graph,
+					this.moveTable,
+					newRemainingPlayers,
+					this.log, newMrX,
+					newDetectives,
+					newKey
 			);
 		}
 
 
+		@Nonnull @Override
+		public ImmutableSet<Piece> remainingPieces() {
+			return this.remaining;
+		}
+
+		@Override
+		public long zobristKey() {
+			return this.key;
+		}
+
+		//structural equality, the key is only used to reject quickly
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof MyGameState)) return false;
+			MyGameState that = (MyGameState) o;
+			return this.key == that.key
+					&& this.remaining.equals(that.remaining)
+					&& this.mrX.equals(that.mrX)
+					&& this.detectives.equals(that.detectives)
+					&& this.log.equals(that.log)
+					&& (this.setup == that.setup || this.setup.equals(that.setup));
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.key);
+		}
+
 		//helper functions
 
 		//check if detective is on location
@@ -313,25 +394,45 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			return doubleMove;
 		}
 
-		//gets the moves of the players who are in the remaining players set;
-		Set<Move> getRemainingPlayersMoves(Set<Move> allMoves) {
-			Set<Move> output = new HashSet<>();
-			for (Move move : allMoves) {
-				for (Piece piece : this.remaining) {
-					if (move.commencedBy() == piece) output.add(move);
-				}
+		//gets the players who are in the remaining players set
+		List<Player> getRemainingPlayers() {
+			List<Player> output = new ArrayList<>();
+			if (this.remaining.contains(this.mrX.piece())) output.add(this.mrX);
+			for (Player detective : this.detectives) {
+				if (this.remaining.contains(detective.piece())) output.add(detective);
 			}
 			return output;
 		}
 
+		//check if player has at least one move, stops at the first one found
+		//no single moves also means no double moves so those are never looked at
+		boolean canMove(Player player, ImmutableList<Player> detectives) {
+			int node = this.graph.index(player.location());
+			int[] offsets = this.graph.neighbourOffsets();
+			int[] targets = this.graph.neighbourTargets();
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int destination = targets[i];
+				if (detectiveOnLocation(this.graph.station(destination), detectives)) continue;
+				if (player.has(Ticket.SECRET)) return true;
+				for (Transport transport : Transport.values()) {
+					if (player.has(transport.requiredTicket())
+							&& this.graph.connected(node, destination, transport)) return true;
+				}
+			}
+			return false;
+		}
+
 		//Find all moves for players list
-		Set<Move> getMoves(List<Player> players, List<Player> detectives) {
-			Set<Move> playerMoves = new HashSet<>();
+		//no two players share a move and no player gets a duplicate, so the moves are only collected once
+		ImmutableSet<Move> getMoves(List<Player> players, ImmutableList<Player> detectives) {
+			ImmutableSet.Builder<Move> playerMoves = ImmutableSet.builder();
 			for (Player player : players) {
-				playerMoves.addAll(getSingleMoves(this.setup, ImmutableList.copyOf(detectives), player, player.location()));
-				playerMoves.addAll(getDoubleMoves(this.setup, ImmutableList.copyOf(detectives), player, player.location()));
+				int tickets = ticketMask(player);
+				ImmutableList<SingleMove> singleMoves = getSingleMoves(detectives, player.piece(), player.location(), tickets);
+				playerMoves.addAll(singleMoves);
+				playerMoves.addAll(getDoubleMoves(detectives, player, tickets, singleMoves));
 			}
-			return playerMoves;
+			return playerMoves.build();
 		}
 
 		//visitor pattern functions
@@ -348,26 +449,26 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 		//add new entry in log depending on move type
-		List<LogEntry> getNewLog(Move move, GameSetup setup, List<LogEntry> log) {
+		//appending never copies the old entries, the new log shares them with the old one
+		TravelLog getNewLog(Move move, GameSetup setup, TravelLog log) {
 			return move.accept(new Move.Visitor<>() {
-				public List<LogEntry> visit(SingleMove singleMove) {
-					List<LogEntry> newLog = new ArrayList<>(log);
-					if (!setup.moves.get(newLog.size())) newLog.add(LogEntry.hidden(singleMove.ticket));
-					else newLog.add(LogEntry.reveal(singleMove.ticket, singleMove.destination));
-					return newLog;
+				public TravelLog visit(SingleMove singleMove) {
+					return log.append(getLogEntry(setup, log.size(), singleMove.ticket, singleMove.destination));
 				}
 
-				public List<LogEntry> visit(DoubleMove doubleMove) {
-					List<LogEntry> newLog = new ArrayList<>(log);
-					if (!setup.moves.get(newLog.size())) newLog.add(LogEntry.hidden(doubleMove.ticket1));
-					else newLog.add(LogEntry.reveal(doubleMove.ticket1, doubleMove.destination1));
-					if (!setup.moves.get(newLog.size())) newLog.add(LogEntry.hidden(doubleMove.ticket2));
-					else newLog.add(LogEntry.reveal(doubleMove.ticket2, doubleMove.destination2));
-					return newLog;
+				public TravelLog visit(DoubleMove doubleMove) {
+					TravelLog newLog = log.append(getLogEntry(setup, log.size(), doubleMove.ticket1, doubleMove.destination1));
+					return newLog.append(getLogEntry(setup, newLog.size(), doubleMove.ticket2, doubleMove.destination2));
 				}
 			});
 		}
 
+		//hidden or revealed entry depending on the setup's move at that position
+		LogEntry getLogEntry(GameSetup setup, int round, Ticket ticket, int destination) {
+			if (!setup.moves.get(round)) return LogEntry.hidden(ticket);
+			return LogEntry.reveal(ticket, destination);
+		}
+
 		//returns the ticket type of given move
 		Ticket getSingleMoveTicket(Move move) {
 			return move.accept(new Visitor<>() {
@@ -0,0 +1,173 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Encodes a {@link Move} into a single {@code long} so that move lists can be kept without
+ * allocating an object per move.
+ * <br>
+ * Layout, from the least significant bit:
+ * <pre>
+ *  0-15  source station
+ * 16-31  (first) destination station
+ * 32-47  second destination station, 0 for single moves
+ * 48-50  (first) ticket ordinal
+ * 51-53  second ticket ordinal, 0 for single moves
+ * 54-56  piece index in {@link ScotlandYard#ALL_PIECES}
+ * 57     set for double moves
+ * </pre>
+ * Stations must be in {@code [0, 65535]}. The {@link Ticket#DOUBLE} ticket of a double move is
+ * implied by bit 57. Converting with {@link #encode(Move)} and {@link #decode(long)} is lossless.
+ */
+public final class PackedMove {
+
+	private PackedMove() {}
+
+	private static final int STATION_BITS = 16;
+	private static final int STATION_MASK = (1 << STATION_BITS) - 1;
+	private static final int DESTINATION1_SHIFT = 16;
+	private static final int DESTINATION2_SHIFT = 32;
+	private static final int TICKET1_SHIFT = 48;
+	private static final int TICKET2_SHIFT = 51;
+	private static final int PIECE_SHIFT = 54;
+	private static final long DOUBLE_FLAG = 1L << 57;
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station
+	 * @param ticket the ticket ordinal
+	 * @param destination the destination station
+	 * @return the packed single move
+	 */
+	public static long single(int piece, int source, int ticket, int destination) {
+		return ((long) piece << PIECE_SHIFT) | ((long) ticket << TICKET1_SHIFT) |
+				((long) destination << DESTINATION1_SHIFT) | source;
+	}
+
+	/**
+	 * @param piece the piece index in {@link ScotlandYard#ALL_PIECES}
+	 * @param source the source station
+	 * @param ticket1 the first ticket ordinal
+	 * @param destination1 the first destination station
+	 * @param ticket2 the second ticket ordinal
+	 * @param destination2 the second destination station
+	 * @return the packed double move
+	 */
+	public static long doubleMove(int piece, int source,
+	                              int ticket1, int destination1,
+	                              int ticket2, int destination2) {
+		return DOUBLE_FLAG | ((long) piece << PIECE_SHIFT) |
+				((long) ticket2 << TICKET2_SHIFT) | ((long) ticket1 << TICKET1_SHIFT) |
+				((long) destination2 << DESTINATION2_SHIFT) |
+				((long) destination1 << DESTINATION1_SHIFT) | source;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the packed move
+	 * @throws IllegalArgumentException if the piece is not one of
+	 * {@link ScotlandYard#ALL_PIECES} or a station does not fit in 16 bits
+	 */
+	public static long encode(@Nonnull Move move) {
+		int piece = pieceIndex(move.commencedBy());
+		return move.accept(new Move.Visitor<>() {
+			@Override public Long visit(SingleMove move) {
+				return single(piece, station(move.source()), move.ticket.ordinal(),
+						station(move.destination));
+			}
+			@Override public Long visit(DoubleMove move) {
+				return doubleMove(piece, station(move.source()),
+						move.ticket1.ordinal(), station(move.destination1),
+						move.ticket2.ordinal(), station(move.destination2));
+			}
+		});
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return the equivalent {@link SingleMove} or {@link DoubleMove}
+	 */
+	@Nonnull public static Move decode(long move) {
+		Piece piece = piece(move);
+		return isDouble(move) ?
+				new DoubleMove(piece, source(move), ticket1(move), destination1(move),
+						ticket2(move), destination2(move)) :
+				new SingleMove(piece, source(move), ticket1(move), destination1(move));
+	}
+
+	public static boolean isDouble(long move) { return (move & DOUBLE_FLAG) != 0; }
+
+	/**
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 */
+	public static int pieceIndex(long move) { return (int) (move >>> PIECE_SHIFT) & 0b111; }
+
+	@Nonnull public static Piece piece(long move) {
+		return ScotlandYard.ALL_PIECES.get(pieceIndex(move));
+	}
+
+	public static int source(long move) { return (int) move & STATION_MASK; }
+
+	/**
+	 * @return the destination of a single move or the first destination of a double move
+	 */
+	public static int destination1(long move) {
+		return (int) (move >>> DESTINATION1_SHIFT) & STATION_MASK;
+	}
+
+	/**
+	 * @return the second destination of a double move, 0 for single moves
+	 */
+	public static int destination2(long move) {
+		return (int) (move >>> DESTINATION2_SHIFT) & STATION_MASK;
+	}
+
+	/**
+	 * @return where the piece ends up after the move
+	 */
+	public static int finalDestination(long move) {
+		return isDouble(move) ? destination2(move) : destination1(move);
+	}
+
+	/**
+	 * @return the ordinal of the ticket of a single move or the first ticket of a double move
+	 */
+	public static int ticket1Ordinal(long move) { return (int) (move >>> TICKET1_SHIFT) & 0b111; }
+
+	/**
+	 * @return the ordinal of the second ticket of a double move
+	 */
+	public static int ticket2Ordinal(long move) { return (int) (move >>> TICKET2_SHIFT) & 0b111; }
+
+	@Nonnull public static Ticket ticket1(long move) { return TICKETS[ticket1Ordinal(move)]; }
+
+	@Nonnull public static Ticket ticket2(long move) { return TICKETS[ticket2Ordinal(move)]; }
+
+	/**
+	 * @param piece the piece
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 * @throws IllegalArgumentException if the piece is not one of them
+	 */
+	public static int pieceIndex(@Nonnull Piece piece) {
+		int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+		if (index == -1) throw new IllegalArgumentException("Unknown piece " + piece);
+		return index;
+	}
+
+	private static int station(int station) {
+		if ((station & ~STATION_MASK) != 0)
+			throw new IllegalArgumentException("Station " + station + " does not fit in 16 bits");
+		return station;
+	}
+
+	/**
+	 * @return a readable form of the packed move, same as {@link Move#toString()}
+	 */
+	@Nonnull public static String toString(long move) { return decode(move).toString(); }
+
+}
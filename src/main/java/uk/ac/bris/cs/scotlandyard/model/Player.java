@@ -2,7 +2,7 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -14,9 +14,15 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
  */
 public final class Player {
+	private static final Ticket[] TICKETS = Ticket.values();
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	// ticket counts by ordinal; absent tickets count as 0 but stay absent from tickets()
+	private final int[] counts;
+	private final int present;
 	private final int location;
+	// built on first access unless given
+	private ImmutableMap<Ticket, Integer> tickets;
 
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
@@ -24,6 +30,21 @@ public final class Player {
 		this.piece = Objects.requireNonNull(piece);
 		this.tickets = Objects.requireNonNull(tickets);
 		this.location = location;
+		this.counts = new int[TICKETS.length];
+		int present = 0;
+		for (var entry : tickets.entrySet()) {
+			counts[entry.getKey().ordinal()] = entry.getValue();
+			present |= 1 << entry.getKey().ordinal();
+		}
+		this.present = present;
+	}
+	private Player(Piece piece, int[] counts, int present,
+	               ImmutableMap<Ticket, Integer> tickets, int location) {
+		this.piece = piece;
+		this.counts = counts;
+		this.present = present;
+		this.tickets = tickets;
+		this.location = location;
 	}
 	/**
 	 * @return the piece
@@ -40,17 +61,36 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		var tickets = this.tickets;
+		if (tickets == null) {
+			var builder = ImmutableMap.<Ticket, Integer>builderWithExpectedSize(TICKETS.length);
+			for (Ticket ticket : TICKETS) {
+				if ((present & (1 << ticket.ordinal())) != 0)
+					builder.put(ticket, counts[ticket.ordinal()]);
+			}
+			this.tickets = tickets = builder.build();
+		}
+		return tickets;
+	}
+	/**
+	 * @param ticket the ticket
+	 * @return the number of the given ticket, 0 if the player has none
+	 */
+	public int count(@Nonnull Ticket ticket) { return counts[ticket.ordinal()]; }
 	/**
 	 * @return the location
 	 */
 	public int location() { return location; }
+	// a bit per ticket ordinal in the ticket map, so a ticket given to the player that is not in
+	// the map is not counted; see give(Ticket)
+	int present() { return present; }
 	/**
 	 * @param ticket the ticket
 	 * @return whether the player has the given ticket
 	 */
 	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
+		return counts[Objects.requireNonNull(ticket).ordinal()] != 0;
 	}
 	/**
 	 * @param ticket the ticket
@@ -58,7 +98,7 @@ public final class Player {
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
 	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
+		return counts[Objects.requireNonNull(ticket).ordinal()] >= count;
 	}
 	/**
 	 * See {@link #give(Ticket)}
@@ -67,18 +107,21 @@ public final class Player {
 	 * @return a new player with one more of the given tickets
 	 */
 	@Nonnull public Player give(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.give(t);
-		return x;
+		int[] counts = this.counts.clone();
+		for (Ticket t : tickets) {
+			if ((present & (1 << t.ordinal())) != 0) counts[t.ordinal()]++;
+		}
+		return new Player(piece, counts, present, null, location);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one more of the given ticket
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		if ((present & (1 << ticket.ordinal())) == 0) return this;
+		int[] counts = this.counts.clone();
+		counts[ticket.ordinal()]++;
+		return new Player(piece, counts, present, null, location);
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -87,9 +130,13 @@ public final class Player {
 	 * @return a new player with one less of the given tickets
 	 */
 	@Nonnull public Player use(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.use(t);
-		return x;
+		int[] counts = this.counts.clone();
+		for (Ticket t : tickets) {
+			if (counts[t.ordinal()] == 0)
+				throw new IllegalArgumentException("No " + t + " remaining");
+			counts[t.ordinal()]--;
+		}
+		return new Player(piece, counts, present, null, location);
 	}
 	/**
 	 * @param ticket the ticket
@@ -98,22 +145,26 @@ public final class Player {
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
 		if (!has(ticket))
 			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		int[] counts = this.counts.clone();
+		counts[ticket.ordinal()]--;
+		return new Player(piece, counts, present, null, location);
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		return new Player(piece, counts, present, tickets, newLocation);
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
 		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+				present == that.present && Arrays.equals(counts, that.counts);
+	}
+	@Override public int hashCode() {
+		return 31 * (31 * piece.hashCode() + Arrays.hashCode(counts)) + location;
 	}
-	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
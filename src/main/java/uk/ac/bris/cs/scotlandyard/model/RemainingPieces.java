@@ -0,0 +1,20 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Implemented by the game states of this package, which know who has yet to move this round
+ * even when a detective is stuck and so has no available moves until another detective frees
+ * it; {@link Board#getAvailableMoves()} alone cannot tell such a detective apart from one that
+ * has already moved.
+ */
+interface RemainingPieces {
+
+	/**
+	 * @return the pieces that have yet to move this round, empty once the last round is over
+	 */
+	@Nonnull ImmutableSet<Piece> remainingPieces();
+
+}
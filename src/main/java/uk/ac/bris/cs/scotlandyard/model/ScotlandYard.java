@@ -5,20 +5,18 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.graph.EndpointPair;
 import com.google.common.graph.ImmutableValueGraph;
-import com.google.common.graph.MutableValueGraph;
-import com.google.common.graph.ValueGraphBuilder;
 import com.google.common.io.Resources;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.stream.Collectors;
@@ -178,45 +176,20 @@ public final class ScotlandYard {
 
 	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
 	standardGraph() throws IOException {
-		return readGraph(Resources.toString(
-				Resources.getResource("graph.txt"), StandardCharsets.UTF_8));
+		try (var channel = Channels.newChannel(
+				Resources.getResource("graph.txt").openStream())) {
+			return GraphFormat.readText(channel);
+		}
 	}
 
+	/**
+	 * @param content the graph in the text format, see {@link GraphFormat}
+	 * @return the graph
+	 * @throws IllegalArgumentException if the content is not a valid graph
+	 */
 	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
 	readGraph(@Nonnull String content) {
-		List<String> lines = content.lines().collect(Collectors.toList());
-		if (lines.isEmpty()) throw new IllegalArgumentException("No lines");
-		int currentLine = 0;
-
-		String[] topLine = lines.get(currentLine++).split(" ");
-		int numberOfNodes = Integer.parseInt(topLine[0]);
-		int numberOfEdges = Integer.parseInt(topLine[1]);
-
-		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
-				ValueGraphBuilder.undirected()
-						.expectedNodeCount(numberOfNodes)
-						.build();
-
-		for (int i = 0; i < numberOfNodes; i++) {
-			String line = lines.get(currentLine++);
-			if (line.isEmpty()) continue;
-			graph.addNode(Integer.parseInt(line));
-		}
-
-		for (int i = 0; i < numberOfEdges; i++) {
-			String line = lines.get(currentLine++);
-			if (line.isEmpty()) continue;
-
-			String[] s = line.split(" ");
-			if (s.length != 3) throw new IllegalArgumentException("Bad edge line:" + line);
-
-			var pair = EndpointPair.unordered(Integer.parseInt(s[0]), Integer.parseInt(s[1]));
-			//noinspection ConstantConditions
-			graph.putEdgeValue(pair, ImmutableSet.<Transport>builder()
-					.addAll(graph.edgeValueOrDefault(pair, ImmutableSet.of()))
-					.add(Transport.valueOf(s[2].toUpperCase(Locale.ENGLISH))).build());
-		}
-		return ImmutableValueGraph.copyOf(graph);
+		return GraphFormat.readText(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
 	}
 
 
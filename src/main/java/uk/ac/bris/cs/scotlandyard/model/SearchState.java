@@ -0,0 +1,578 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.StationBitboards.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.StationBitboards.TICKET_COUNT;
+
+/**
+ * A mutable companion to {@link Board.GameState} for tree search.
+ * <br>
+ * Moves are {@link PackedMove}s applied in place with {@link #make(long)} and reverted exactly
+ * with {@link #unmake()}; neither allocates once the undo stack has grown to the search depth.
+ * The rules are the same as {@link MyGameStateFactory} and {@link BitboardGameStateFactory}.
+ * <br>
+ * Players are indexed with MrX at 0 followed by the detectives. Instances are not thread safe,
+ * use {@link #copy()} to give each search thread its own.
+ */
+public final class SearchState {
+
+	/**
+	 * Returned by {@link #winner()} while the game is still on
+	 */
+	public static final int NONE = 0;
+	/**
+	 * Returned by {@link #winner()} when MrX has won
+	 */
+	public static final int MRX = 1;
+	/**
+	 * Returned by {@link #winner()} when the detectives have won
+	 */
+	public static final int DETECTIVES = 2;
+
+	private static final int UNKNOWN = -1;
+
+	private final GameSetup setup;
+	private final StationBitboards boards;
+	private final Piece[] pieces;
+	private final int[] pieceIndices;
+	private final int[] locations;
+	private final int[] tickets;
+	private final long[] occupied;
+	private final long[] nobody;
+	private int remaining;
+	private int round;
+	private int winner = UNKNOWN;
+	private long key;
+
+	// scratch space for generateRoundMoves
+	private MoveList available;
+	private MoveList reach;
+
+	private long[] undoMoves;
+	private int[] undoRemaining;
+	private long[] undoKeys;
+	private int ply;
+
+	private SearchState(GameSetup setup, StationBitboards boards, Piece[] pieces,
+	                    int[] locations, int[] tickets, int remaining, int round) {
+		this.setup = setup;
+		this.boards = boards;
+		this.pieces = pieces;
+		this.pieceIndices = Arrays.stream(pieces).mapToInt(PackedMove::pieceIndex).toArray();
+		this.locations = locations;
+		this.tickets = tickets;
+		this.occupied = boards.newSet();
+		this.nobody = boards.newSet();
+		for (int i = 1; i < pieces.length; i++) StationBitboards.set(occupied, locations[i]);
+		this.remaining = remaining;
+		this.round = round;
+		this.undoMoves = new long[32];
+		this.undoRemaining = new int[32];
+		this.undoKeys = new long[32];
+		this.key = Zobrist.round(round) ^ remainingKey();
+		for (int i = 0; i < pieces.length; i++) key ^= playerKey(i);
+	}
+
+	private SearchState(SearchState that) {
+		this.setup = that.setup;
+		this.boards = that.boards;
+		this.pieces = that.pieces;
+		this.pieceIndices = that.pieceIndices;
+		this.locations = that.locations.clone();
+		this.tickets = that.tickets.clone();
+		this.occupied = that.occupied.clone();
+		this.nobody = that.nobody;
+		this.remaining = that.remaining;
+		this.round = that.round;
+		this.winner = that.winner;
+		this.key = that.key;
+		this.undoMoves = that.undoMoves.clone();
+		this.undoRemaining = that.undoRemaining.clone();
+		this.undoKeys = that.undoKeys.clone();
+		this.ply = that.ply;
+	}
+
+	/**
+	 * Creates a search state at the start of a game, the players are validated the same way as
+	 * {@link BitboardGameStateFactory#build(GameSetup, Player, ImmutableList)}
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return a new search state where MrX is to move
+	 */
+	@Nonnull public static SearchState of(@Nonnull GameSetup setup,
+	                                      @Nonnull Player mrX,
+	                                      @Nonnull ImmutableList<Player> detectives) {
+		return of(new BitboardGameStateFactory().build(setup, mrX, detectives),
+				mrX.location());
+	}
+
+	/**
+	 * Seeds a search state from a board where MrX is to move (e.g. the board given to an
+	 * {@link Ai} playing MrX); MrX's location is taken from the available moves.
+	 *
+	 * @param board the board
+	 * @return a new search state
+	 * @throws IllegalArgumentException if MrX has no available moves on the board
+	 */
+	@Nonnull public static SearchState of(@Nonnull Board board) {
+		return of(board, board.getAvailableMoves().stream()
+				.filter(move -> move.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("MrX's location is unknown")));
+	}
+
+	/**
+	 * Seeds a search state from any board with MrX at the given location. This is how
+	 * detectives search a determinisation of MrX's hidden location.
+	 * <br>
+	 * Pieces that still have to move are taken from the game states of this package, and from
+	 * the available moves of any other board.
+	 *
+	 * @param board the board
+	 * @param mrXLocation MrX's location
+	 * @return a new search state
+	 */
+	@Nonnull public static SearchState of(@Nonnull Board board, int mrXLocation) {
+		GameSetup setup = board.getSetup();
+		var boards = StationBitboards.of(setup.graph);
+		var players = new ArrayList<Piece>();
+		board.getPlayers().stream().filter(Piece::isMrX).forEach(players::add);
+		board.getPlayers().stream().filter(Piece::isDetective).forEach(players::add);
+		if (players.isEmpty() || !players.get(0).isMrX())
+			throw new IllegalArgumentException("Board has no MrX");
+		var pieces = players.toArray(new Piece[0]);
+		var locations = new int[pieces.length];
+		var tickets = new int[pieces.length * TICKET_COUNT];
+		for (int i = 0; i < pieces.length; i++) {
+			int station = i == 0 ? mrXLocation : board
+					.getDetectiveLocation((Piece.Detective) pieces[i]).orElseThrow();
+			locations[i] = boards.index(station);
+			if (locations[i] == -1)
+				throw new IllegalArgumentException("Location not in graph: " + station);
+			var ticketBoard = board.getPlayerTickets(pieces[i]).orElseThrow();
+			for (Ticket ticket : Ticket.values())
+				tickets[i * TICKET_COUNT + ticket.ordinal()] = ticketBoard.getCount(ticket);
+		}
+		int remaining = 0;
+		if (board instanceof RemainingPieces) {
+			for (Piece piece : ((RemainingPieces) board).remainingPieces())
+				remaining |= 1 << players.indexOf(piece);
+		} else {
+			for (Move move : board.getAvailableMoves())
+				remaining |= 1 << players.indexOf(move.commencedBy());
+			if (remaining == 0 && !board.getWinner().contains(pieces[0])) remaining = 1;
+		}
+		return new SearchState(setup, boards, pieces, locations, tickets, remaining,
+				board.getMrXTravelLog().size());
+	}
+
+	/**
+	 * @return an independent copy of this state, including the undo history
+	 */
+	@Nonnull public SearchState copy() { return new SearchState(this); }
+
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return number of players, MrX included
+	 */
+	public int playerCount() { return pieces.length; }
+
+	/**
+	 * @param player the player index
+	 * @return the piece of the player
+	 */
+	@Nonnull public Piece piece(int player) { return pieces[player]; }
+
+	/**
+	 * @param player the player index
+	 * @return the station the player is at
+	 */
+	public int location(int player) { return boards.station(locations[player]); }
+
+	/**
+	 * @param player the player index
+	 * @param ticket the ticket
+	 * @return the number of tickets the player has
+	 */
+	public int tickets(int player, @Nonnull Ticket ticket) {
+		return tickets[player * TICKET_COUNT + ticket.ordinal()];
+	}
+
+	/**
+	 * @return the number of entries in MrX's travel log
+	 */
+	public int round() { return round; }
+
+	/**
+	 * @return number of moves made since this state was seeded
+	 */
+	public int ply() { return ply; }
+
+	/**
+	 * @return the Zobrist key of this state, the same key as
+	 * {@link Board.GameState#zobristKey()} of the equivalent game state
+	 */
+	public long zobristKey() { return key; }
+
+	/**
+	 * @return whether it is MrX's turn, false if the game is over
+	 */
+	public boolean isMrXTurn() { return remaining == 1 && winner() == NONE; }
+
+	/**
+	 * @param player the player index
+	 * @return whether the player has yet to move this round
+	 */
+	public boolean isRemaining(int player) { return (remaining & (1 << player)) != 0; }
+
+	/**
+	 * @return {@link #NONE}, {@link #MRX} or {@link #DETECTIVES}
+	 */
+	public int winner() {
+		if (winner == UNKNOWN) winner = computeWinner();
+		return winner;
+	}
+
+	/**
+	 * @return the winning pieces the same way as {@link Board#getWinner()}
+	 */
+	@Nonnull public ImmutableSet<Piece> getWinner() {
+		switch (winner()) {
+			case MRX: return ImmutableSet.of(pieces[0]);
+			case DETECTIVES:
+				return ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+			default: return ImmutableSet.of();
+		}
+	}
+
+	/**
+	 * Appends the available moves to the given list, nothing is appended once the game is over
+	 *
+	 * @param into the list to append to
+	 */
+	public void generateMoves(@Nonnull MoveList into) {
+		if (winner() != NONE) return;
+		for (int i = 0; i < pieces.length; i++) {
+			if ((remaining & (1 << i)) == 0) continue;
+			boards.generate(into, pieceIndices[i], locations[i],
+					tickets, i * TICKET_COUNT, occupied, canDoubleMove());
+		}
+	}
+
+	/**
+	 * Appends the detective moves that can come next in a round, nothing is appended on MrX's
+	 * turn or once the game is over. Making these one after another until it is MrX's turn
+	 * reaches every outcome of the round that making any available moves would, but visits
+	 * far fewer orders of the same moves.
+	 * <br>
+	 * Detectives move in index order except where the order can make a difference: a detective
+	 * goes early only if it stands on, or moves to, a station another detective could move to
+	 * were it free, or while a detective is blocked in. A detective that can take MrX may do so
+	 * at any point, which ends the round there.
+	 * <br>
+	 * With {@code pruneTickets}, a detective that can reach a station with more than one
+	 * ticket only uses the ticket it has most of. Such moves are not strictly dominated, the
+	 * tickets go to MrX, but searches lose little by skipping them.
+	 *
+	 * @param into the list to append to
+	 * @param pruneTickets whether to skip moves to the same station with scarcer tickets
+	 */
+	public void generateRoundMoves(@Nonnull MoveList into, boolean pruneTickets) {
+		if (winner() != NONE || isMrXTurn()) return;
+		if (available == null) {
+			available = new MoveList(32);
+			reach = new MoveList(32);
+		}
+		available.clear();
+		generateMoves(available);
+		// where every detective to move could go if no one was in the way
+		reach.clear();
+		for (int i = 1; i < pieces.length; i++) {
+			if ((remaining & (1 << i)) == 0) continue;
+			boards.generate(reach, pieceIndices[i], locations[i],
+					tickets, i * TICKET_COUNT, nobody, false);
+		}
+		int first = Integer.MAX_VALUE;
+		int blocked = remaining & ~1;
+		for (int i = 0; i < available.size(); i++) {
+			int player = playerOf(PackedMove.pieceIndex(available.get(i)));
+			first = Math.min(first, player);
+			blocked &= ~(1 << player);
+		}
+		for (int i = 0; i < available.size(); i++) {
+			long move = available.get(i);
+			int player = playerOf(PackedMove.pieceIndex(move));
+			boolean capture = boards.index(PackedMove.destination1(move)) == locations[0];
+			// blocked detectives keep their turn, so every order counts while one could be freed
+			if (player != first && blocked == 0 && !capture && !interferes(player, move))
+				continue;
+			if (pruneTickets && scarcerTicket(player, move)) continue;
+			into.add(move);
+		}
+	}
+
+	/**
+	 * Appends every distinct outcome of the detectives' round to the given list, nothing is
+	 * appended on MrX's turn or once the game is over.
+	 * <br>
+	 * Rounds are made of the moves of {@link #generateRoundMoves(MoveList, boolean)}, and
+	 * orders that still end in the same state are merged, so each round in the list ends in a
+	 * different state.
+	 *
+	 * @param into the list to append to
+	 * @param pruneTickets whether to skip moves to the same station with scarcer tickets
+	 */
+	public void generateRounds(@Nonnull JointMoveList into, boolean pruneTickets) {
+		if (winner() == NONE && !isMrXTurn()) generateRounds(into, pruneTickets, 0);
+	}
+
+	private void generateRounds(JointMoveList into, boolean pruneTickets, int depth) {
+		if (winner() != NONE || isMrXTurn()) {
+			into.add(into.path, depth, key);
+			return;
+		}
+		MoveList moves = into.list(depth);
+		moves.clear();
+		generateRoundMoves(moves, pruneTickets);
+		for (int i = 0; i < moves.size(); i++) {
+			into.path[depth] = moves.get(i);
+			push(moves.get(i));
+			generateRounds(into, pruneTickets, depth + 1);
+			unmake();
+		}
+	}
+
+	// whether another detective could go where the player is or is going
+	private boolean interferes(int player, long move) {
+		int from = PackedMove.source(move);
+		int to = PackedMove.destination1(move);
+		for (int i = 0; i < reach.size(); i++) {
+			long other = reach.get(i);
+			if (PackedMove.pieceIndex(other) == pieceIndices[player]) continue;
+			int destination = PackedMove.destination1(other);
+			if (destination == from || destination == to) return true;
+		}
+		return false;
+	}
+
+	// whether the player can make the same move with a ticket it has more of
+	private boolean scarcerTicket(int player, long move) {
+		int ticket = PackedMove.ticket1Ordinal(move);
+		int count = tickets[player * TICKET_COUNT + ticket];
+		for (int i = 0; i < available.size(); i++) {
+			long other = available.get(i);
+			if (PackedMove.pieceIndex(other) != pieceIndices[player] ||
+					PackedMove.destination1(other) != PackedMove.destination1(move)) continue;
+			int otherTicket = PackedMove.ticket1Ordinal(other);
+			int otherCount = tickets[player * TICKET_COUNT + otherTicket];
+			if (otherCount > count || (otherCount == count && otherTicket < ticket)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Applies a whole detective round in place
+	 *
+	 * @param rounds the list the round is in
+	 * @param round the round index
+	 * @throws IllegalArgumentException if the round cannot be made from this state
+	 */
+	public void makeRound(@Nonnull JointMoveList rounds, int round) {
+		int made = 0;
+		try {
+			for (; made < rounds.length(round); made++) make(rounds.get(round, made));
+		} catch (IllegalArgumentException e) {
+			for (; made > 0; made--) unmake();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reverts {@link #makeRound(JointMoveList, int)} of the same round
+	 *
+	 * @param rounds the list the round is in
+	 * @param round the round index
+	 */
+	public void unmakeRound(@Nonnull JointMoveList rounds, int round) {
+		for (int i = rounds.length(round); i > 0; i--) unmake();
+	}
+
+	/**
+	 * @return the available moves the same way as {@link Board#getAvailableMoves()}
+	 */
+	@Nonnull public ImmutableSet<Move> getAvailableMoves() {
+		var list = new MoveList();
+		generateMoves(list);
+		return list.toMoves();
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return whether the move is one of the available moves
+	 */
+	public boolean isLegal(long move) {
+		int player = playerOf(PackedMove.pieceIndex(move));
+		return player != -1 && (remaining & (1 << player)) != 0 &&
+				boards.isLegal(move, pieceIndices[player], locations[player],
+						tickets, player * TICKET_COUNT, occupied, canDoubleMove()) &&
+				winner() == NONE;
+	}
+
+	/**
+	 * Applies the move in place
+	 *
+	 * @param move the packed move
+	 * @throws IllegalArgumentException if the move is not one of the available moves
+	 */
+	public void make(long move) {
+		if (!isLegal(move))
+			throw new IllegalArgumentException("Illegal move: " + PackedMove.toString(move));
+		push(move);
+	}
+
+	// make without the legality check, for moves just generated from this state
+	private void push(long move) {
+		if (ply == undoMoves.length) {
+			undoMoves = Arrays.copyOf(undoMoves, ply * 2);
+			undoRemaining = Arrays.copyOf(undoRemaining, ply * 2);
+			undoKeys = Arrays.copyOf(undoKeys, ply * 2);
+		}
+		undoMoves[ply] = move;
+		undoRemaining[ply] = remaining;
+		undoKeys[ply] = key;
+		ply++;
+		winner = UNKNOWN;
+
+		int player = playerOf(PackedMove.pieceIndex(move));
+		// XOR out every part the move can change, then XOR it back in once applied
+		long changed = changedKey(player);
+		apply(move, player);
+		key ^= changed ^ changedKey(player);
+	}
+
+	private long changedKey(int player) {
+		return playerKey(0) ^ (player == 0 ? 0 : playerKey(player)) ^
+				remainingKey() ^ Zobrist.round(round);
+	}
+
+	private void apply(long move, int player) {
+		int ticket1 = PackedMove.ticket1Ordinal(move);
+		int destination = boards.index(PackedMove.finalDestination(move));
+		if (player == 0) {
+			tickets[ticket1]--;
+			round++;
+			if (PackedMove.isDouble(move)) {
+				tickets[PackedMove.ticket2Ordinal(move)]--;
+				tickets[DOUBLE]--;
+				round++;
+			}
+			locations[0] = destination;
+			remaining = ((1 << pieces.length) - 1) & ~1;
+			return;
+		}
+		tickets[player * TICKET_COUNT + ticket1]--;
+		tickets[ticket1]++;
+		StationBitboards.clear(occupied, locations[player]);
+		StationBitboards.set(occupied, destination);
+		locations[player] = destination;
+		// a stuck detective keeps its turn in case a later move this round frees it
+		remaining &= ~(1 << player);
+		boolean stuck = true;
+		for (int i = 1; i < pieces.length && stuck; i++)
+			stuck = (remaining & (1 << i)) == 0 ||
+					!boards.canMove(tickets, i * TICKET_COUNT, locations[i], occupied);
+		if (stuck) remaining = round != setup.moves.size() ? 1 : 0;
+	}
+
+	/**
+	 * Reverts the last {@link #make(long)}
+	 *
+	 * @throws IllegalStateException if no move has been made since this state was seeded
+	 */
+	public void unmake() {
+		if (ply == 0) throw new IllegalStateException("Nothing to unmake");
+		ply--;
+		long move = undoMoves[ply];
+		remaining = undoRemaining[ply];
+		key = undoKeys[ply];
+		winner = UNKNOWN;
+
+		int player = playerOf(PackedMove.pieceIndex(move));
+		int ticket1 = PackedMove.ticket1Ordinal(move);
+		int source = boards.index(PackedMove.source(move));
+		if (player == 0) {
+			tickets[ticket1]++;
+			round--;
+			if (PackedMove.isDouble(move)) {
+				tickets[PackedMove.ticket2Ordinal(move)]++;
+				tickets[DOUBLE]++;
+				round--;
+			}
+			locations[0] = source;
+			return;
+		}
+		tickets[player * TICKET_COUNT + ticket1]++;
+		tickets[ticket1]--;
+		StationBitboards.clear(occupied, locations[player]);
+		StationBitboards.set(occupied, source);
+		locations[player] = source;
+	}
+
+	private long playerKey(int player) {
+		long key = Zobrist.location(pieceIndices[player], location(player));
+		for (int ticket = 0; ticket < TICKET_COUNT; ticket++) {
+			key ^= Zobrist.tickets(pieceIndices[player], ticket,
+					tickets[player * TICKET_COUNT + ticket]);
+		}
+		return key;
+	}
+
+	private long remainingKey() {
+		long key = 0;
+		for (int i = 0; i < pieces.length; i++)
+			if ((remaining & (1 << i)) != 0) key ^= Zobrist.remaining(pieceIndices[i]);
+		return key;
+	}
+
+	private boolean canDoubleMove() { return round + 2 <= setup.moves.size(); }
+
+	private int computeWinner() {
+		for (int i = 1; i < pieces.length; i++)
+			if (locations[i] == locations[0]) return DETECTIVES;
+		boolean detectivesStuck = true;
+		for (int i = 1; i < pieces.length && detectivesStuck; i++)
+			detectivesStuck = !boards.canMove(tickets, i * TICKET_COUNT, locations[i], occupied);
+		if (detectivesStuck || remaining == 0) return MRX;
+		if (remaining == 1 && !boards.canMove(tickets, 0, locations[0], occupied))
+			return DETECTIVES;
+		return NONE;
+	}
+
+	private int playerOf(int pieceIndex) {
+		for (int i = 0; i < pieceIndices.length; i++)
+			if (pieceIndices[i] == pieceIndex) return i;
+		return -1;
+	}
+
+	@Override public String toString() {
+		var builder = new StringBuilder("SearchState{round=").append(round);
+		for (int i = 0; i < pieces.length; i++) {
+			builder.append(", ").append(pieces[i]).append('@').append(location(i));
+			if (isRemaining(i)) builder.append('*');
+		}
+		return builder.append('}').toString();
+	}
+}
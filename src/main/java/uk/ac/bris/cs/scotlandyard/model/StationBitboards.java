@@ -0,0 +1,255 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Per-ticket station adjacency of a game graph encoded as {@code long[]} bitsets.
+ * <br>
+ * Stations use the dense indices of the {@link CompiledGraph}; a set of stations is then
+ * {@link #words} longs where bit {@code i} stands for index {@code i}.
+ * The {@link Ticket#SECRET} row is the union of every transport (including ferries) and the
+ * {@link Ticket#DOUBLE} row is always empty.
+ * <br>
+ * This is meant for board-sized graphs, the masks take {@code 5 * size * size} bits.
+ */
+final class StationBitboards {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>,
+			StationBitboards> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(graph -> new StationBitboards(CompiledGraph.of(graph))));
+
+	static final int TICKET_COUNT = Ticket.values().length;
+	static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	/**
+	 * Ordinals of the tickets that move a piece by one hop
+	 */
+	static final int[] MOVE_TICKETS = {
+			Ticket.TAXI.ordinal(),
+			Ticket.BUS.ordinal(),
+			Ticket.UNDERGROUND.ordinal(),
+			Ticket.SECRET.ordinal()};
+
+	/**
+	 * Number of stations
+	 */
+	final int size;
+	/**
+	 * Number of longs in a station set
+	 */
+	final int words;
+	private final CompiledGraph graph;
+	private final long[] masks;
+
+	private StationBitboards(CompiledGraph graph) {
+		this.graph = graph;
+		this.size = graph.size();
+		this.words = (size + 63) >>> 6;
+		this.masks = new long[TICKET_COUNT * size * words];
+		for (Transport transport : Transport.values()) {
+			int ticket = transport.requiredTicket().ordinal();
+			int[] offsets = graph.offsets(transport);
+			int[] targets = graph.targets(transport);
+			for (int u = 0; u < size; u++) {
+				for (int i = offsets[u]; i < offsets[u + 1]; i++)
+					set(masks, offset(ticket, u), targets[i]);
+			}
+		}
+		int[] offsets = graph.neighbourOffsets();
+		int[] targets = graph.neighbourTargets();
+		for (int u = 0; u < size; u++) {
+			for (int i = offsets[u]; i < offsets[u + 1]; i++)
+				set(masks, offset(Ticket.SECRET.ordinal(), u), targets[i]);
+		}
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the bitboards of the given graph, compiled once per graph instance
+	 */
+	@Nonnull static StationBitboards of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @param station the station
+	 * @return the dense index of the station or -1 if the station is not part of the graph
+	 */
+	int index(int station) { return graph.index(station); }
+
+	/**
+	 * @param index the dense index
+	 * @return the station at the index
+	 */
+	int station(int index) { return graph.station(index); }
+
+	/**
+	 * @param ticket the ticket ordinal
+	 * @param node the dense index of the source
+	 * @return offset into {@link #masks()} of the destinations reachable with the ticket
+	 */
+	int offset(int ticket, int node) { return (ticket * size + node) * words; }
+
+	/**
+	 * @return the raw masks, indexed through {@link #offset(int, int)}; never modify
+	 */
+	long[] masks() { return masks; }
+
+	/**
+	 * @return a new empty station set
+	 */
+	long[] newSet() { return new long[words]; }
+
+	/**
+	 * ORs every destination reachable from any station in {@code from} with {@code ticket} into
+	 * {@code into}
+	 */
+	void expand(long[] from, int ticket, long[] into) {
+		for (int w = 0; w < words; w++) {
+			long bits = from[w];
+			while (bits != 0) {
+				int offset = offset(ticket, (w << 6) | Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+				for (int x = 0; x < words; x++) into[x] |= masks[offset + x];
+			}
+		}
+	}
+
+	/**
+	 * @return whether any destination reachable with {@code ticket} from {@code node} is not
+	 * in {@code blocked}
+	 */
+	boolean anyOpen(int ticket, int node, long[] blocked) {
+		int offset = offset(ticket, node);
+		for (int w = 0; w < words; w++)
+			if ((masks[offset + w] & ~blocked[w]) != 0) return true;
+		return false;
+	}
+
+	/**
+	 * @param tickets ticket counts of every player, {@link #TICKET_COUNT} per player
+	 * @param base offset of the player in {@code tickets}
+	 * @param node the dense index of the player
+	 * @param occupied stations taken by detectives
+	 * @return whether the player has at least one move
+	 */
+	boolean canMove(int[] tickets, int base, int node, long[] occupied) {
+		for (int ticket : MOVE_TICKETS) {
+			if (tickets[base + ticket] > 0 && anyOpen(ticket, node, occupied)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Appends every move of a player as a {@link PackedMove}
+	 *
+	 * @param into the list to append to
+	 * @param piece the piece index of the player in {@link ScotlandYard#ALL_PIECES}
+	 * @param node the dense index of the player
+	 * @param tickets ticket counts of every player, {@link #TICKET_COUNT} per player
+	 * @param base offset of the player in {@code tickets}
+	 * @param occupied stations taken by detectives
+	 * @param doubles whether double moves are allowed at all this round
+	 */
+	void generate(MoveList into, int piece, int node,
+	              int[] tickets, int base, long[] occupied, boolean doubles) {
+		doubles &= tickets[base + DOUBLE] > 0;
+		int source = graph.station(node);
+		for (int ticket : MOVE_TICKETS) {
+			if (tickets[base + ticket] == 0) continue;
+			int offset = offset(ticket, node);
+			for (int w = 0; w < words; w++) {
+				long bits = masks[offset + w] & ~occupied[w];
+				while (bits != 0) {
+					int destination = (w << 6) | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					into.add(PackedMove.single(piece, source, ticket, graph.station(destination)));
+					if (doubles) generateSecond(into, piece, source, ticket, destination,
+							tickets, base, occupied);
+				}
+			}
+		}
+	}
+
+	private void generateSecond(MoveList into, int piece, int source, int ticket1,
+	                            int destination1, int[] tickets, int base, long[] occupied) {
+		for (int ticket2 : MOVE_TICKETS) {
+			if (tickets[base + ticket2] - (ticket1 == ticket2 ? 1 : 0) <= 0) continue;
+			int offset = offset(ticket2, destination1);
+			for (int w = 0; w < words; w++) {
+				long bits = masks[offset + w] & ~occupied[w];
+				while (bits != 0) {
+					int destination2 = (w << 6) | Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					into.add(PackedMove.doubleMove(piece, source,
+							ticket1, graph.station(destination1), ticket2, graph.station(destination2)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks a {@link PackedMove} against the player that is supposed to make it; whether it is
+	 * the player's turn at all is up to the caller
+	 *
+	 * @param move the packed move
+	 * @param piece the piece index of the player in {@link ScotlandYard#ALL_PIECES}
+	 * @param node the dense index of the player
+	 * @param tickets ticket counts of every player, {@link #TICKET_COUNT} per player
+	 * @param base offset of the player in {@code tickets}
+	 * @param occupied stations taken by detectives
+	 * @param doubles whether double moves are allowed at all this round
+	 * @return whether the move is one {@link #generate} would produce
+	 */
+	boolean isLegal(long move, int piece, int node,
+	                int[] tickets, int base, long[] occupied, boolean doubles) {
+		int ticket1 = PackedMove.ticket1Ordinal(move);
+		int destination1 = PackedMove.destination1(move);
+		if (!PackedMove.isDouble(move)) {
+			return move == PackedMove.single(piece, graph.station(node), ticket1, destination1) &&
+					isOpen(tickets, base, ticket1, 0, node, destination1, occupied);
+		}
+		int ticket2 = PackedMove.ticket2Ordinal(move);
+		int destination2 = PackedMove.destination2(move);
+		return doubles && tickets[base + DOUBLE] > 0 &&
+				move == PackedMove.doubleMove(piece, graph.station(node),
+						ticket1, destination1, ticket2, destination2) &&
+				isOpen(tickets, base, ticket1, 0, node, destination1, occupied) &&
+				isOpen(tickets, base, ticket2, ticket1 == ticket2 ? 1 : 0,
+						index(destination1), destination2, occupied);
+	}
+
+	private boolean isOpen(int[] tickets, int base, int ticket, int spent,
+	                       int from, int station, long[] occupied) {
+		int to = index(station);
+		return ticket < TICKET_COUNT && ticket != DOUBLE && to != -1 &&
+				tickets[base + ticket] - spent > 0 &&
+				test(masks, offset(ticket, from), to) && !test(occupied, to);
+	}
+
+	static void set(long[] set, int index) { set[index >>> 6] |= 1L << index; }
+
+	static void set(long[] set, int offset, int index) {
+		set[offset + (index >>> 6)] |= 1L << index;
+	}
+
+	static void clear(long[] set, int index) { set[index >>> 6] &= ~(1L << index); }
+
+	static boolean test(long[] set, int index) { return (set[index >>> 6] & (1L << index)) != 0; }
+
+	static boolean test(long[] set, int offset, int index) {
+		return (set[offset + (index >>> 6)] & (1L << index)) != 0;
+	}
+
+}
@@ -0,0 +1,585 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Exact values of small endgames, solved ahead of time by backward induction and probed in
+ * constant time.
+ * <br>
+ * A tablebase covers one graph, a number of detectives, up to {@link #slots()} entries left in
+ * MrX's travel log and up to {@link #doubles()} double move tickets. The game solved is the
+ * one alpha-beta plays, where the detectives see MrX at all times, so a position MrX wins here
+ * he wins however little the detectives know. Other tickets are taken to never run out, which
+ * is exact while MrX holds a secret ticket and every detective a taxi, bus and underground
+ * ticket for every entry left; {@link #covers(Board)} checks that. Within a round detectives
+ * move in any order and those that cannot move are skipped, as in {@link MyGameStateFactory}.
+ * <br>
+ * Only positions with MrX to move are stored: one value per entries left, double move tickets
+ * left, MrX's station and each detective's station, packed into 4 bits when the values fit.
+ * A value of 0 means MrX wins; {@code v} means the detectives win in the {@code v}th round from
+ * here, MrX being unable to move counting as the round it happens in. Positions with the
+ * detectives to move are one round of lookups away, see {@link #afterMrX}.
+ * <br>
+ * {@link #solve} computes a tablebase on every core, {@link #save(Path)} writes it and
+ * {@link #load(Path, CompiledGraph)} maps it back into memory; {@link #find(Board)} loads the
+ * tablebase for a board from the {@value #DIRECTORY_PROPERTY} directory.
+ */
+public final class Tablebase {
+
+	/**
+	 * The system property naming the directory tablebases are loaded from
+	 */
+	public static final String DIRECTORY_PROPERTY = "scotlandyard.tablebases";
+
+	private static final int MAGIC = 0x53594542; // SYEB
+	private static final int VERSION = 1;
+	private static final int HEADER = 36;
+	private static final int MAX_SLOTS = 126;
+	// what a MrX win sorts as, so that MrX maximises and the detectives minimise
+	private static final int WIN = Integer.MAX_VALUE;
+	private static final Transport[] DETECTIVE_TRANSPORTS =
+			{Transport.TAXI, Transport.BUS, Transport.UNDERGROUND};
+
+	private static final LoadingCache<CompiledGraph, Map<Integer, Optional<Tablebase>>> FOUND =
+			CacheBuilder.newBuilder()
+					.weakKeys()
+					.build(CacheLoader.from(graph -> new ConcurrentHashMap<>()));
+
+	private final CompiledGraph graph;
+	private final int detectives;
+	private final int slots;
+	private final int doubles;
+	private final int bits;
+	private final int full;
+	// positions per layer, and what each piece's dense index is worth in a position
+	private final long block;
+	private final int[] powers;
+	private final ByteBuffer data;
+	// where a detective can go, any of its transports, each neighbour once
+	private final int[] detectiveOffsets;
+	private final int[] detectiveTargets;
+
+	private Tablebase(CompiledGraph graph, int detectives, int slots, int doubles, int bits,
+	                  ByteBuffer data) {
+		this.graph = graph;
+		this.detectives = detectives;
+		this.slots = slots;
+		this.doubles = doubles;
+		this.bits = bits;
+		this.full = (1 << detectives) - 1;
+		this.block = positions(graph.size(), detectives);
+		this.powers = new int[detectives + 1];
+		for (int i = detectives, power = 1; i >= 0; i--, power *= graph.size()) powers[i] = power;
+		this.data = data;
+		int size = graph.size();
+		this.detectiveOffsets = new int[size + 1];
+		var targets = new int[graph.neighbourTargets().length];
+		int count = 0;
+		for (int u = 0; u < size; u++) {
+			for (int e = graph.neighbourOffsets()[u]; e < graph.neighbourOffsets()[u + 1]; e++) {
+				int v = graph.neighbourTargets()[e];
+				for (Transport transport : DETECTIVE_TRANSPORTS) {
+					if (!graph.connected(u, v, transport)) continue;
+					targets[count++] = v;
+					break;
+				}
+			}
+			detectiveOffsets[u + 1] = count;
+		}
+		this.detectiveTargets = Arrays.copyOf(targets, count);
+	}
+
+	private static long positions(int size, int detectives) {
+		long positions = 1;
+		for (int i = 0; i <= detectives; i++) positions *= size;
+		return positions;
+	}
+
+	private static long bytes(long block, int slots, int doubles, int bits) {
+		return (block * slots * (doubles + 1) * bits + 7) / 8;
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param detectives the number of detectives
+	 * @param slots the most entries left in MrX's travel log
+	 * @param doubles the most double move tickets MrX holds
+	 * @return the solved tablebase, held in memory
+	 * @throws IllegalArgumentException if the counts are out of range or the tablebase would not
+	 * fit in 2GB
+	 */
+	@Nonnull public static Tablebase solve(@Nonnull CompiledGraph graph, int detectives, int slots,
+	                                       int doubles) {
+		if (detectives < 1) throw new IllegalArgumentException("detectives < 1");
+		if (slots < 1 || slots > MAX_SLOTS) throw new IllegalArgumentException("slots: " + slots);
+		if (doubles < 0) throw new IllegalArgumentException("doubles < 0");
+		if (graph.size() == 0) throw new IllegalArgumentException("Empty graph");
+		long block = positions(graph.size(), detectives);
+		int bits = slots < 16 ? 4 : 8;
+		long bytes = bytes(block, slots, doubles, bits);
+		if (block > Integer.MAX_VALUE - 8 || bytes > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many positions: " + block * slots);
+		var tablebase = new Tablebase(graph, detectives, slots, doubles, bits,
+				ByteBuffer.allocate((int) bytes));
+		tablebase.new Solver().run();
+		return tablebase;
+	}
+
+	// layer by layer from the end of the log: the detectives' round before s - 1 entries are
+	// left comes from the positions with s - 1 left, MrX's positions with s left from that
+	// round and, for double moves, the round before s - 2 are left
+	private final class Solver {
+		private final int size = graph.size();
+		private final int layer = (int) block;
+
+		void run() {
+			byte[][] mrX = null;
+			byte[][] earlier = null;
+			for (int s = 1; s <= slots; s++) {
+				var round = new byte[doubles + 1][];
+				for (int k = 0; k <= doubles; k++) {
+					// no more doubles than the entries left allow, so larger counts repeat
+					round[k] = k > (s - 1) / 2 ? round[(s - 1) / 2] :
+							round(mrX == null ? null : mrX[k]);
+				}
+				var next = new byte[doubles + 1][];
+				for (int k = 0; k <= doubles; k++) {
+					next[k] = k > s / 2 ? next[s / 2] :
+							mrX(round[k], k > 0 && s >= 2 ? earlier[k - 1] : null);
+					store(s, k, next[k]);
+				}
+				earlier = round;
+				mrX = next;
+			}
+		}
+
+		private byte[] round(byte[] after) {
+			var stages = new byte[full][];
+			for (int mask = full - 1; mask >= 0; mask--) {
+				var stage = stages[mask] = new byte[layer];
+				int moved = mask;
+				IntStream.range(0, size).parallel().forEach(x -> {
+					var d = new int[detectives];
+					for (int pos = x * powers[0], end = pos + powers[0]; pos < end; pos++) {
+						if (!decode(x, pos, d)) continue;
+						stage[pos] = (byte) detectivesMove(x, d, pos, moved, stages, after);
+					}
+				});
+			}
+			return stages[0];
+		}
+
+		private int detectivesMove(int x, int[] d, int pos, int mask, byte[][] stages,
+		                           byte[] after) {
+			if (stuck(d)) return 0;
+			int best = -1;
+			for (int i = 0; i < detectives; i++) {
+				if ((mask & 1 << i) != 0) continue;
+				for (int e = detectiveOffsets[d[i]]; e < detectiveOffsets[d[i] + 1]; e++) {
+					int v = detectiveTargets[e];
+					if (occupied(d, v, i)) continue;
+					if (v == x) return 1;
+					int next = pos + (v - d[i]) * powers[i + 1];
+					int moved = mask | 1 << i;
+					int key = key(moved == full ? afterRound(after, next) : stages[moved][next]);
+					if (best == -1 || key < best) best = key;
+				}
+			}
+			return best == -1 ? afterRound(after, pos) : fromKey(best);
+		}
+
+		private int afterRound(byte[] after, int pos) {
+			return after == null || after[pos] == 0 ? 0 : after[pos] + 1;
+		}
+
+		private byte[] mrX(byte[] single, byte[] twice) {
+			var layer = new byte[this.layer];
+			var halfway = twice == null ? null : halfway(twice);
+			IntStream.range(0, size).parallel().forEach(x -> {
+				var d = new int[detectives];
+				for (int pos = x * powers[0], end = pos + powers[0]; pos < end; pos++) {
+					if (!decode(x, pos, d)) continue;
+					layer[pos] = (byte) mrXMoves(x, d, pos, single, halfway);
+				}
+			});
+			return layer;
+		}
+
+		private int mrXMoves(int x, int[] d, int pos, byte[] single, byte[] halfway) {
+			if (stuck(d)) return 0;
+			int best = -1;
+			int base = pos - x * powers[0];
+			int[] offsets = graph.neighbourOffsets();
+			int[] targets = graph.neighbourTargets();
+			for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+				int v = targets[e];
+				if (occupied(d, v, -1)) continue;
+				int next = base + v * powers[0];
+				best = Math.max(best, key(single[next]));
+				if (halfway != null && halfway[next] != -1) best = Math.max(best, key(halfway[next]));
+			}
+			return best == -1 ? 1 : fromKey(best);
+		}
+
+		// the best second move of a double move from every position, -1 if there is none
+		private byte[] halfway(byte[] twice) {
+			var layer = new byte[this.layer];
+			IntStream.range(0, size).parallel().forEach(x -> {
+				var d = new int[detectives];
+				int[] offsets = graph.neighbourOffsets();
+				int[] targets = graph.neighbourTargets();
+				for (int pos = x * powers[0], end = pos + powers[0]; pos < end; pos++) {
+					if (!decode(x, pos, d)) continue;
+					int best = -1;
+					for (int e = offsets[x]; e < offsets[x + 1]; e++) {
+						int v = targets[e];
+						if (occupied(d, v, -1)) continue;
+						best = Math.max(best, key(twice[pos + (v - x) * powers[0]]));
+					}
+					layer[pos] = (byte) (best == -1 ? -1 : fromKey(best));
+				}
+			});
+			return layer;
+		}
+
+		private void store(int s, int k, byte[] layer) {
+			long base = ((long) (s - 1) * (doubles + 1) + k) * block;
+			for (int pos = 0; pos < this.layer; pos++) write(base + pos, layer[pos]);
+		}
+
+		// the detectives' dense indices of a position, false if pieces share a station
+		private boolean decode(int x, int pos, int[] d) {
+			for (int i = 0; i < detectives; i++) {
+				d[i] = pos / powers[i + 1] % size;
+				if (d[i] == x || occupied(d, d[i], i, i)) return false;
+			}
+			return true;
+		}
+	}
+
+	private static int key(int value) { return value == 0 ? WIN : value; }
+
+	private static int fromKey(int key) { return key == WIN ? 0 : key; }
+
+	// whether a detective other than the one given stands on the node
+	private boolean occupied(int[] d, int node, int except) {
+		return occupied(d, node, except, detectives);
+	}
+
+	private boolean occupied(int[] d, int node, int except, int count) {
+		for (int j = 0; j < count; j++) if (j != except && d[j] == node) return true;
+		return false;
+	}
+
+	// no detective can move at all, which MrX wins
+	private boolean stuck(int[] d) {
+		for (int i = 0; i < detectives; i++) {
+			for (int e = detectiveOffsets[d[i]]; e < detectiveOffsets[d[i] + 1]; e++)
+				if (!occupied(d, detectiveTargets[e], i)) return false;
+		}
+		return true;
+	}
+
+	private void write(long entry, int value) {
+		if (bits == 8) {
+			data.put((int) entry, (byte) value);
+			return;
+		}
+		int index = (int) (entry >>> 1);
+		int shift = (int) (entry & 1) * 4;
+		data.put(index, (byte) (data.get(index) & ~(0xF << shift) | (value & 0xF) << shift));
+	}
+
+	private int read(int s, int k, int pos) {
+		long entry = ((long) (s - 1) * (doubles + 1) + k) * block + pos;
+		if (bits == 8) return data.get((int) entry) & 0xFF;
+		return data.get((int) (entry >>> 1)) >>> (int) (entry & 1) * 4 & 0xF;
+	}
+
+	/**
+	 * @param slots the entries left in MrX's travel log
+	 * @param doubles the double move tickets MrX holds
+	 * @param mrX MrX's station
+	 * @param detectives each detective's station
+	 * @return the value with MrX to move, see the class description
+	 * @throws IllegalArgumentException if the position is not in the tablebase
+	 */
+	public int value(int slots, int doubles, int mrX, @Nonnull int... detectives) {
+		if (slots == 0) return 0;
+		int k = layer(slots, doubles);
+		int x = index(mrX);
+		int[] d = indices(x, detectives);
+		int pos = x * powers[0];
+		for (int i = 0; i < d.length; i++) pos += d[i] * powers[i + 1];
+		return read(slots, k, pos);
+	}
+
+	/**
+	 * @param slots the entries left in MrX's travel log once the detectives have moved
+	 * @param doubles the double move tickets MrX holds
+	 * @param mrX MrX's station
+	 * @param detectives each detective's station, none of them having moved this round
+	 * @return the value with the detectives to move, counting their round as the first
+	 * @throws IllegalArgumentException if the position is not in the tablebase
+	 */
+	public int afterMrX(int slots, int doubles, int mrX, @Nonnull int... detectives) {
+		int k = slots == 0 ? 0 : layer(slots, doubles);
+		int x = index(mrX);
+		return round(slots, k, x, indices(x, detectives), 0);
+	}
+
+	private int round(int s, int k, int x, int[] d, int mask) {
+		if (stuck(d)) return 0;
+		int best = -1;
+		for (int i = 0; i < detectives; i++) {
+			if ((mask & 1 << i) != 0) continue;
+			for (int e = detectiveOffsets[d[i]]; e < detectiveOffsets[d[i] + 1]; e++) {
+				int v = detectiveTargets[e];
+				if (occupied(d, v, i)) continue;
+				if (v == x) return 1;
+				int from = d[i];
+				d[i] = v;
+				int moved = mask | 1 << i;
+				int key = key(moved == full ? afterRound(s, k, x, d) : round(s, k, x, d, moved));
+				d[i] = from;
+				if (best == -1 || key < best) best = key;
+			}
+		}
+		return best == -1 ? afterRound(s, k, x, d) : fromKey(best);
+	}
+
+	private int afterRound(int s, int k, int x, int[] d) {
+		if (s == 0) return 0;
+		int pos = x * powers[0];
+		for (int i = 0; i < d.length; i++) pos += d[i] * powers[i + 1];
+		int value = read(s, k, pos);
+		return value == 0 ? 0 : value + 1;
+	}
+
+	private int layer(int slots, int doubles) {
+		if (slots < 0 || slots > this.slots)
+			throw new IllegalArgumentException("Slots out of range: " + slots);
+		int k = Math.min(doubles, slots / 2);
+		if (k < 0 || k > this.doubles)
+			throw new IllegalArgumentException("Doubles out of range: " + doubles);
+		return k;
+	}
+
+	private int index(int station) {
+		int index = graph.index(station);
+		if (index == -1) throw new IllegalArgumentException("Not on the graph: " + station);
+		return index;
+	}
+
+	private int[] indices(int x, int[] stations) {
+		if (stations.length != detectives)
+			throw new IllegalArgumentException("Expected " + detectives + " detectives");
+		var d = new int[detectives];
+		for (int i = 0; i < detectives; i++) {
+			d[i] = index(stations[i]);
+			if (d[i] == x || occupied(d, d[i], i, i))
+				throw new IllegalArgumentException("Shared station: " + stations[i]);
+		}
+		return d;
+	}
+
+	/**
+	 * @param board the board
+	 * @return whether the board's position is in the tablebase and tickets will not run out
+	 * before the log does, so that its value is exact
+	 */
+	public boolean covers(@Nonnull Board board) {
+		if (CompiledGraph.of(board.getSetup()).fingerprint() != graph.fingerprint()) return false;
+		int left = board.getSetup().moves.size() - board.getMrXTravelLog().size();
+		if (left < 1 || left > slots) return false;
+		int count = 0;
+		for (Piece piece : board.getPlayers()) {
+			var tickets = board.getPlayerTickets(piece).orElseThrow();
+			if (piece.isMrX()) {
+				if (tickets.getCount(Ticket.SECRET) < left ||
+						Math.min(tickets.getCount(Ticket.DOUBLE), left / 2) > doubles) return false;
+				continue;
+			}
+			count++;
+			for (Transport transport : DETECTIVE_TRANSPORTS)
+				if (tickets.getCount(transport.requiredTicket()) < left) return false;
+		}
+		return count == detectives;
+	}
+
+	/**
+	 * @param board the board, with MrX to move
+	 * @return a move that keeps the position won for MrX, preferring to spend as few double
+	 * and secret tickets as possible; empty if the board is not covered or not won
+	 */
+	@Nonnull public Optional<Move> winningMove(@Nonnull Board board) {
+		if (!covers(board)) return Optional.empty();
+		int left = board.getSetup().moves.size() - board.getMrXTravelLog().size();
+		int mrXDoubles = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow()
+				.getCount(Ticket.DOUBLE);
+		var stations = board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.mapToInt(p -> board.getDetectiveLocation((Piece.Detective) p).orElseThrow())
+				.toArray();
+		Move best = null;
+		int cheapest = Integer.MAX_VALUE;
+		for (Move move : board.getAvailableMoves()) {
+			if (!move.commencedBy().isMrX()) return Optional.empty();
+			long packed = PackedMove.encode(move);
+			boolean twice = PackedMove.isDouble(packed);
+			int cost = (twice ? 4 : 0) + (PackedMove.ticket1(packed) == Ticket.SECRET ? 1 : 0) +
+					(twice && PackedMove.ticket2(packed) == Ticket.SECRET ? 1 : 0);
+			if (cost >= cheapest) continue;
+			if (afterMrX(left - (twice ? 2 : 1), mrXDoubles - (twice ? 1 : 0),
+					PackedMove.finalDestination(packed), stations) != 0) continue;
+			best = move;
+			cheapest = cost;
+		}
+		return Optional.ofNullable(best);
+	}
+
+	public int detectives() { return detectives; }
+
+	public int slots() { return slots; }
+
+	public int doubles() { return doubles; }
+
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param board the board
+	 * @return the tablebase for the board's graph and number of detectives, loaded once from
+	 * the {@value #DIRECTORY_PROPERTY} directory, if there is one and it covers the board
+	 */
+	@Nonnull public static Optional<Tablebase> find(@Nonnull Board board) {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		if (directory == null) return Optional.empty();
+		var graph = CompiledGraph.of(board.getSetup());
+		int detectives = (int) board.getPlayers().stream().filter(Piece::isDetective).count();
+		return FOUND.getUnchecked(graph).computeIfAbsent(detectives, count -> {
+			var file = Path.of(directory).resolve(fileName(graph, count));
+			if (!Files.isRegularFile(file)) return Optional.empty();
+			try {
+				return Optional.of(load(file, graph));
+			} catch (IOException e) {
+				return Optional.empty();
+			}
+		}).filter(tablebase -> tablebase.covers(board));
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param detectives the number of detectives
+	 * @return the name of the file the tablebase is saved as
+	 */
+	@Nonnull public static String fileName(@Nonnull CompiledGraph graph, int detectives) {
+		return String.format("tablebase-%016x-%d.bin", graph.fingerprint(), detectives);
+	}
+
+	/**
+	 * Writes the tablebase to a file, replacing it atomically where the file system allows
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(@Nonnull Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			var crc = new CRC32();
+			try (var out = new DataOutputStream(new CheckedOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)), crc))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(graph.fingerprint());
+				out.writeInt(graph.size());
+				out.writeInt(detectives);
+				out.writeInt(slots);
+				out.writeInt(doubles);
+				out.writeInt(bits);
+				var chunk = new byte[1 << 16];
+				var view = data.duplicate().clear();
+				while (view.hasRemaining()) {
+					int length = Math.min(chunk.length, view.remaining());
+					view.get(chunk, 0, length);
+					out.write(chunk, 0, length);
+				}
+				out.flush();
+				out.writeLong(crc.getValue());
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Maps a tablebase into memory, read only; values are paged in as they are probed
+	 *
+	 * @param file a file written by {@link #save(Path)}
+	 * @param graph the graph the tablebase must be for
+	 * @return the tablebase
+	 * @throws IOException if the file cannot be read, is damaged, or is for another graph
+	 */
+	@Nonnull public static Tablebase load(@Nonnull Path file,
+	                                      @Nonnull CompiledGraph graph) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER + Long.BYTES || length > Integer.MAX_VALUE)
+				throw new IOException("Not a tablebase: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC) throw new IOException("Not a tablebase: " + file);
+			int version = buffer.getInt(4);
+			if (version != VERSION) throw new IOException("Unsupported version: " + version);
+			if (buffer.getLong(8) != graph.fingerprint() || buffer.getInt(16) != graph.size())
+				throw new IOException("Tablebase is for another graph: " + file);
+			int detectives = buffer.getInt(20);
+			int slots = buffer.getInt(24);
+			int doubles = buffer.getInt(28);
+			int bits = buffer.getInt(32);
+			if (detectives < 1 || slots < 1 || slots > MAX_SLOTS || doubles < 0 ||
+					(bits != 4 && bits != 8) ||
+					HEADER + bytes(positions(graph.size(), detectives), slots, doubles, bits) +
+							Long.BYTES != length)
+				throw new IOException("Damaged header: " + file);
+			var crc = new CRC32();
+			crc.update(buffer.duplicate().limit((int) length - Long.BYTES));
+			if (buffer.getLong((int) length - Long.BYTES) != crc.getValue())
+				throw new IOException("Checksum mismatch: " + file);
+			var data = buffer.duplicate().position(HEADER).limit((int) length - Long.BYTES)
+					.slice();
+			return new Tablebase(graph, detectives, slots, doubles, bits, data);
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Fewest moves from a station to every other one for a player that only has so many tickets,
+ * which plain distances such as {@link DistanceTables} ignore.
+ * <br>
+ * A search walks states of a station and the tickets left, one move at a time, and drops a
+ * state when the same station was already reached in as few moves with at least as many of
+ * every ticket. Secret tickets travel on any route, ferries included; double move tickets are
+ * ignored since a double move is two moves either way. Ticket counts above 255 count as 255.
+ * <br>
+ * Results are memoised per source station and ticket counts, so asking about the same player
+ * again (every detective that has not moved, say) is a cache lookup. Instances are shared per
+ * graph and are thread safe.
+ */
+public final class TicketReachability {
+
+	/**
+	 * Returned by {@link #minMoves} for stations that cannot be reached
+	 */
+	public static final int UNREACHABLE = Byte.MAX_VALUE;
+
+	private static final Ticket[] TICKETS =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+	private static final Transport[][] ROUTES = {
+			{Transport.TAXI}, {Transport.BUS}, {Transport.UNDERGROUND}, Transport.values()};
+	private static final int MEMO_SIZE = 16384;
+
+	private static final LoadingCache<CompiledGraph, TicketReachability> CACHE = CacheBuilder
+			.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(TicketReachability::new));
+
+	private final CompiledGraph graph;
+	private final Cache<Long, byte[]> memo = CacheBuilder.newBuilder()
+			.maximumSize(MEMO_SIZE)
+			.build();
+
+	private TicketReachability(CompiledGraph graph) { this.graph = graph; }
+
+	/**
+	 * @param graph the graph
+	 * @return the engine of the graph, one per graph
+	 */
+	@Nonnull public static TicketReachability of(@Nonnull CompiledGraph graph) {
+		return CACHE.getUnchecked(graph);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the engine of the board's graph
+	 */
+	@Nonnull public static TicketReachability of(@Nonnull Board board) {
+		return of(CompiledGraph.of(board.getSetup()));
+	}
+
+	/**
+	 * @param source the station the player is at
+	 * @param tickets the player's tickets
+	 * @param target the station to reach
+	 * @return the fewest moves to the target, or {@link #UNREACHABLE} if the tickets do not get
+	 * the player there
+	 * @throws IllegalArgumentException if a station is not on the graph
+	 */
+	public int minMoves(int source, @Nonnull TicketBoard tickets, int target) {
+		int index = graph.index(target);
+		if (index == -1) throw new IllegalArgumentException("Not on the graph: " + target);
+		return table(source, tickets)[index];
+	}
+
+	/**
+	 * @param player the player
+	 * @param target the station to reach
+	 * @return the fewest moves for the player to the target, see
+	 * {@link #minMoves(int, TicketBoard, int)}
+	 */
+	public int minMoves(@Nonnull Player player, int target) {
+		return minMoves(player.location(), tickets(player), target);
+	}
+
+	/**
+	 * @param source the station the player is at
+	 * @param tickets the player's tickets
+	 * @param target the station to reach
+	 * @param moves the most moves the player may make
+	 * @return whether the player can be at the target after at most that many moves
+	 */
+	public boolean canReach(int source, @Nonnull TicketBoard tickets, int target, int moves) {
+		return minMoves(source, tickets, target) <= moves;
+	}
+
+	/**
+	 * @param source the station the player is at
+	 * @param tickets the player's tickets
+	 * @param moves the most moves the player may make
+	 * @return every station the player can be at after at most that many moves, in ascending
+	 * order
+	 */
+	@Nonnull public int[] within(int source, @Nonnull TicketBoard tickets, int moves) {
+		byte[] table = table(source, tickets);
+		return IntStream.range(0, table.length)
+				.filter(i -> table[i] <= moves)
+				.map(graph::station)
+				.toArray();
+	}
+
+	/**
+	 * @param board the board
+	 * @param station the station
+	 * @return the fewest moves any detective on the board needs to reach the station with the
+	 * tickets it has left, or {@link #UNREACHABLE}
+	 */
+	public int nearestDetective(@Nonnull Board board, int station) {
+		int nearest = UNREACHABLE;
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			int location = board.getDetectiveLocation((Piece.Detective) piece).orElseThrow();
+			nearest = Math.min(nearest,
+					minMoves(location, board.getPlayerTickets(piece).orElseThrow(), station));
+		}
+		return nearest;
+	}
+
+	/**
+	 * @param player the player
+	 * @return the player's tickets as a ticket board, read straight from the player's counts
+	 */
+	@Nonnull public static TicketBoard tickets(@Nonnull Player player) {
+		return player::count;
+	}
+
+	/**
+	 * @return the tickets as four 8 bit counts, see {@link #TICKETS}
+	 */
+	static int pack(TicketBoard tickets) {
+		int packed = 0;
+		for (int t = 0; t < TICKETS.length; t++)
+			packed |= Math.min(tickets.getCount(TICKETS[t]), 0xFF) << (t * 8);
+		return packed;
+	}
+
+	private byte[] table(int source, TicketBoard tickets) {
+		int index = graph.index(source);
+		if (index == -1) throw new IllegalArgumentException("Not on the graph: " + source);
+		int packed = pack(tickets);
+		try {
+			return memo.get((long) index << 32 | (packed & 0xFFFF_FFFFL),
+					() -> search(index, packed));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private byte[] search(int source, int tickets) {
+		int size = graph.size();
+		var result = new byte[size];
+		Arrays.fill(result, (byte) UNREACHABLE);
+		// the ticket counts every station was reached with that no other count beats
+		var seen = new int[size][];
+		var seenCount = new int[size];
+		var frontier = new long[16];
+		var next = new long[16];
+		int frontierSize = 0;
+		result[source] = 0;
+		keep(seen, seenCount, source, tickets);
+		frontier[frontierSize++] = state(source, tickets);
+		for (int moves = 1; frontierSize > 0 && moves < UNREACHABLE; moves++) {
+			int nextSize = 0;
+			for (int f = 0; f < frontierSize; f++) {
+				int u = (int) (frontier[f] >>> 32);
+				int left = (int) frontier[f];
+				for (int t = 0; t < TICKETS.length; t++) {
+					if (((left >>> (t * 8)) & 0xFF) == 0) continue;
+					int after = left - (1 << (t * 8));
+					for (Transport transport : ROUTES[t]) {
+						int[] offsets = graph.offsets(transport);
+						int[] targets = graph.targets(transport);
+						for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+							int v = targets[e];
+							if (!keep(seen, seenCount, v, after)) continue;
+							if (result[v] == UNREACHABLE) result[v] = (byte) moves;
+							if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+							next[nextSize++] = state(v, after);
+						}
+					}
+				}
+			}
+			long[] swap = frontier;
+			frontier = next;
+			next = swap;
+			frontierSize = nextSize;
+		}
+		return result;
+	}
+
+	private static long state(int node, int tickets) {
+		return (long) node << 32 | (tickets & 0xFFFF_FFFFL);
+	}
+
+	// records the tickets for the station unless some recorded count is as good in every ticket
+	private static boolean keep(int[][] seen, int[] seenCount, int node, int tickets) {
+		int[] list = seen[node];
+		int count = seenCount[node];
+		for (int i = 0; i < count; i++) if (covers(list[i], tickets)) return false;
+		if (list == null) list = seen[node] = new int[4];
+		int kept = 0;
+		for (int i = 0; i < count; i++) if (!covers(tickets, list[i])) list[kept++] = list[i];
+		if (kept == list.length) list = seen[node] = Arrays.copyOf(list, kept * 2);
+		list[kept++] = tickets;
+		seenCount[node] = kept;
+		return true;
+	}
+
+	private static boolean covers(int a, int b) {
+		for (int shift = 0; shift < 32; shift += 8)
+			if (((a >>> shift) & 0xFF) < ((b >>> shift) & 0xFF)) return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,105 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * MrX's travel log as a persistent append-only list.
+ * <br>
+ * {@link #append(LogEntry)} returns a new log that points back at this one, so a state and the
+ * state it advanced to share every entry but the new ones and appending is constant time no
+ * matter how long the game is. {@link #asList()} builds the {@link ImmutableList} view that
+ * {@link Board#getMrXTravelLog()} returns on first access only.
+ */
+public final class TravelLog {
+
+	private static final TravelLog EMPTY = new TravelLog(null, null);
+
+	private final TravelLog previous;
+	private final LogEntry entry;
+	private final int size;
+	// same as List.hashCode() of asList()
+	private final int hash;
+	private ImmutableList<LogEntry> list;
+
+	private TravelLog(TravelLog previous, LogEntry entry) {
+		this.previous = previous;
+		this.entry = entry;
+		this.size = previous == null ? 0 : previous.size + 1;
+		this.hash = previous == null ? 1 : 31 * previous.hash + entry.hashCode();
+		if (previous == null) this.list = ImmutableList.of();
+	}
+
+	/**
+	 * @return the empty log
+	 */
+	@Nonnull public static TravelLog empty() { return EMPTY; }
+
+	/**
+	 * @param entries the entries
+	 * @return a log of the given entries, in order
+	 */
+	@Nonnull public static TravelLog of(@Nonnull Iterable<LogEntry> entries) {
+		var log = EMPTY;
+		for (LogEntry entry : entries) log = log.append(entry);
+		return log;
+	}
+
+	/**
+	 * @param entry the entry
+	 * @return a new log with the entry after every entry of this log
+	 */
+	@Nonnull public TravelLog append(@Nonnull LogEntry entry) {
+		return new TravelLog(this, Objects.requireNonNull(entry));
+	}
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	/**
+	 * @param index the index
+	 * @return the entry at the index; this walks back from the last entry
+	 */
+	@Nonnull public LogEntry get(int index) {
+		Objects.checkIndex(index, size);
+		var log = this;
+		while (log.size != index + 1) log = log.previous;
+		return log.entry;
+	}
+
+	/**
+	 * @return every entry as a list, built on first access
+	 */
+	@Nonnull public ImmutableList<LogEntry> asList() {
+		var list = this.list;
+		if (list == null) {
+			var entries = new LogEntry[size];
+			for (var log = this; log.size != 0; log = log.previous) entries[log.size - 1] = log.entry;
+			this.list = list = ImmutableList.copyOf(entries);
+		}
+		return list;
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof TravelLog)) return false;
+		var a = this;
+		var b = (TravelLog) o;
+		if (a.size != b.size || a.hash != b.hash) return false;
+		// stops as soon as both reach a shared prefix
+		while (a != b) {
+			if (!a.entry.equals(b.entry)) return false;
+			a = a.previous;
+			b = b.previous;
+		}
+		return true;
+	}
+
+	@Override public int hashCode() { return hash; }
+
+	@Override public String toString() { return asList().toString(); }
+}
@@ -0,0 +1,101 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Zobrist keys for game states.
+ * <br>
+ * The key of a state is the XOR of one key per player location, one per (player, ticket,
+ * count), one per player that has yet to move this round and one for the number of entries in
+ * MrX's travel log. Changing one of those parts is therefore two XORs, which is how
+ * {@link Board.GameState#zobristKey()} and {@link SearchState#zobristKey()} keep their keys up
+ * to date on every move.
+ * <br>
+ * Keys are derived by mixing the parts with the SplitMix64 finaliser instead of looking them up
+ * in random tables, so any station number or ticket count has a key and keys are the same in
+ * every JVM.
+ */
+public final class Zobrist {
+
+	private Zobrist() {}
+
+	private static final long LOCATION = 0x9E3779B97F4A7C15L;
+	private static final long TICKETS = 0xC2B2AE3D27D4EB4FL;
+	private static final long REMAINING = 0x165667B19E3779F9L;
+	private static final long ROUND = 0xD6E8FEB86659FD93L;
+
+	/**
+	 * @param piece the piece index, see {@link #pieceIndex(Piece)}
+	 * @param station the station
+	 * @return the key of the piece being at the station
+	 */
+	public static long location(int piece, int station) {
+		return mix(LOCATION ^ mix(((long) piece << 32) | (station & 0xFFFFFFFFL)));
+	}
+
+	/**
+	 * @param piece the piece index, see {@link #pieceIndex(Piece)}
+	 * @param ticket the ticket ordinal
+	 * @param count the number of tickets
+	 * @return the key of the piece holding {@code count} of the ticket
+	 */
+	public static long tickets(int piece, int ticket, int count) {
+		return mix(TICKETS ^ mix(((long) piece << 40) | ((long) ticket << 32) |
+				(count & 0xFFFFFFFFL)));
+	}
+
+	/**
+	 * @param piece the piece index, see {@link #pieceIndex(Piece)}
+	 * @return the key of the piece having yet to move this round
+	 */
+	public static long remaining(int piece) { return mix(REMAINING ^ mix(piece)); }
+
+	/**
+	 * @param round the number of entries in MrX's travel log
+	 * @return the key of the log position
+	 */
+	public static long round(int round) { return mix(ROUND ^ mix(round)); }
+
+	/**
+	 * @param player the player
+	 * @return the XOR of the player's location key and ticket keys
+	 */
+	public static long player(@Nonnull Player player) {
+		int piece = pieceIndex(player.piece());
+		long key = location(piece, player.location());
+		for (Ticket ticket : Ticket.values())
+			key ^= tickets(piece, ticket.ordinal(), player.count(ticket));
+		return key;
+	}
+
+	/**
+	 * @param pieces the pieces that have yet to move
+	 * @return the XOR of the remaining keys of the pieces
+	 */
+	public static long remaining(@Nonnull Collection<Piece> pieces) {
+		long key = 0;
+		for (Piece piece : pieces) key ^= remaining(pieceIndex(piece));
+		return key;
+	}
+
+	/**
+	 * @param piece the piece
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES} or, for any other
+	 * piece, a number derived from its colour
+	 */
+	public static int pieceIndex(@Nonnull Piece piece) {
+		int index = ScotlandYard.ALL_PIECES.indexOf(piece);
+		return index != -1 ? index : piece.webColour().hashCode();
+	}
+
+	// SplitMix64 finaliser
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
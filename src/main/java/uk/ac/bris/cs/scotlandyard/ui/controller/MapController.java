@@ -3,7 +3,6 @@ package uk.ac.bris.cs.scotlandyard.ui.controller;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import net.kurobako.gesturefx.GesturePane;
 import net.kurobako.gesturefx.GesturePane.FitMode;
@@ -14,9 +13,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -51,6 +51,7 @@ import uk.ac.bris.cs.fxkit.interpolator.DecelerateInterpolator;
 import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.ResourceManager.ImageResource;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutor;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Model;
 import uk.ac.bris.cs.scotlandyard.model.Move;
@@ -149,7 +150,7 @@ class MapController implements Controller, GameControl {
 	ModelProperty config;
 	Consumer<ImmutableSet<Piece>> timeout;
 
-	Option<ExecutorService> aiExecutor = none();
+	Option<AiExecutor> aiExecutor = none();
 	Option<Ai> mrXAi = none();
 	Option<Ai> detectiveAi = none();
 
@@ -188,10 +189,7 @@ class MapController implements Controller, GameControl {
 			detectiveAi = config.getDetectivesAi();
 			mrXAi.forEach(Ai::onStart);
 			detectiveAi.forEach(Ai::onStart);
-			return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-					.setNameFormat("ai-thread-%d")
-					.setUncaughtExceptionHandler((t, e) -> Utils.handleFatalException(new RuntimeException("An ai instance crashed on thread " + t.getName(), e)))
-					.build());
+			return new AiExecutor();
 		}));
 		advanceModel(model);
 	}
@@ -202,7 +200,10 @@ class MapController implements Controller, GameControl {
 		runInContainment(() -> {
 			mrXAi.forEach(Ai::onTerminate);
 			detectiveAi.forEach(Ai::onTerminate);
-			aiExecutor.forEach(x -> runInContainment(x::shutdownNow));
+			aiExecutor.forEach(x -> runInContainment(() -> {
+				x.close();
+				return Unit.VALUE;
+			}));
 			return Unit.VALUE;
 		});
 	}
@@ -218,36 +219,31 @@ class MapController implements Controller, GameControl {
 
 	double maxLength() { return Math.max(root.getWidth(), root.getHeight()); }
 
-	Runnable requestAi(Model board, Ai ai) {
-		//var terminate = new AtomicBoolean(false);
+	void requestAi(Model board, Ai ai, Runnable onTimeout) {
 		var moves = board.getCurrentBoard().getAvailableMoves();
 		drawMoveHighlights(moves);
-		aiExecutor.forEach(x -> x.submit(() -> {
-			try {
-				final var move = ai.pickMove(board.getCurrentBoard(), new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS));
+		var pick = aiExecutor.map(x -> x.submit(ai, board.getCurrentBoard(),
+				new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS)));
+		pick.forEach(future -> future.whenComplete((move, e) -> {
+			if (e == null) {
 				if (!moves.contains(move)) {
 					Utils.handleFatalException(
 							new Exception("Ai(" + ai.name() + ") selected an invalid move, got: " + move + ", was expecting one of " + moves));
 				} else {
 					Platform.runLater(() -> selectAndMove(board, move));
 				}
-			} catch (Exception e) {
+			} else if (unwrap(e) instanceof TimeoutException) {
+				// only a deadline with no candidate move at all loses the game
+				Platform.runLater(onTimeout);
+			} else if (!(unwrap(e) instanceof CancellationException)) {
 				Utils.handleFatalException(new Exception("Ai(" + ai.name() + ") " +
 						"threw an exception while picking a move", e));
 			}
-		}, aiExecutor));
-		return () -> handleAITimeOut(ai);
+		}));
 	}
 
-	private void handleAITimeOut(Ai ai) {
-		aiExecutor.forEach(x -> {
-			try {
-				x.awaitTermination(1l, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Utils.handleFatalException(
-						new Exception("Ai(" + ai.name() + ") was interrupted during the bail-out grace period.", e));
-			}
-		});
+	private static Throwable unwrap(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
 	}
 
 	Runnable requestHuman(ImmutableSet<Move> moves, Consumer<Move> moveCallback) {
@@ -290,29 +286,37 @@ class MapController implements Controller, GameControl {
 
 		if (mrX) counters.get(MRX).animateVisibility(true);
 
-		final Runnable terminateAction;
+		Runnable declareTimeout = () -> {
+			notifications.dismissAll();
+			timeout.accept(pieces.stream().anyMatch(Piece::isMrX) ?
+					board.getCurrentBoard().getPlayers().stream()
+							.filter(Piece::isDetective)
+							.collect(ImmutableSet.toImmutableSet()) :
+					ImmutableSet.of(MRX));
+		};
+		// an AI's deadline is kept by the executor, which settles on its last candidate move
+		// and only fails the call if there is none; the notification just shows the countdown
+		final Runnable expireAction;
 		if (mrX && mrXAi.isDefined()) {
-			terminateAction = requestAi(board, mrXAi.get());
+			requestAi(board, mrXAi.get(), declareTimeout);
+			expireAction = () -> {};
 		} else if (!mrX && detectiveAi.isDefined()) {
-			terminateAction = requestAi(board, detectiveAi.get());
+			requestAi(board, detectiveAi.get(), declareTimeout);
+			expireAction = () -> {};
 		} else {
-			terminateAction = requestHuman(
+			Runnable terminateAction = requestHuman(
 					board.getCurrentBoard().getAvailableMoves(), m -> selectAndMove(model, m));
+			expireAction = () -> {
+				terminateAction.run();
+				declareTimeout.run();
+			};
 		}
 
 		notifications.show("notify_timeout",
 				new NotificationBuilder(
 						"Waiting for " + pieces + " to make a move").create(
 						Duration.millis(config.timeoutProperty().get().toMillis()),
-						() -> {
-							terminateAction.run();
-							notifications.dismissAll();
-							timeout.accept(pieces.stream().anyMatch(Piece::isMrX) ?
-									board.getCurrentBoard().getPlayers().stream()
-											.filter(Piece::isDetective)
-											.collect(ImmutableSet.toImmutableSet()) :
-									ImmutableSet.of(MRX));
-						}));
+						expireAction));
 
 
 	}
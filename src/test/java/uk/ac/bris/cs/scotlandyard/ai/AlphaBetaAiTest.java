@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link AlphaBetaAi} finds the obvious move for MrX
+ */
+public class AlphaBetaAiTest extends ParameterisedModelTestBase {
+
+	private static final Pair<Long, TimeUnit> TIMEOUT = new Pair<>(500L, TimeUnit.MILLISECONDS);
+
+	@Test public void testMrXDoesNotWalkIntoADetective() {
+		var ai = new AlphaBetaAi(2, 16);
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 47));
+		try {
+			Move move = ai.pickMove(state, TIMEOUT);
+			assertThat(state.getAvailableMoves()).contains(move);
+			assertThat(PackedMove.finalDestination(PackedMove.encode(move))).isNotEqualTo(46);
+			assertThat(ai.lastNodes()).isPositive();
+			assertThat(ai.lastDepth()).isGreaterThanOrEqualTo(2);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testCandidatesArePublished() {
+		var ai = new AlphaBetaAi(2, 16);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		var candidates = new ArrayList<Move>();
+		try {
+			Move move = ai.pickMove(state, TIMEOUT, candidates::add);
+			assertThat(candidates).isNotEmpty();
+			assertThat(state.getAvailableMoves()).containsAll(candidates).contains(move);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testDetectivesAreLeftToMcts() {
+		var ai = new AlphaBetaAi(1, 16);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		state = state.advance(state.getAvailableMoves().iterator().next());
+		try {
+			Move move = ai.pickMove(state, TIMEOUT);
+			assertThat(move.commencedBy()).isEqualTo(RED);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+}
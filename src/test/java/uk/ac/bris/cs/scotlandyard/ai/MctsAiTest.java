@@ -0,0 +1,110 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link MctsAi} finds the obvious move on both sides
+ */
+public class MctsAiTest extends ParameterisedModelTestBase {
+
+	private static final Pair<Long, TimeUnit> TIMEOUT = new Pair<>(500L, TimeUnit.MILLISECONDS);
+
+	@Test public void testDetectiveTakesRevealedMrX() {
+		var ai = new MctsAi(2);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(BLUE, defaultDetectiveTickets(), 47));
+		state = state.advance(taxi(MRX, 45, 46));
+		try {
+			assertThat(ai.pickMove(state, TIMEOUT)).isEqualTo(taxi(BLUE, 47, 46));
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testMrXDoesNotWalkIntoADetective() {
+		var ai = new MctsAi(2);
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 47));
+		try {
+			Move move = ai.pickMove(state, TIMEOUT);
+			assertThat(state.getAvailableMoves()).contains(move);
+			assertThat(PackedMove.finalDestination(PackedMove.encode(move))).isNotEqualTo(46);
+			assertThat(ai.lastPlayouts()).isPositive();
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testDetectivesOnlySearchWhereMrXCouldBe() {
+		var ai = new MctsAi(2);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		state = state.advance(taxi(MRX, 45, 46)).advance(taxi(BLUE, 94, 93));
+		try {
+			// MrX could be at either end of 46's taxi routes, not just where MrX really is
+			Move move = ai.pickMove(state.advance(taxi(MRX, 46, 47)), TIMEOUT);
+			assertThat(move.commencedBy()).isEqualTo(BLUE);
+			assertThat(ai.lastDeterminisations()).isEqualTo(4);
+			ai.pickMove(state.advance(taxi(MRX, 46, 61)), TIMEOUT);
+			assertThat(ai.lastDeterminisations()).isEqualTo(4);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testCandidatesArePublished() {
+		var ai = new MctsAi(2);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+		var candidates = new ArrayList<Move>();
+		try {
+			Move move = ai.pickMove(state, TIMEOUT, candidates::add);
+			assertThat(candidates).isNotEmpty();
+			assertThat(state.getAvailableMoves()).containsAll(candidates).contains(move);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testSubtreeIsNotReusedWhenTicketsDiffer() {
+		var ai = new MctsAi(2);
+		var setup = new GameSetup(standardGraph(), moves(true, false, false));
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		GameState first = gameStateFactory.build(setup, mrX, blue,
+				new Player(RED, defaultDetectiveTickets(), 29)).advance(taxi(MRX, 45, 46));
+		// the same board as far as locations and the log go, but RED only has taxi tickets
+		GameState second = gameStateFactory.build(setup, mrX, blue,
+				new Player(RED, makeTickets(11, 0, 0, 0, 0), 29)).advance(taxi(MRX, 45, 46));
+		try {
+			Move move = ai.pickMove(first, TIMEOUT);
+			second = second.advance(move);
+			assertThat(second.getAvailableMoves()).contains(ai.pickMove(second, TIMEOUT));
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.PackedMove;
+import uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link OpeningBook} gives back the moves it was built with, and that they are played
+ */
+public class OpeningBookTest extends ParameterisedModelTestBase {
+
+	// always the same move whatever the colours, so the book can be checked against it
+	private static final class FirstMoveAi implements Ai {
+		@Nonnull @Override public String name() { return "First move"; }
+
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			return board.getAvailableMoves().stream()
+					.min(Comparator.comparingInt(Move::source)
+							.thenComparingLong(PackedMove::encode)).orElseThrow();
+		}
+	}
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testStartsAreEveryCombination() {
+		assertThat(OpeningBook.starts(1)).hasSize(ScotlandYard.MRX_LOCATIONS.size() *
+				ScotlandYard.DETECTIVE_LOCATIONS.size());
+		assertThat(OpeningBook.starts(5)).hasSize(ScotlandYard.MRX_LOCATIONS.size() * 2002);
+	}
+
+	@Test public void testBookGivesTheBuiltLineForBothSides() throws InterruptedException {
+		var setup = standard24MoveSetup();
+		var starts = OpeningBook.starts(2).subList(0, 200);
+		var book = OpeningBook.build(setup, starts, 2, FirstMoveAi::new,
+				Duration.ofMillis(10), 2);
+		var ai = new FirstMoveAi();
+		for (int[] start : starts) {
+			GameState board = OpeningBook.board(setup, start);
+			int turns = 0;
+			while (board.getWinner().isEmpty()) {
+				boolean mrX = board.getAvailableMoves().stream()
+						.anyMatch(move -> move.commencedBy().isMrX());
+				if (mrX && turns++ == 2) {
+					assertThat(book.move(board)).isEmpty();
+					break;
+				}
+				Move move = ai.pickMove(board, null);
+				assertThat(book.move(board)).contains(move);
+				board = board.advance(move);
+			}
+		}
+	}
+
+	@Test public void testKeyIgnoresDetectiveColours() throws InterruptedException {
+		var setup = standard24MoveSetup();
+		var book = OpeningBook.build(setup, ImmutableList.of(new int[]{45, 26, 91}), 1,
+				FirstMoveAi::new, Duration.ofMillis(10), 1);
+		GameState swapped = gameStateFactory.build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 26));
+		assertThat(OpeningBook.key(swapped))
+				.isEqualTo(OpeningBook.key(OpeningBook.board(setup, new int[]{45, 26, 91})));
+		// MrX's move and both detectives' are found, the detectives' by station
+		for (int i = 0; i < 3; i++) {
+			var move = book.move(swapped);
+			assertThat(move).isPresent();
+			assertThat(swapped.getAvailableMoves()).contains(move.get());
+			swapped = swapped.advance(move.get());
+		}
+		assertThat(book.move(swapped)).isEmpty();
+		assertThat(book.move(gameStateFactory.build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 29)))).isEmpty();
+		assertThat(book.move(gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 26)))).isEmpty();
+	}
+
+	@Test public void testDetectivesKeyLeavesOutWhereMrXIs() {
+		var setup = standard24MoveSetup();
+		var from45 = OpeningBook.board(setup, new int[]{45, 26, 91});
+		var from51 = OpeningBook.board(setup, new int[]{51, 26, 91});
+		assertThat(OpeningBook.key(from45)).isNotEqualTo(OpeningBook.key(from51));
+		assertThat(OpeningBook.key(from45.advance(taxi(MRX, 45, 46))))
+				.isEqualTo(OpeningBook.key(from51.advance(taxi(MRX, 51, 52))))
+				.isNotEqualTo(OpeningBook.key(from51.advance(secret(MRX, 51, 52))));
+	}
+
+	@Test public void testSaveAndLoad() throws IOException, InterruptedException {
+		var setup = standard24MoveSetup();
+		var starts = OpeningBook.starts(1);
+		var book = OpeningBook.build(setup, starts, 1, FirstMoveAi::new,
+				Duration.ofMillis(10), 2);
+		var file = folder.getRoot().toPath().resolve(OpeningBook.fileName(setup));
+		book.save(file);
+		var loaded = OpeningBook.load(file, setup);
+		assertThat(loaded.size()).isEqualTo(book.size());
+		for (int[] start : starts) {
+			var board = OpeningBook.board(setup, start);
+			assertThat(loaded.move(board)).isEqualTo(book.move(board)).isPresent();
+			var detectives = board.advance(book.move(board).orElseThrow());
+			assertThat(loaded.move(detectives)).isEqualTo(book.move(detectives)).isPresent();
+		}
+
+		assertThatThrownBy(() -> OpeningBook.load(file,
+				new GameSetup(standardGraph(), moves(true, false, false))))
+				.isInstanceOf(IOException.class);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> OpeningBook.load(file, setup))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Checksum");
+	}
+
+	@Test public void testMctsAiPlaysTheBookMoveOnBothSides()
+			throws IOException, InterruptedException {
+		var setup = standard24MoveSetup();
+		var start = new int[]{45, 26, 91};
+		var book = OpeningBook.build(setup, ImmutableList.of(start), 1, FirstMoveAi::new,
+				Duration.ofMillis(10), 1);
+		book.save(folder.getRoot().toPath().resolve(OpeningBook.fileName(setup)));
+		GameState board = OpeningBook.board(setup, start);
+		var ai = new MctsAi(1);
+		System.setProperty(OpeningBook.DIRECTORY_PROPERTY, folder.getRoot().toString());
+		try {
+			// MrX's move, then a detective's
+			for (int i = 0; i < 2; i++) {
+				var candidates = new ArrayList<Move>();
+				Move move = ai.pickMove(board, new Pair<>(1L, TimeUnit.MINUTES), candidates::add);
+				assertThat(move).isEqualTo(book.move(board).orElseThrow());
+				assertThat(candidates).containsExactly(move);
+				assertThat(ai.lastPlayouts()).isZero();
+				board = board.advance(move);
+			}
+		} finally {
+			System.clearProperty(OpeningBook.DIRECTORY_PROPERTY);
+			ai.onTerminate();
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.MatchRunner.Result;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutor;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests {@link GameHost} runs many games on a few threads
+ */
+public class GameHostTest extends ParameterisedModelTestBase {
+
+	@Test public void testManyGamesOnFewThreads() throws Exception {
+		try (var host = new GameHost(modelFactory, 2, new AiExecutor())) {
+			var games = new ArrayList<GameHost.Game>();
+			for (var match : MatchRunner.randomMatches(100, 5, 11)) {
+				games.add(host.host(standard24MoveSetup(), match.mrX, match.detectives,
+						new RandomAi(), new RandomAi(), Duration.ofSeconds(1)));
+			}
+			long moves = 0;
+			for (var game : games) {
+				Result result = game.result().get(30, TimeUnit.SECONDS);
+				assertThat(result.game).isEqualTo(game.id());
+				assertThat(result.error).isEmpty();
+				assertThat(result.winner).isNotEmpty().isEqualTo(game.board().getWinner());
+				assertThat(result.moves).isEqualTo(game.moves());
+				moves += result.moves;
+			}
+			assertThat(host.moves()).isEqualTo(moves);
+			assertThat(host.active()).isZero();
+		}
+	}
+
+	@Test public void testSlowGameDoesNotStarveTheOthers() throws Exception {
+		var release = new CountDownLatch(1);
+		var slow = new RandomAi() {
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return super.pickMove(board, timeoutPair);
+			}
+		};
+		try (var host = new GameHost(modelFactory, 2, new AiExecutor())) {
+			var matches = MatchRunner.randomMatches(10, 2, 5);
+			var blocked = host.host(standard24MoveSetup(), matches.get(0).mrX,
+					matches.get(0).detectives, slow, new RandomAi(), Duration.ofMinutes(1));
+			for (var match : matches.subList(1, matches.size())) {
+				var result = host.host(standard24MoveSetup(), match.mrX, match.detectives,
+						new RandomAi(), new RandomAi(), Duration.ofSeconds(1))
+						.result().get(30, TimeUnit.SECONDS);
+				assertThat(result.error).isEmpty();
+			}
+			assertThat(blocked.isDone()).isFalse();
+			assertThat(blocked.moves()).isZero();
+			blocked.cancel();
+			release.countDown();
+			Result result = blocked.result().get(30, TimeUnit.SECONDS);
+			assertThat(result.error).hasValue("Cancelled");
+			assertThat(result.moves).isEqualTo(1);
+		}
+	}
+
+	@Test public void testCloseEndsEveryGame() throws Exception {
+		var host = new GameHost(modelFactory, 1, new AiExecutor());
+		var games = new ArrayList<GameHost.Game>();
+		for (var match : MatchRunner.randomMatches(50, 5, 3)) {
+			games.add(host.host(standard24MoveSetup(), match.mrX, match.detectives,
+					new RandomAi(), new RandomAi(), Duration.ofSeconds(1)));
+		}
+		host.close();
+		for (var game : games) assertThat(game.result().get(30, TimeUnit.SECONDS)).isNotNull();
+		assertThat(host.active()).isZero();
+	}
+
+	@Test public void testNullArgumentsAreRejectedBeforeAnyAiStarts() {
+		var started = new AtomicBoolean();
+		var mrXAi = new RandomAi() {
+			@Override public void onStart() { started.set(true); }
+		};
+		var match = MatchRunner.randomMatches(1, 2, 5).get(0);
+		try (var host = new GameHost(modelFactory, 1, new AiExecutor())) {
+			assertThatThrownBy(() -> host.host(standard24MoveSetup(), match.mrX,
+					match.detectives, mrXAi, null, Duration.ofSeconds(1)))
+					.isInstanceOf(NullPointerException.class);
+			assertThatThrownBy(() -> host.host(standard24MoveSetup(), match.mrX,
+					match.detectives, mrXAi, new RandomAi(), null))
+					.isInstanceOf(NullPointerException.class);
+			assertThat(started).isFalse();
+			assertThat(host.active()).isZero();
+		}
+	}
+
+}
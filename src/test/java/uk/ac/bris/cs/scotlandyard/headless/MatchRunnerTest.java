@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.headless.MatchRunner.Result;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AiExecutor;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+
+/**
+ * Tests {@link MatchRunner} plays complete games without the UI
+ */
+public class MatchRunnerTest extends ParameterisedModelTestBase {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final class BadAi implements Ai {
+		@Nonnull @Override public String name() { return "Bad"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        Pair<Long, TimeUnit> timeoutPair) {
+			return new Move.SingleMove(RED, 1, ScotlandYard.Ticket.TAXI, 8);
+		}
+	}
+
+	private MatchRunner runner(Ai mrX, Ai detectives, int threads) {
+		return new MatchRunner(standard24MoveSetup(), () -> mrX, () -> detectives,
+				modelFactory, Duration.ofSeconds(1), threads, new AiExecutor());
+	}
+
+	@Test public void testRandomMatchesAreRepeatable() {
+		var a = MatchRunner.randomMatches(10, 3, 7);
+		var b = MatchRunner.randomMatches(10, 3, 7);
+		assertThat(a).hasSize(10);
+		for (int i = 0; i < a.size(); i++) {
+			assertThat(a.get(i).mrX).isEqualTo(b.get(i).mrX);
+			assertThat(a.get(i).detectives).hasSize(3).isEqualTo(b.get(i).detectives);
+		}
+	}
+
+	@Test public void testGamesPlayToTheEndAndAreWritten() throws Exception {
+		var matches = MatchRunner.randomMatches(8, 5, 1);
+		var output = folder.getRoot().toPath().resolve("results.tsv");
+		var results = new MatchRunner(standard24MoveSetup(), RandomAi::new, RandomAi::new,
+				modelFactory, Duration.ofSeconds(1), 4, new AiExecutor()).run(matches, output);
+		assertThat(results).hasSize(8);
+		for (int i = 0; i < results.size(); i++) {
+			Result result = results.get(i);
+			assertThat(result.game).isEqualTo(i);
+			assertThat(result.match).isSameAs(matches.get(i));
+			assertThat(result.error).isEmpty();
+			assertThat(result.mrXWon() ^ result.detectivesWon()).isTrue();
+			assertThat(result.moves).isPositive();
+		}
+		var lines = Files.readAllLines(output);
+		assertThat(lines).hasSize(9);
+		assertThat(lines.get(0)).isEqualTo(MatchRunner.HEADER);
+		assertThat(lines.subList(1, 9))
+				.containsExactlyInAnyOrderElementsOf(results.stream().map(Result::toLine)::iterator);
+	}
+
+	@Test public void testInvalidMoveEndsTheGameWithAnError() throws Exception {
+		var results = runner(new RandomAi(), new BadAi(), 1)
+				.run(MatchRunner.randomMatches(1, 2, 3), null);
+		Result result = results.get(0);
+		assertThat(result.winner).isEmpty();
+		assertThat(result.moves).isEqualTo(1);
+		assertThat(result.error).hasValueSatisfying(e -> assertThat(e).contains("Bad"));
+	}
+
+}
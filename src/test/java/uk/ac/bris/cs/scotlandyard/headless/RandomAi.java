@@ -0,0 +1,28 @@
+package uk.ac.bris.cs.scotlandyard.headless;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * Plays a random available move, the same sequence for every instance
+ */
+class RandomAi implements Ai {
+
+	private final Random random = new Random(42);
+
+	@Nonnull @Override public String name() { return "Random"; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		var moves = board.getAvailableMoves().asList();
+		return moves.get(random.nextInt(moves.size()));
+	}
+
+}
@@ -0,0 +1,167 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests {@link AiExecutor} enforces deadlines and records latency
+ */
+public class AiExecutorTest extends ParameterisedModelTestBase {
+
+	private final AiExecutor executor = new AiExecutor(8, Duration.ofMillis(50));
+
+	@After public void tearDown() { executor.close(); }
+
+	private static Ai ai(String name, Function<Board, Move> pick) {
+		return new Ai() {
+			@Nonnull @Override public String name() { return name; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				return pick.apply(board);
+			}
+		};
+	}
+
+	private GameState state() {
+		return gameStateFactory.build(standard24MoveSetup(), blackPlayer(), redPlayer());
+	}
+
+	private static Pair<Long, TimeUnit> millis(long millis) {
+		return new Pair<>(millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Test public void testMoveIsReturnedAndLatencyRecorded() throws Exception {
+		var state = state();
+		var first = ai("First", b -> b.getAvailableMoves().iterator().next());
+		for (int i = 0; i < 3; i++) {
+			assertThat(executor.pickMove(first, state, millis(1000)))
+					.isEqualTo(state.getAvailableMoves().iterator().next());
+		}
+		var latency = executor.latencies().get("First");
+		assertThat(latency.calls).isEqualTo(3);
+		assertThat(latency.timeouts).isZero();
+		assertThat(latency.failures).isZero();
+		assertThat(latency.max).isGreaterThanOrEqualTo(latency.mean());
+	}
+
+	@Test public void testExceptionIsTheCause() {
+		var thrower = ai("Thrower", b -> { throw new IllegalStateException("bad"); });
+		assertThatThrownBy(() -> executor.pickMove(thrower, state(), millis(1000)))
+				.isInstanceOf(ExecutionException.class)
+				.hasCauseInstanceOf(IllegalStateException.class);
+		assertThat(executor.latencies().get("Thrower").failures).isEqualTo(1);
+	}
+
+	@Test public void testDeadlineInterruptsTheAi() throws Exception {
+		var interrupted = new CountDownLatch(1);
+		var sleeper = ai("Sleeper", b -> {
+			try {
+				Thread.sleep(60_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return b.getAvailableMoves().iterator().next();
+		});
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> executor.pickMove(sleeper, state(), millis(100)))
+				.isInstanceOf(TimeoutException.class)
+				.hasMessageContaining("Sleeper");
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+		assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test public void testDeadlineSettlesOnTheLastCandidate() throws Exception {
+		var state = state();
+		var moves = state.getAvailableMoves().asList();
+		var interrupted = new CountDownLatch(1);
+		var anytime = new Ai() {
+			@Nonnull @Override public String name() { return "Anytime"; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				throw new AssertionError("not called");
+			}
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair,
+			                                        @Nonnull Consumer<Move> candidates) {
+				candidates.accept(moves.get(0));
+				candidates.accept(moves.get(1));
+				try {
+					Thread.sleep(60_000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return moves.get(2);
+			}
+		};
+		assertThat(executor.pickMove(anytime, state, millis(100))).isEqualTo(moves.get(1));
+		assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (executor.latencies().get("Anytime") == null && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		var latency = executor.latencies().get("Anytime");
+		assertThat(latency.timeouts).isEqualTo(1);
+		assertThat(latency.candidates).isEqualTo(1);
+	}
+
+	@Test public void testStubbornAiIsQuarantinedUntilItReturns() throws Exception {
+		var release = new CountDownLatch(1);
+		var stubborn = ai("Stubborn", b -> {
+			while (release.getCount() != 0) {
+				try {
+					release.await();
+				} catch (InterruptedException ignored) {
+					// keeps going
+				}
+			}
+			return b.getAvailableMoves().iterator().next();
+		});
+		var future = executor.submit(stubborn, state(), millis(50));
+		assertThatThrownBy(future::get).hasCauseInstanceOf(TimeoutException.class);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (executor.quarantined().isEmpty() && System.nanoTime() < deadline) Thread.sleep(10);
+		var thread = executor.quarantined().iterator().next();
+		assertThat(thread.getPriority()).isEqualTo(Thread.MIN_PRIORITY);
+		release.countDown();
+		while (!executor.quarantined().isEmpty() && System.nanoTime() < deadline) Thread.sleep(10);
+		assertThat(executor.quarantined()).isEmpty();
+		assertThat(thread.getPriority()).isEqualTo(Thread.NORM_PRIORITY);
+		while (executor.latencies().get("Stubborn") == null && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		assertThat(executor.latencies().get("Stubborn").timeouts).isEqualTo(1);
+	}
+
+	@Test public void testCancelInterruptsTheAi() throws Exception {
+		var started = new CountDownLatch(1);
+		var interrupted = new CountDownLatch(1);
+		var sleeper = ai("Sleeper", b -> {
+			started.countDown();
+			try {
+				Thread.sleep(60_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return b.getAvailableMoves().iterator().next();
+		});
+		var future = executor.submit(sleeper, state(), millis(60_000));
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		future.cancel(true);
+		assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+}
@@ -3,6 +3,12 @@ package uk.ac.bris.cs.scotlandyard.model;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import uk.ac.bris.cs.scotlandyard.ai.AlphaBetaAiTest;
+import uk.ac.bris.cs.scotlandyard.ai.MctsAiTest;
+import uk.ac.bris.cs.scotlandyard.ai.OpeningBookTest;
+import uk.ac.bris.cs.scotlandyard.headless.GameHostTest;
+import uk.ac.bris.cs.scotlandyard.headless.MatchRunnerTest;
+
 /**
  * Includes all test for the actual game model
  */
@@ -15,6 +21,23 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
+		GameStateMoveListTest.class,
+		SearchStateTest.class,
+		GameStateHashTest.class,
+		CompiledGraphTest.class,
+		TravelLogTest.class,
+		BoardCodecTest.class,
+		MatchRunnerTest.class,
+		GameHostTest.class,
+		AiExecutorTest.class,
+		MctsAiTest.class,
+		AlphaBetaAiTest.class,
+		MrXTrackerTest.class,
+		DistanceTablesTest.class,
+		TicketReachabilityTest.class,
+		TablebaseTest.class,
+		OpeningBookTest.class,
+		GraphFormatTest.class,
 		ModelObserverTest.class
 })
 public class AllTest {}
@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that boards written by {@link BoardCodec} read back as the same game state
+ */
+public class BoardCodecTest extends ParameterisedModelTestBase {
+
+	@Test public void testRoundTripDuringRandomPlayouts() {
+		var random = new Random(3);
+		for (int game = 0; game < 20; game++) {
+			var mrX = new Player(MRX, defaultMrXTickets(),
+					ScotlandYard.generateMrXLocation(random.nextInt()));
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX,
+					redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+			int location = mrX.location();
+			while (true) {
+				byte[] bytes = BoardCodec.encode(state, location);
+				assertThat(bytes.length).isLessThan(128);
+				GameState read = BoardCodec.decode(bytes, standardGraph());
+				assertThat(read.getWinner()).isEqualTo(state.getWinner());
+				assertThat(read.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+				assertThat(read.getMrXTravelLog()).isEqualTo(state.getMrXTravelLog());
+				assertThat(read.getSetup().moves).isEqualTo(state.getSetup().moves);
+				assertThat(read.zobristKey()).isEqualTo(
+						SearchState.of(state, location).zobristKey());
+				if (!state.getWinner().isEmpty()) break;
+				var moves = state.getAvailableMoves().asList();
+				var move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX())
+					location = PackedMove.finalDestination(PackedMove.encode(move));
+				state = state.advance(move);
+				assertThat(read.advance(move).getAvailableMoves())
+						.isEqualTo(state.getAvailableMoves());
+			}
+		}
+	}
+
+	@Test public void testMovesRoundTrip() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		var moves = state.getAvailableMoves().asList();
+		assertThat(BoardCodec.decodeMoves(BoardCodec.encodeMoves(moves))).isEqualTo(moves);
+	}
+
+	@Test public void testUnknownMrXLocationCannotBeRead() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		state = state.advance(state.getAvailableMoves().asList().get(0));
+		byte[] bytes = BoardCodec.encode(state);
+		assertThatThrownBy(() -> BoardCodec.decode(bytes, standardGraph()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testOtherGraphIsRejected() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		byte[] bytes = BoardCodec.encode(state);
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> other =
+				ImmutableValueGraph.copyOf(ValueGraphBuilder.undirected()
+						.<Integer, ImmutableSet<Transport>>build());
+		assertThatThrownBy(() -> BoardCodec.decode(bytes, other))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("another graph");
+		assertThatThrownBy(() -> BoardCodec.decode(new byte[]{9}, standardGraph()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(BoardCodec.decode(bytes, standardGraph()).getAvailableMoves())
+				.isEqualTo(state.getAvailableMoves());
+	}
+
+	@Test public void testLyingLengthsAreRejected() throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		out.writeByte(BoardCodec.VERSION);
+		out.writeLong(CompiledGraph.of(standardGraph()).fingerprint());
+		BoardCodec.writeVarInt(out, Integer.MAX_VALUE);
+		assertThatThrownBy(() -> BoardCodec.decode(bytes.toByteArray(), standardGraph()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> BoardCodec.decodeMoves(new byte[]{-1, -1, -1, -1, 0x07}))
+				.isInstanceOf(IllegalArgumentException.class);
+		// a fifth group with more than 31 bits in total
+		assertThatThrownBy(() -> BoardCodec.decodeMoves(new byte[]{-1, -1, -1, -1, 0x0F}))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("varint");
+
+		GameState state = gameStateFactory.build(new GameSetup(standardGraph(),
+				moves(false, false)), blackPlayer(), redPlayer());
+		byte[] valid = BoardCodec.encode(state);
+		// the log size is the last byte of a board with an empty log
+		valid[valid.length - 1] = 3;
+		assertThatThrownBy(() -> BoardCodec.decode(valid, standardGraph()))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("Log longer");
+	}
+
+	@Test public void testRestoreWithEmptyLogIsBuild() {
+		var factory = new BitboardGameStateFactory();
+		var detectives = ImmutableList.of(redPlayer(), greenPlayer());
+		assertThat(factory.restore(standard24MoveSetup(), blackPlayer(), detectives,
+				ImmutableList.of(), ImmutableSet.of(MRX)))
+				.isEqualTo(factory.build(standard24MoveSetup(), blackPlayer(), detectives));
+	}
+
+}
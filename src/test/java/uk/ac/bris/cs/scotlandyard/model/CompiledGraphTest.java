@@ -0,0 +1,119 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests that {@link CompiledGraph} and {@link MoveTable} hold exactly the edges of the graph they
+ * were compiled from
+ */
+public class CompiledGraphTest extends ParameterisedModelTestBase {
+
+	@Test public void testStationsAreDenseAndSorted() {
+		var graph = CompiledGraph.of(standardGraph());
+		assertThat(graph.size()).isEqualTo(standardGraph().nodes().size());
+		for (int i = 0; i < graph.size(); i++) {
+			assertThat(graph.index(graph.station(i))).isEqualTo(i);
+			if (i > 0) assertThat(graph.station(i)).isGreaterThan(graph.station(i - 1));
+		}
+		assertThat(graph.index(0)).isEqualTo(-1);
+		assertThat(graph.index(-5)).isEqualTo(-1);
+		assertThat(graph.index(Integer.MAX_VALUE)).isEqualTo(-1);
+	}
+
+	@Test public void testEdgesMatchGraph() {
+		var graph = CompiledGraph.of(standardGraph());
+		for (int u = 0; u < graph.size(); u++) {
+			int station = graph.station(u);
+			Set<Integer> neighbours = new HashSet<>();
+			int[] offsets = graph.neighbourOffsets();
+			for (int i = offsets[u]; i < offsets[u + 1]; i++)
+				neighbours.add(graph.station(graph.neighbourTargets()[i]));
+			assertThat(neighbours).isEqualTo(standardGraph().adjacentNodes(station));
+			assertThat(offsets[u + 1] - offsets[u]).isEqualTo(neighbours.size());
+
+			for (Transport transport : Transport.values()) {
+				Set<Integer> expected = new HashSet<>();
+				for (int neighbour : standardGraph().adjacentNodes(station)) {
+					if (standardGraph().edgeValueOrDefault(station, neighbour, ImmutableSet.of())
+							.contains(transport)) expected.add(neighbour);
+				}
+				Set<Integer> actual = new HashSet<>();
+				int[] transportOffsets = graph.offsets(transport);
+				for (int i = transportOffsets[u]; i < transportOffsets[u + 1]; i++) {
+					int v = graph.targets(transport)[i];
+					actual.add(graph.station(v));
+					assertThat(graph.connected(u, v, transport)).isTrue();
+				}
+				assertThat(actual).isEqualTo(expected);
+			}
+		}
+	}
+
+	@Test public void testCompiledOncePerGraph() {
+		assertThat(CompiledGraph.of(standard24MoveSetup()))
+				.isSameAs(CompiledGraph.of(standardGraph()));
+	}
+
+	@Test public void testMoveTableHoldsOneMovePerEdge() {
+		var graph = CompiledGraph.of(standardGraph());
+		var table = MoveTable.of(graph);
+		int red = ScotlandYard.ALL_PIECES.indexOf(RED);
+		for (Transport transport : Transport.values()) {
+			int[] offsets = graph.offsets(transport);
+			for (int u = 0; u < graph.size(); u++) {
+				for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+					assertThat(table.single(red, transport, i)).isEqualTo(new SingleMove(RED,
+							graph.station(u), transport.requiredTicket(),
+							graph.station(graph.targets(transport)[i])));
+				}
+			}
+		}
+		assertThat(MoveTable.of(graph).secret(red, 0)).isSameAs(table.secret(red, 0));
+	}
+
+	@Test public void testSingleMoveHashIncludesSource() {
+		assertThat(new SingleMove(RED, 1, TAXI, 8).hashCode())
+				.isNotEqualTo(new SingleMove(RED, 9, TAXI, 8).hashCode());
+		assertThat(new SingleMove(RED, 1, TAXI, 8).hashCode())
+				.isEqualTo(new SingleMove(RED, 1, TAXI, 8).hashCode());
+	}
+
+	@Test public void testMovesSerialiseWithoutTheirHash() throws Exception {
+		assertThat(ObjectStreamClass.lookup(SingleMove.class).getField("hash")).isNull();
+		assertThat(ObjectStreamClass.lookup(DoubleMove.class).getField("hash")).isNull();
+		for (Move move : List.of(new SingleMove(RED, 1, TAXI, 8),
+				new DoubleMove(MRX, 1, TAXI, 8, BUS, 58))) {
+			var bytes = new ByteArrayOutputStream();
+			try (var out = new ObjectOutputStream(bytes)) {
+				out.writeObject(move);
+			}
+			try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+				Object read = in.readObject();
+				assertThat(read).isEqualTo(move);
+				assertThat(read.hashCode()).isEqualTo(move.hashCode());
+			}
+		}
+	}
+
+}
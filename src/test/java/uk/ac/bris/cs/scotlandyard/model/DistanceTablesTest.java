@@ -0,0 +1,92 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import uk.ac.bris.cs.scotlandyard.model.DistanceTables.Mode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link DistanceTables} agree with a plain breadth-first search and survive a round trip
+ * through a file
+ */
+public class DistanceTablesTest extends ParameterisedModelTestBase {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testDistancesMatchBreadthFirstSearch() {
+		var graph = standardGraph();
+		var tables = DistanceTables.compute(CompiledGraph.of(graph));
+		for (Mode mode : Mode.values()) {
+			for (int source : new int[]{1, 46, 108, 115, 157, 199}) {
+				var distances = new HashMap<Integer, Integer>();
+				var queue = new ArrayDeque<Integer>();
+				distances.put(source, 0);
+				queue.add(source);
+				while (!queue.isEmpty()) {
+					int u = queue.remove();
+					for (int v : graph.adjacentNodes(u)) {
+						if (distances.containsKey(v) || graph.edgeValue(u, v).orElseThrow()
+								.stream().noneMatch(mode.transports()::contains)) continue;
+						distances.put(v, distances.get(u) + 1);
+						queue.add(v);
+					}
+				}
+				for (int target : graph.nodes()) {
+					assertThat(tables.distance(mode, source, target))
+							.as("%s from %d to %d", mode, source, target)
+							.isEqualTo(distances.getOrDefault(target, DistanceTables.UNREACHABLE));
+				}
+			}
+		}
+	}
+
+	@Test public void testSaveAndLoad() throws IOException {
+		var graph = CompiledGraph.of(standardGraph());
+		var tables = DistanceTables.of(graph);
+		var file = folder.getRoot().toPath().resolve(DistanceTables.fileName(graph));
+		tables.save(file);
+		var loaded = DistanceTables.load(file, graph);
+		for (Mode mode : Mode.values())
+			for (int u = 0; u < graph.size(); u++)
+				for (int v = 0; v < graph.size(); v++)
+					assertThat(loaded.between(mode, u, v)).isEqualTo(tables.between(mode, u, v));
+
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> DistanceTables.load(file, graph))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Checksum");
+	}
+
+	@Test public void testLoadRejectsAnotherGraph() throws IOException {
+		var graph = CompiledGraph.of(standardGraph());
+		var file = folder.getRoot().toPath().resolve("distances.bin");
+		DistanceTables.of(graph).save(file);
+		var other = CompiledGraph.of(ScotlandYard.readGraph("2 1\n1\n2\n1 2 Taxi\n"));
+		assertThatThrownBy(() -> DistanceTables.load(file, other))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testNearestDetective() {
+		var board = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45), redPlayer(), bluePlayer());
+		var tables = DistanceTables.of(board);
+		assertThat(tables.nearestDetective(board, redPlayer().location())).isZero();
+		assertThat(tables.nearestDetective(board, 45)).isEqualTo(Math.min(
+				tables.distance(Mode.DETECTIVE, redPlayer().location(), 45),
+				tables.distance(Mode.DETECTIVE, bluePlayer().location(), 45)));
+	}
+
+}
@@ -148,6 +148,24 @@ public class GameStateDetectivesAvailableMovesTest extends ParameterisedModelTes
 				.noneMatch(m -> m.commencedBy() == RED);
 	}
 
+	@Test public void testStuckDetectiveMovesOnceFreedLaterInTheRound() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 170);
+		var red = new Player(RED, defaultDetectiveTickets(), 46);
+		var green = new Player(GREEN, defaultDetectiveTickets(), 29);
+		// blue's only route is the underground to 46, where red stands
+		var blue = new Player(BLUE, makeTickets(0, 0, 4, 0, 0), 1);
+
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, green, blue);
+		state = state.advance(taxi(MRX, 170, 159));
+		assertThat(state.getAvailableMoves()).noneMatch(m -> m.commencedBy() == BLUE);
+		state = state.advance(taxi(GREEN, 29, 16));
+		assertThat(state.getAvailableMoves()).noneMatch(m -> m.commencedBy() == BLUE);
+		state = state.advance(taxi(RED, 46, 47));
+		assertThat(state.getAvailableMoves()).containsExactly(underground(BLUE, 1, 46));
+		state = state.advance(underground(BLUE, 1, 46));
+		assertThat(state.getAvailableMoves()).allMatch(m -> m.commencedBy() == MRX);
+	}
+
 	@Test public void testDetectiveMoveNotOmittedIfDestinationOccupiedByMrX() {
 		var mrX = new Player(MRX, defaultMrXTickets(), 86);
 		var blue = new Player(BLUE, defaultDetectiveTickets(), 85);
@@ -202,4 +202,31 @@ public class GameStateGameOverTest extends ParameterisedModelTestBase {
 		assertGameIsOver(state);
 		assertThat(state.getWinner()).containsExactlyInAnyOrder(BLUE, RED);
 	}
+
+	@Test public void testEveryDetectiveMovesInTheFinalRound() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 85);
+		var red = new Player(RED, defaultDetectiveTickets(), 102);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true)), mrX, blue, red);
+		state = state.advance(taxi(MRX, 86, 104));
+		state = state.advance(taxi(BLUE, 85, 68));
+		assertGameIsNotOver(state); // red has not played the final round yet
+		state = state.advance(taxi(RED, 102, 83));
+		assertGameIsOver(state);
+		assertThat(state.getWinner()).containsExactlyInAnyOrder(MRX);
+	}
+
+	@Test public void testCaptureInTheFinalRoundWinsForDetectives() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 85);
+		var red = new Player(RED, defaultDetectiveTickets(), 102);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true)), mrX, blue, red);
+		state = state.advance(taxi(MRX, 86, 103));
+		state = state.advance(taxi(BLUE, 85, 84));
+		state = state.advance(taxi(RED, 102, 103)); // MrX captured at 103 with the last move
+		assertGameIsOver(state);
+		assertThat(state.getWinner()).containsExactlyInAnyOrder(BLUE, RED);
+	}
 }
@@ -0,0 +1,91 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link GameState#zobristKey()} and structural equality of game states
+ */
+public class GameStateHashTest extends ParameterisedModelTestBase {
+
+	@Test public void testSameStateIsEqualWithSameKey() {
+		GameState a = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		GameState b = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		assertThat(a).isEqualTo(b);
+		assertThat(a.hashCode()).isEqualTo(b.hashCode());
+		assertThat(a.zobristKey()).isEqualTo(b.zobristKey());
+	}
+
+	@Test public void testDetectivesMovingInEitherOrderTranspose() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer(), bluePlayer());
+		state = state.advance(state.getAvailableMoves().asList().get(0));
+		Move red = firstMoveOf(state, RED);
+		Move green = firstMoveOf(state, GREEN);
+		assertThat(destination(red)).isNotEqualTo(destination(green));
+
+		GameState redFirst = state.advance(red).advance(green);
+		GameState greenFirst = state.advance(green).advance(red);
+		assertThat(redFirst).isEqualTo(greenFirst);
+		assertThat(redFirst.zobristKey()).isEqualTo(greenFirst.zobristKey());
+		assertThat(redFirst.zobristKey()).isNotEqualTo(state.advance(red).zobristKey());
+	}
+
+	@Test public void testDifferentStatesAreNotEqual() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				blackPlayer(), redPlayer(), greenPlayer());
+		var moves = state.getAvailableMoves().asList();
+		GameState a = state.advance(moves.get(0));
+		GameState b = state.advance(moves.get(moves.size() - 1));
+		assertThat(a).isNotEqualTo(b);
+		assertThat(a.zobristKey()).isNotEqualTo(b.zobristKey());
+		assertThat(a).isNotEqualTo(state);
+		assertThat(a.zobristKey()).isNotEqualTo(state.zobristKey());
+	}
+
+	@Test public void testIncrementalKeyMatchesSearchState() {
+		var random = new Random(11);
+		for (int game = 0; game < 20; game++) {
+			var mrX = new Player(MRX, defaultMrXTickets(),
+					ScotlandYard.generateMrXLocation(random.nextInt()));
+			var detectives = ImmutableList.of(redPlayer(), greenPlayer(), bluePlayer());
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, detectives);
+			var search = SearchState.of(standard24MoveSetup(), mrX, detectives);
+			while (true) {
+				assertThat(search.zobristKey()).isEqualTo(state.zobristKey());
+				if (!state.getWinner().isEmpty()) break;
+				var moves = state.getAvailableMoves().asList();
+				var move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(move);
+				search.make(PackedMove.encode(move));
+			}
+			while (search.ply() > 0) search.unmake();
+			assertThat(search.zobristKey()).isEqualTo(
+					gameStateFactory.build(standard24MoveSetup(), mrX, detectives).zobristKey());
+		}
+	}
+
+	private static Move firstMoveOf(GameState state, Piece piece) {
+		return state.getAvailableMoves().stream()
+				.filter(m -> m.commencedBy() == piece)
+				.findFirst().orElseThrow();
+	}
+
+	private static int destination(Move move) {
+		return PackedMove.finalDestination(PackedMove.encode(move));
+	}
+
+}
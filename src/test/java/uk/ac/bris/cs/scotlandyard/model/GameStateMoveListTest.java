@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the packed move API, see {@link PackedMove} and {@link MoveList}
+ */
+public class GameStateMoveListTest extends ParameterisedModelTestBase {
+
+	@Test public void testPackedMoveRoundTrip() {
+		for (Move move : new Move[]{
+				taxi(MRX, 1, 8),
+				secret(BLUE, 199, 128),
+				x2(MRX, 115, SECRET, 108, BUS, 105)}) {
+			assertThat(PackedMove.decode(PackedMove.encode(move))).isEqualTo(move);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPackedMoveRejectsLargeStations() {
+		PackedMove.encode(taxi(MRX, 1, 1 << 16));
+	}
+
+	@Test public void testMoveListMatchesAvailableMoves() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue);
+		assertThat(state.getAvailableMoveList().toMoves())
+				.containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+		state = state.advance(x2(MRX, 106, TAXI, 105, BUS, 87));
+		assertThat(state.getAvailableMoveList().toMoves())
+				.containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+	}
+
+	@Test public void testAdvanceWithPackedMoveMatchesAdvanceWithMove() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red);
+		var move = x2(MRX, 106, TAXI, 105, BUS, 87);
+		GameState byMove = state.advance(move);
+		GameState byPacked = state.advance(PackedMove.encode(move));
+		assertThat(byPacked.getMrXTravelLog()).isEqualTo(byMove.getMrXTravelLog());
+		assertThat(byPacked.getAvailableMoves()).isEqualTo(byMove.getAvailableMoves());
+		assertTicketCount(byPacked, MRX, 3, 2, 3, 1, 5);
+	}
+
+	@Test public void testIllegalPackedMoveShouldThrow() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red);
+		assertThatThrownBy(() -> state.advance(PackedMove.encode(taxi(RED, 91, 105))))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -1,6 +1,7 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.junit.Test;
 
@@ -8,6 +9,7 @@ import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
@@ -240,5 +242,20 @@ public class GameStateMrXAvailableMovesTest extends ParameterisedModelTestBase {
 				x2(MRX, 104, SECRET, 116, BUS, 127));
 	}
 
+	@Test public void testMrXIsNotGivenTicketsMissingFromTheTicketMap() {
+		var mrX = new Player(MRX, ImmutableMap.of(TAXI, 2), 45);
+		var red = new Player(RED, defaultDetectiveTickets(), 29);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(false, false, false)), mrX, red);
+		state = state.advance(taxi(MRX, 45, 46)).advance(bus(RED, 29, 41));
+		assertThat(state.getPlayerTickets(MRX)).get()
+				.extracting(tickets -> tickets.getCount(BUS)).isEqualTo(0);
+		assertThat(state.getAvailableMoves()).isNotEmpty().doesNotContain(
+				bus(MRX, 46, 1),
+				bus(MRX, 46, 34),
+				bus(MRX, 46, 58),
+				bus(MRX, 46, 78));
+	}
+
 
 }
@@ -2,9 +2,12 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import org.junit.Test;
 
+import java.util.List;
+
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
@@ -256,4 +259,21 @@ public class GameStatePlayerTest extends ParameterisedModelTestBase {
 		assertThat(state.getMrXTravelLog()).containsExactly(LogEntry.hidden(TAXI));
 	}
 
+	@Test public void testPlayerBulkUseMatchesUsingOneByOne() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var used = mrX.use(List.of(DOUBLE, TAXI, SECRET));
+		assertThat(used).isEqualTo(mrX.use(DOUBLE).use(TAXI).use(SECRET));
+		assertThat(used.tickets()).isEqualTo(mrX.use(DOUBLE).use(TAXI).use(SECRET).tickets());
+		assertThat(used.give(TAXI).give(DOUBLE).give(SECRET)).isEqualTo(mrX);
+		assertThat(used.hashCode()).isEqualTo(mrX.use(DOUBLE).use(TAXI).use(SECRET).hashCode());
+	}
+
+	@Test public void testPlayerBulkUseFailsWithoutChangingPlayer() {
+		var red = new Player(RED, makeTickets(1, 0, 0, 0, 0), 45);
+		assertThatThrownBy(() -> red.use(List.of(TAXI, TAXI)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(red.count(TAXI)).isEqualTo(1);
+		assertThat(red.tickets()).isEqualTo(makeTickets(1, 0, 0, 0, 0));
+	}
+
 }
@@ -0,0 +1,130 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.EndpointPair;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests {@link GraphFormat} reads the same graphs as splitting the text line by line, and that
+ * both formats survive a round trip
+ */
+public class GraphFormatTest extends ParameterisedModelTestBase {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testStandardGraphMatchesLineByLineParse() throws IOException {
+		String text = Resources.toString(Resources.getResource("graph.txt"), StandardCharsets.UTF_8);
+		var expected = parse(text);
+		assertThat(standardGraph()).isEqualTo(expected);
+		assertThat(ScotlandYard.readGraph(text)).isEqualTo(expected);
+		assertThat(ScotlandYard.readGraph(text.replace("\n", "\r\n"))).isEqualTo(expected);
+		assertThat(standardGraph().nodes()).hasSize(199);
+	}
+
+	@Test public void testChannelReadsAcrossRefills() throws IOException {
+		var builder = new StringBuilder("3000 2999\n");
+		for (int i = 1; i <= 3000; i++) builder.append(i).append('\n');
+		for (int i = 1; i < 3000; i++)
+			builder.append(i).append(' ').append(i + 1).append(i % 2 == 0 ? " taxi\n" : " BUS\n");
+		String text = builder.toString();
+		var graph = GraphFormat.readText(Channels.newChannel(
+				new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+		assertThat(graph).isEqualTo(parse(text));
+	}
+
+	@Test public void testRoundTrips() throws IOException {
+		var text = folder.getRoot().toPath().resolve("graph.txt");
+		var binary = folder.getRoot().toPath().resolve("graph.bin");
+		var again = folder.getRoot().toPath().resolve("again.txt");
+		Files.writeString(text, Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		GraphFormat.convert(text, binary);
+		GraphFormat.convert(binary, again);
+		assertThat(GraphFormat.read(binary)).isEqualTo(standardGraph());
+		assertThat(GraphFormat.read(again)).isEqualTo(standardGraph());
+		assertThat(ScotlandYard.readGraph(Files.readString(again))).isEqualTo(standardGraph());
+		assertThat(Files.size(binary)).isLessThan(Files.size(text));
+		try (var channel = Files.newByteChannel(binary)) {
+			assertThat(GraphFormat.readBinary(channel)).isEqualTo(standardGraph());
+		}
+	}
+
+	@Test public void testDamagedBinaryThrows() throws IOException {
+		var file = folder.getRoot().toPath().resolve("graph.bin");
+		try (var channel = Files.newByteChannel(file,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			GraphFormat.writeBinary(standardGraph(), channel);
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		assertThatThrownBy(() -> GraphFormat.readBinary(ByteBuffer.wrap(bytes)))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Checksum");
+		byte[] truncated = Arrays.copyOf(Files.readAllBytes(file), 100);
+		assertThatThrownBy(() -> GraphFormat.readBinary(ByteBuffer.wrap(truncated)))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testBadTextThrows() {
+		for (String text : List.of("", "3", "3 x", "1 0\n99999999999", "2 1\n1\n2\n1 2",
+				"2 1\n1\n2\n1  2 Taxi", "2 1\n1\n2\n1 2 Boat", "2 1\n1\n2\n1 2 Taxi Bus",
+				"2 1\n1\n2\n1 - Taxi")) {
+			assertThatThrownBy(() -> ScotlandYard.readGraph(text)).as(text)
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test public void testLyingHeaderThrowsWithoutAllocating() {
+		assertThatThrownBy(() -> ScotlandYard.readGraph("3 2000000000\n1\n2\n3"))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> ScotlandYard.readGraph("2000000000 1\n1\n2\n3"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	// the line by line parse the streaming reader replaced
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> parse(String content) {
+		List<String> lines = content.lines().collect(Collectors.toList());
+		String[] top = lines.get(0).split(" ");
+		int nodes = Integer.parseInt(top[0]);
+		int edges = Integer.parseInt(top[1]);
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().build();
+		int line = 1;
+		for (int i = 0; i < nodes; i++, line++)
+			if (!lines.get(line).isEmpty()) graph.addNode(Integer.parseInt(lines.get(line)));
+		for (int i = 0; i < edges; i++, line++) {
+			if (lines.get(line).isEmpty()) continue;
+			String[] s = lines.get(line).split(" ");
+			var pair = EndpointPair.unordered(Integer.parseInt(s[0]), Integer.parseInt(s[1]));
+			graph.putEdgeValue(pair, ImmutableSet.<Transport>builder()
+					.addAll(graph.edgeValueOrDefault(pair, ImmutableSet.of()))
+					.add(Transport.valueOf(s[2].toUpperCase(Locale.ENGLISH))).build());
+		}
+		return ImmutableValueGraph.copyOf(graph);
+	}
+
+}
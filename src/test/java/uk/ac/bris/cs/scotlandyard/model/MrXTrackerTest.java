@@ -0,0 +1,126 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link MrXTracker} follows MrX's log the same way the detectives would
+ */
+public class MrXTrackerTest extends ParameterisedModelTestBase {
+
+	@Test public void testRevealAndSecretMove() {
+		var tracker = new MrXTracker();
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		state = state.advance(taxi(MRX, 45, 46));
+		tracker.update(state);
+		assertThat(tracker.stations()).containsExactly(46);
+		state = state.advance(taxi(BLUE, 94, 93));
+		tracker.update(state);
+		assertThat(tracker.stations()).containsExactly(46);
+		state = state.advance(secret(MRX, 46, 47));
+		tracker.update(state);
+		var expected = along(Set.of(46), null);
+		expected.remove(93);
+		assertThat(tracker.stations()).containsExactlyInAnyOrder(Ints.toArray(expected));
+		assertThat(tracker.contains(47)).isTrue();
+	}
+
+	@Test public void testDoubleMoveFollowsBothTickets() {
+		var tracker = new MrXTracker();
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false, false)),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		state = state.advance(taxi(MRX, 45, 46)).advance(taxi(BLUE, 94, 93));
+		tracker.update(state);
+		var doubleMove = state.getAvailableMoves().stream()
+				.filter(move -> move instanceof DoubleMove)
+				.map(move -> (DoubleMove) move)
+				.filter(move -> move.ticket1 != Ticket.SECRET && move.ticket2 != Ticket.SECRET)
+				.findFirst().orElseThrow();
+		tracker.update(state.advance(doubleMove));
+		var expected = along(Set.of(46), transport(doubleMove.ticket1));
+		expected.remove(93);
+		expected = along(expected, transport(doubleMove.ticket2));
+		expected.remove(93);
+		assertThat(tracker.stations()).containsExactlyInAnyOrder(Ints.toArray(expected));
+	}
+
+	@Test public void testBoardFromAnotherLineStartsOver() {
+		GameState start = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45), redPlayer());
+		var tracker = MrXTracker.of(start.advance(taxi(MRX, 45, 46)));
+		// same length, another last entry
+		var other = start.advance(secret(MRX, 45, 32));
+		tracker.update(other);
+		assertThat(tracker.stations()).isEqualTo(MrXTracker.of(other).stations());
+		tracker.update(start);
+		assertThat(tracker.stations()).isEqualTo(MrXTracker.of(start).stations());
+	}
+
+	@Test public void testFollowsModelThroughRandomGames() {
+		var random = new Random(5);
+		for (int game = 0; game < 20; game++) {
+			var detectives = ImmutableList.of(redPlayer(), greenPlayer(), bluePlayer(),
+					whitePlayer(), yellowPlayer());
+			Model model = modelFactory.build(standard24MoveSetup(), blackPlayer(), detectives);
+			var tracker = new MrXTracker();
+			model.registerObserver(tracker);
+			int mrX = blackPlayer().location();
+			while (model.getCurrentBoard().getWinner().isEmpty()) {
+				var moves = model.getCurrentBoard().getAvailableMoves().asList();
+				var move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX())
+					mrX = PackedMove.finalDestination(PackedMove.encode(move));
+				model.chooseMove(move);
+				if (!model.getCurrentBoard().getWinner().isEmpty()) break;
+				// the tracker has seen every detective move, a fresh one only the last board
+				assertThat(tracker.contains(mrX)).isTrue();
+				assertThat(MrXTracker.of(model.getCurrentBoard()).stations())
+						.contains(tracker.stations());
+			}
+		}
+	}
+
+	private static Transport transport(Ticket ticket) {
+		return Arrays.stream(Transport.values())
+				.filter(transport -> transport.requiredTicket() == ticket)
+				.findFirst().orElseThrow();
+	}
+
+	// the stations one route away, over the transport or any transport if null
+	private static Set<Integer> along(Set<Integer> from, Transport transport) {
+		var graph = standardGraph();
+		var next = new HashSet<Integer>();
+		for (int station : from) {
+			for (int neighbour : graph.adjacentNodes(station)) {
+				var transports = graph.edgeValueOrDefault(station, neighbour, ImmutableSet.of());
+				if (transport == null || transports.contains(transport)) next.add(neighbour);
+			}
+		}
+		return next;
+	}
+
+}
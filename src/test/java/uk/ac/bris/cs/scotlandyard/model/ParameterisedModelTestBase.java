@@ -50,7 +50,7 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
  * This is not a test class and contains no tests here.
  */
 @SuppressWarnings({"DefaultAnnotationParam", "SameParameterValue"})
-@RunWith(Parameterized.class) abstract class ParameterisedModelTestBase {
+@RunWith(Parameterized.class) public abstract class ParameterisedModelTestBase {
 
 	@Parameter(0) public ScotlandYard.Factory<GameState> gameStateFactory;
 	@Parameter(1) public ScotlandYard.Factory<Model> modelFactory;
@@ -75,11 +75,12 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	/**
 	 * @return the default graph used in the actual game
 	 */
-	@Nonnull static ImmutableValueGraph<Integer, ImmutableSet<Transport>> standardGraph() {
+	@Nonnull protected static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
+	standardGraph() {
 		return defaultGraph;
 	}
 
-	@Nonnull static GameSetup standard24MoveSetup() {
+	@Nonnull protected static GameSetup standard24MoveSetup() {
 		return new GameSetup(defaultGraph, STANDARD24MOVES);
 	}
 
@@ -87,42 +88,42 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @return a working black player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultMrXTickets} and {@link ScotlandYard#MRX_LOCATIONS}
 	 */
-	@Nonnull static Player blackPlayer() {
+	@Nonnull protected static Player blackPlayer() {
 		return new Player(MRX, defaultMrXTickets(), MRX_LOCATIONS.get(0));
 	}
 	/**
 	 * @return a working red player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultDetectiveTickets} and {@link ScotlandYard#DETECTIVE_LOCATIONS}
 	 */
-	@Nonnull static Player redPlayer() {
+	@Nonnull protected static Player redPlayer() {
 		return new Player(RED, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(1));
 	}
 	/**
 	 * @return a working green player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultDetectiveTickets} and {@link ScotlandYard#DETECTIVE_LOCATIONS}
 	 */
-	@Nonnull static Player greenPlayer() {
+	@Nonnull protected static Player greenPlayer() {
 		return new Player(GREEN, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(2));
 	}
 	/**
 	 * @return a working blue player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultDetectiveTickets} and {@link ScotlandYard#DETECTIVE_LOCATIONS}
 	 */
-	@Nonnull static Player bluePlayer() {
+	@Nonnull protected static Player bluePlayer() {
 		return new Player(BLUE, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(3));
 	}
 	/**
 	 * @return a working yellow player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultDetectiveTickets} and {@link ScotlandYard#DETECTIVE_LOCATIONS}
 	 */
-	@Nonnull static Player yellowPlayer() {
+	@Nonnull protected static Player yellowPlayer() {
 		return new Player(YELLOW, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(4));
 	}
 	/**
 	 * @return a working white player with the default tickets and default location, see
 	 * {@link ScotlandYard#defaultDetectiveTickets} and {@link ScotlandYard#DETECTIVE_LOCATIONS}
 	 */
-	@Nonnull static Player whitePlayer() {
+	@Nonnull protected static Player whitePlayer() {
 		return new Player(WHITE, defaultDetectiveTickets(), DETECTIVE_LOCATIONS.get(5));
 	}
 	/**
@@ -135,7 +136,7 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param secret amount of tickets for {@link Ticket#SECRET}
 	 * @return a {@link Map} with ticket counts; never null
 	 */
-	@Nonnull static ImmutableMap<Ticket, Integer> makeTickets(
+	@Nonnull protected static ImmutableMap<Ticket, Integer> makeTickets(
 			int taxi, int bus, int underground, int x2, int secret) {
 		return ImmutableMap.of(
 				TAXI, taxi,
@@ -155,12 +156,12 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param x2 x2 ticket count
 	 * @param secret secret ticket count
 	 */
-	static void assertTicketCount(@Nonnull GameState game, @Nonnull Piece colour,
-	                              int taxi,
-	                              int bus,
-	                              int underground,
-	                              int x2,
-	                              int secret) {
+	protected static void assertTicketCount(@Nonnull GameState game, @Nonnull Piece colour,
+	                                        int taxi,
+	                                        int bus,
+	                                        int underground,
+	                                        int x2,
+	                                        int secret) {
 		ImmutableMap.of(
 				TAXI, taxi,
 				BUS, bus,
@@ -178,7 +179,7 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param moves the reveal/hidden moves as a boolean; true is reveal
 	 * @return a list of moves
 	 */
-	@Nonnull static ImmutableList<Boolean> moves(Boolean... moves) {
+	@Nonnull protected static ImmutableList<Boolean> moves(Boolean... moves) {
 		return ImmutableList.copyOf(moves);
 	}
 	/**
@@ -192,9 +193,9 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param secondDestination the second destination
 	 * @return a new double move
 	 */
-	@Nonnull static DoubleMove x2(@Nonnull Piece colour, int source,
-	                              Ticket first, int firstDestination,
-	                              Ticket second, int secondDestination) {
+	@Nonnull protected static DoubleMove x2(@Nonnull Piece colour, int source,
+	                                        Ticket first, int firstDestination,
+	                                        Ticket second, int secondDestination) {
 		return new DoubleMove(requireNonNull(colour),
 				source, requireNonNull(first), firstDestination,
 				requireNonNull(second), secondDestination);
@@ -207,7 +208,7 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param destination the destination
 	 * @return a new taxi ticket move
 	 */
-	@Nonnull static SingleMove taxi(@Nonnull Piece colour, int source, int destination) {
+	@Nonnull protected static SingleMove taxi(@Nonnull Piece colour, int source, int destination) {
 		return new SingleMove(requireNonNull(colour), source, TAXI, destination);
 	}
 	/**
@@ -218,7 +219,8 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param destination the destination
 	 * @return a new secret ticket move
 	 */
-	@Nonnull static SingleMove secret(@Nonnull Piece colour, int source, int destination) {
+	@Nonnull protected static SingleMove secret(@Nonnull Piece colour,
+	                                            int source, int destination) {
 		return new SingleMove(requireNonNull(colour), source, SECRET, destination);
 	}
 	/**
@@ -229,7 +231,7 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param destination the destination
 	 * @return a new bus ticket move
 	 */
-	@Nonnull static SingleMove bus(@Nonnull Piece colour, int source, int destination) {
+	@Nonnull protected static SingleMove bus(@Nonnull Piece colour, int source, int destination) {
 		return new SingleMove(requireNonNull(colour), source, BUS, destination);
 	}
 	/**
@@ -240,16 +242,17 @@ import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
 	 * @param destination the destination
 	 * @return a new underground ticket move
 	 */
-	@Nonnull static SingleMove underground(@Nonnull Piece colour, int source, int destination) {
+	@Nonnull protected static SingleMove underground(@Nonnull Piece colour,
+	                                                 int source, int destination) {
 		return new SingleMove(requireNonNull(colour), source, UNDERGROUND, destination);
 	}
 
-	static void assertGameIsOver(@Nonnull Board game) {
+	protected static void assertGameIsOver(@Nonnull Board game) {
 		assertThat(game.getWinner()).isNotEmpty();
 		assertThat(game.getAvailableMoves()).isEmpty(); // should be empty once winner exists
 	}
 
-	static void assertGameIsNotOver(@Nonnull Board game) {
+	protected static void assertGameIsNotOver(@Nonnull Board game) {
 		assertThat(game.getWinner()).isEmpty();
 		assertThat(game.getAvailableMoves()).isNotEmpty();
 	}
@@ -0,0 +1,202 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.generateDetectiveLocations;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.generateMrXLocation;
+
+/**
+ * Tests that {@link SearchState} follows the same rules as the game state and that
+ * {@link SearchState#unmake()} restores the state exactly
+ */
+public class SearchStateTest extends ParameterisedModelTestBase {
+
+	private static final Piece[] DETECTIVES = {RED, GREEN, BLUE, WHITE, YELLOW};
+
+	@Test public void testRandomPlayoutsMatchGameState() {
+		var random = new Random(42);
+		for (int game = 0; game < 50; game++) {
+			var detectives = new ArrayList<Player>();
+			int count = 1 + random.nextInt(DETECTIVES.length);
+			var locations = generateDetectiveLocations(random.nextInt(), count);
+			for (int i = 0; i < count; i++) {
+				// few tickets so that detectives get stuck every now and then
+				detectives.add(new Player(DETECTIVES[i],
+						makeTickets(1 + random.nextInt(11), random.nextInt(8),
+								random.nextInt(4), 0, 0), locations.get(i)));
+			}
+			var mrX = new Player(MRX, defaultMrXTickets(), generateMrXLocation(random.nextInt()));
+			GameState state = gameStateFactory.build(standard24MoveSetup(), mrX,
+					ImmutableList.copyOf(detectives));
+			var search = SearchState.of(standard24MoveSetup(), mrX,
+					ImmutableList.copyOf(detectives));
+			while (true) {
+				assertThat(search.getWinner()).isEqualTo(state.getWinner());
+				assertThat(search.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+				if (!state.getWinner().isEmpty()) break;
+				var moves = state.getAvailableMoves().asList();
+				var move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(move);
+				search.make(PackedMove.encode(move));
+			}
+		}
+	}
+
+	@Test public void testUnmakeRestoresState() {
+		var random = new Random(7);
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX,
+				redPlayer(), greenPlayer(), bluePlayer());
+		var search = SearchState.of(state);
+		var history = new ArrayList<String>();
+		var moves = new MoveList();
+		while (search.winner() == SearchState.NONE) {
+			history.add(search.toString() + search.getAvailableMoves());
+			moves.clear();
+			search.generateMoves(moves);
+			search.make(moves.get(random.nextInt(moves.size())));
+		}
+		while (search.ply() > 0) {
+			search.unmake();
+			assertThat(search.toString() + search.getAvailableMoves())
+					.isEqualTo(history.remove(history.size() - 1));
+		}
+		assertThat(search.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+	}
+
+	@Test public void testSeedFromBoardWithHiddenMrX() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, redPlayer())
+				.advance(taxi(MRX, 106, 105));
+		assertThatThrownBy(() -> SearchState.of(state))
+				.isInstanceOf(IllegalArgumentException.class);
+		var search = SearchState.of(state, 105);
+		assertThat(search.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+		assertThat(search.round()).isEqualTo(1);
+	}
+
+	@Test public void testStuckDetectiveKeepsItsTurnWhenSeeded() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 170);
+		var red = new Player(RED, defaultDetectiveTickets(), 46);
+		// blue's only route is the underground to 46, where red stands
+		var blue = new Player(BLUE, makeTickets(0, 0, 4, 0, 0), 1);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue)
+				.advance(taxi(MRX, 170, 159));
+		var search = SearchState.of(state, 159);
+		assertThat(search.isRemaining(search.playerCount() - 1)).isTrue();
+		search.make(PackedMove.encode(taxi(RED, 46, 47)));
+		state = state.advance(taxi(RED, 46, 47));
+		assertThat(search.getAvailableMoves())
+				.isEqualTo(state.getAvailableMoves())
+				.containsExactly(underground(BLUE, 1, 46));
+	}
+
+	@Test public void testRoundsAreEveryDistinctOutcome() {
+		var random = new Random(3);
+		var rounds = new JointMoveList();
+		for (int game = 0; game < 40; game++) {
+			// detectives crowded around one station so that they get in each other's way
+			var graph = standardGraph();
+			int start = 1 + random.nextInt(graph.nodes().size());
+			var locations = new ArrayList<Integer>(List.of(start));
+			for (int i = 0; locations.size() < 5 && i < locations.size(); i++)
+				for (int next : graph.adjacentNodes(locations.get(i)))
+					if (locations.size() < 5 && !locations.contains(next)) locations.add(next);
+			var detectives = new ArrayList<Player>();
+			int count = Math.min(locations.size(), 2 + random.nextInt(3));
+			for (int i = 0; i < count; i++) {
+				detectives.add(new Player(DETECTIVES[i], makeTickets(1 + random.nextInt(4),
+						random.nextInt(3), random.nextInt(2), 0, 0), locations.get(i)));
+			}
+			int mrXLocation;
+			do mrXLocation = 1 + random.nextInt(graph.nodes().size());
+			while (locations.subList(0, count).contains(mrXLocation));
+			var search = SearchState.of(standard24MoveSetup(),
+					new Player(MRX, defaultMrXTickets(), mrXLocation),
+					ImmutableList.copyOf(detectives));
+			var moves = new MoveList();
+			while (search.winner() == SearchState.NONE) {
+				if (!search.isMrXTurn()) {
+					var outcomes = new HashSet<Long>();
+					var captures = new HashSet<Long>();
+					everyOrder(search, outcomes, captures);
+					rounds.clear();
+					search.generateRounds(rounds, false);
+					var keys = new HashSet<Long>();
+					for (int i = 0; i < rounds.size(); i++) {
+						long key = search.zobristKey();
+						search.makeRound(rounds, i);
+						assertThat(search.zobristKey()).isEqualTo(rounds.key(i));
+						assertThat(search.isMrXTurn() || search.winner() != SearchState.NONE)
+								.isTrue();
+						boolean capture = search.winner() == SearchState.DETECTIVES;
+						search.unmakeRound(rounds, i);
+						assertThat(search.zobristKey()).isEqualTo(key);
+						if (capture) assertThat(captures).contains(rounds.key(i));
+						else keys.add(rounds.key(i));
+					}
+					assertThat(keys).isEqualTo(outcomes);
+					assertThat(keys.size() < rounds.size()).isEqualTo(!captures.isEmpty());
+
+					var pruned = new JointMoveList();
+					search.generateRounds(pruned, true);
+					for (int i = 0; i < pruned.size(); i++)
+						assertThat(Sets.union(outcomes, captures)).contains(pruned.key(i));
+					assertThat(pruned.size()).isPositive().isLessThanOrEqualTo(rounds.size());
+				}
+				moves.clear();
+				search.generateMoves(moves);
+				search.make(moves.get(random.nextInt(moves.size())));
+			}
+		}
+	}
+
+	// the keys at the end of the round for every order the detectives can move in
+	private static void everyOrder(SearchState search, Set<Long> outcomes, Set<Long> captures) {
+		if (search.winner() == SearchState.DETECTIVES) {
+			captures.add(search.zobristKey());
+			return;
+		}
+		if (search.isMrXTurn() || search.winner() != SearchState.NONE) {
+			outcomes.add(search.zobristKey());
+			return;
+		}
+		var moves = new MoveList();
+		search.generateMoves(moves);
+		for (int i = 0; i < moves.size(); i++) {
+			search.make(moves.get(i));
+			everyOrder(search, outcomes, captures);
+			search.unmake();
+		}
+	}
+
+	@Test public void testIllegalMoveShouldThrow() {
+		var search = SearchState.of(standard24MoveSetup(), blackPlayer(),
+				ImmutableList.of(redPlayer()));
+		assertThatThrownBy(() -> search.make(PackedMove.encode(taxi(RED, 29, 41))))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(search::unmake).isInstanceOf(IllegalStateException.class);
+	}
+
+}
@@ -0,0 +1,217 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests {@link Tablebase} agrees with playing out every line of the game itself
+ */
+public class TablebaseTest extends ParameterisedModelTestBase {
+
+	// a ring with a bus shortcut, an underground line and a ferry only MrX can take
+	private static final ImmutableValueGraph<Integer, ImmutableSet<Transport>> SMALL_GRAPH =
+			ScotlandYard.readGraph("7 9\n1\n2\n3\n4\n5\n6\n7\n" +
+					"1 2 Taxi\n2 3 Taxi\n3 4 Taxi\n4 5 Taxi\n5 1 Taxi\n" +
+					"1 6 Bus\n6 7 Taxi\n7 3 Underground\n2 7 Ferry\n");
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testSmallGraphMatchesGame() {
+		var tablebase = Tablebase.solve(CompiledGraph.of(SMALL_GRAPH), 2, 3, 1);
+		for (int slots = 1; slots <= 3; slots++) {
+			for (int doubles = 0; doubles <= 1; doubles++) {
+				for (int x : SMALL_GRAPH.nodes()) {
+					for (int d1 : SMALL_GRAPH.nodes()) {
+						for (int d2 : SMALL_GRAPH.nodes()) {
+							if (x == d1 || x == d2 || d1 == d2) continue;
+							assertThat(tablebase.value(slots, doubles, x, d1, d2))
+									.as("%d slots, %d doubles, MrX %d, detectives %d %d",
+											slots, doubles, x, d1, d2)
+									.isEqualTo(play(SMALL_GRAPH, slots, doubles, x, d1, d2));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test public void testStandardGraphMatchesGame() {
+		var tablebase = Tablebase.solve(CompiledGraph.of(standardGraph()), 1, 2, 1);
+		var random = new Random(3);
+		var stations = new ArrayList<>(standardGraph().nodes());
+		for (int i = 0; i < 40; i++) {
+			Collections.shuffle(stations, random);
+			int x = stations.get(0);
+			// close enough that some of them are lost
+			int d = standardGraph().adjacentNodes(x).stream()
+					.filter(v -> random.nextBoolean()).findFirst().orElse(stations.get(1));
+			for (int doubles = 0; doubles <= 1; doubles++) {
+				assertThat(tablebase.value(2, doubles, x, d))
+						.as("%d doubles, MrX %d, detective %d", doubles, x, d)
+						.isEqualTo(play(standardGraph(), 2, doubles, x, d));
+			}
+		}
+	}
+
+	@Test public void testWinningMoveKeepsTheWin() {
+		var tablebase = Tablebase.solve(CompiledGraph.of(SMALL_GRAPH), 2, 3, 1);
+		int won = 0;
+		for (int x : SMALL_GRAPH.nodes()) {
+			for (int d1 : SMALL_GRAPH.nodes()) {
+				for (int d2 : SMALL_GRAPH.nodes()) {
+					if (x == d1 || x == d2 || d1 == d2) continue;
+					GameState state = state(SMALL_GRAPH, 3, 1, x, d1, d2);
+					assertThat(tablebase.covers(state)).isTrue();
+					var move = tablebase.winningMove(state);
+					assertThat(move.isPresent()).isEqualTo(tablebase.value(3, 1, x, d1, d2) == 0);
+					if (move.isEmpty()) continue;
+					won++;
+					assertThat(state.getAvailableMoves()).contains(move.get());
+					int to = PackedMove.finalDestination(PackedMove.encode(move.get()));
+					assertThat(value(state.advance(move.get()), to, 0, new HashMap<>())).isZero();
+				}
+			}
+		}
+		assertThat(won).isPositive();
+	}
+
+	@Test public void testCoversChecksTickets() {
+		var tablebase = Tablebase.solve(CompiledGraph.of(SMALL_GRAPH), 2, 3, 1);
+		var setup = new GameSetup(SMALL_GRAPH, moves(false, false, false));
+		assertThat(tablebase.covers(gameStateFactory.build(setup,
+				new Player(MRX, makeTickets(0, 0, 0, 1, 3), 1),
+				new Player(RED, makeTickets(3, 3, 3, 0, 0), 3),
+				new Player(GREEN, makeTickets(3, 3, 3, 0, 0), 5)))).isTrue();
+		assertThat(tablebase.covers(gameStateFactory.build(setup,
+				new Player(MRX, makeTickets(3, 3, 3, 1, 2), 1),
+				new Player(RED, makeTickets(3, 3, 3, 0, 0), 3),
+				new Player(GREEN, makeTickets(3, 3, 3, 0, 0), 5)))).isFalse();
+		assertThat(tablebase.covers(gameStateFactory.build(setup,
+				new Player(MRX, makeTickets(0, 0, 0, 1, 3), 1),
+				new Player(RED, makeTickets(3, 2, 3, 0, 0), 3),
+				new Player(GREEN, makeTickets(3, 3, 3, 0, 0), 5)))).isFalse();
+		assertThat(tablebase.covers(gameStateFactory.build(
+				new GameSetup(SMALL_GRAPH, moves(false, false, false, false)),
+				new Player(MRX, makeTickets(0, 0, 0, 1, 4), 1),
+				new Player(RED, makeTickets(4, 4, 4, 0, 0), 3),
+				new Player(GREEN, makeTickets(4, 4, 4, 0, 0), 5)))).isFalse();
+	}
+
+	@Test public void testSaveAndLoad() throws IOException {
+		var graph = CompiledGraph.of(SMALL_GRAPH);
+		var tablebase = Tablebase.solve(graph, 2, 3, 1);
+		var file = folder.getRoot().toPath().resolve(Tablebase.fileName(graph, 2));
+		tablebase.save(file);
+		var loaded = Tablebase.load(file, graph);
+		assertThat(loaded.slots()).isEqualTo(3);
+		assertThat(loaded.doubles()).isEqualTo(1);
+		for (int x : SMALL_GRAPH.nodes())
+			for (int d1 : SMALL_GRAPH.nodes())
+				for (int d2 : SMALL_GRAPH.nodes()) {
+					if (x == d1 || x == d2 || d1 == d2) continue;
+					for (int slots = 1; slots <= 3; slots++)
+						assertThat(loaded.value(slots, 1, x, d1, d2))
+								.isEqualTo(tablebase.value(slots, 1, x, d1, d2));
+				}
+
+		assertThatThrownBy(() -> Tablebase.load(file, CompiledGraph.of(standardGraph())))
+				.isInstanceOf(IOException.class);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> Tablebase.load(file, graph))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Checksum");
+	}
+
+	private GameState state(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                        int slots, int doubles, int x, int... detectives) {
+		var reveals = new Boolean[slots];
+		Arrays.fill(reveals, false);
+		var pieces = ImmutableList.of(RED, GREEN);
+		var players = new ArrayList<Player>();
+		for (int i = 0; i < detectives.length; i++)
+			players.add(new Player(pieces.get(i), makeTickets(slots, slots, slots, 0, 0),
+					detectives[i]));
+		return gameStateFactory.build(new GameSetup(graph, ImmutableList.copyOf(reveals)),
+				new Player(MRX, makeTickets(slots, slots, slots, doubles, slots), x),
+				ImmutableList.copyOf(players));
+	}
+
+	private int play(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                 int slots, int doubles, int x, int... detectives) {
+		return value(state(graph, slots, doubles, x, detectives), x, 0, new HashMap<>());
+	}
+
+	// the value of the state counting the round under way as the first, with the number of
+	// detectives that have moved in it; every line is played out through the model
+	private static int value(GameState state, int mrX, int moved, Map<List<Object>, Integer> seen) {
+		var winner = state.getWinner();
+		if (!winner.isEmpty()) return winner.contains(MRX) ? 0 : 1;
+		var key = new ArrayList<Object>();
+		key.add(mrX);
+		key.add(moved);
+		key.add(state.getMrXTravelLog().size());
+		key.add(state.getPlayerTickets(MRX).orElseThrow().getCount(ScotlandYard.Ticket.DOUBLE));
+		for (Piece piece : state.getPlayers())
+			if (piece.isDetective())
+				key.add(state.getDetectiveLocation((Piece.Detective) piece).orElseThrow());
+		state.getAvailableMoves().forEach(move -> key.add(move.commencedBy()));
+		var cached = seen.get(key);
+		if (cached != null) return cached;
+		boolean mrXToMove = state.getAvailableMoves().iterator().next().commencedBy().isMrX();
+		int best = -1;
+		for (Move move : state.getAvailableMoves()) {
+			var next = state.advance(move);
+			int result;
+			if (mrXToMove) {
+				int to = PackedMove.finalDestination(PackedMove.encode(move));
+				result = key(value(next, to, 0, seen));
+			} else if (!next.getWinner().isEmpty()) {
+				// a detective caught MrX, or MrX cannot move in the next round
+				result = key(next.getWinner().contains(MRX) ? 0 : caught(next, mrX) ? 1 : 2);
+			} else if (next.getAvailableMoves().iterator().next().commencedBy().isMrX()) {
+				int after = value(next, mrX, 0, seen);
+				result = key(after == 0 ? 0 : after + 1);
+			} else {
+				result = key(value(next, mrX, moved + 1, seen));
+			}
+			if (best == -1 || (mrXToMove ? result > best : result < best)) best = result;
+		}
+		int value = best == Integer.MAX_VALUE ? 0 : best;
+		seen.put(key, value);
+		return value;
+	}
+
+	private static boolean caught(Board board, int mrX) {
+		return board.getPlayers().stream().filter(Piece::isDetective).anyMatch(piece ->
+				board.getDetectiveLocation((Piece.Detective) piece).orElseThrow() == mrX);
+	}
+
+	private static int key(int value) { return value == 0 ? Integer.MAX_VALUE : value; }
+
+}
@@ -0,0 +1,125 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTables.Mode;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link TicketReachability} agrees with trying every sequence of tickets
+ */
+public class TicketReachabilityTest extends ParameterisedModelTestBase {
+
+	private static final int[] SOURCES = {1, 46, 108, 115, 157, 199};
+	private static final Transport[] ROUTES =
+			{Transport.TAXI, Transport.BUS, Transport.UNDERGROUND};
+
+	@Test public void testPlentifulTicketsMatchDistanceTables() {
+		var graph = CompiledGraph.of(standardGraph());
+		var reachability = TicketReachability.of(graph);
+		var tables = DistanceTables.of(graph);
+		TicketBoard detective = tickets(Map.of(Ticket.TAXI, 99, Ticket.BUS, 99,
+				Ticket.UNDERGROUND, 99));
+		TicketBoard secret = tickets(Map.of(Ticket.SECRET, 99));
+		for (int source : SOURCES) {
+			for (int target : standardGraph().nodes()) {
+				assertThat(reachability.minMoves(source, detective, target))
+						.isEqualTo(tables.distance(Mode.DETECTIVE, source, target));
+				assertThat(reachability.minMoves(source, secret, target))
+						.isEqualTo(tables.distance(Mode.ANY, source, target));
+			}
+		}
+	}
+
+	@Test public void testBudgetMatchesExhaustiveSearch() {
+		var reachability = TicketReachability.of(CompiledGraph.of(standardGraph()));
+		var budgets = new int[][]{{1, 1, 1, 0}, {2, 0, 1, 1}, {0, 2, 2, 0}, {3, 1, 0, 1}};
+		for (int[] budget : budgets) {
+			var tickets = tickets(Map.of(Ticket.TAXI, budget[0], Ticket.BUS, budget[1],
+					Ticket.UNDERGROUND, budget[2], Ticket.SECRET, budget[3]));
+			for (int source : SOURCES) {
+				var expected = new int[200];
+				Arrays.fill(expected, TicketReachability.UNREACHABLE);
+				explore(source, budget.clone(), 0, expected);
+				for (int target : standardGraph().nodes()) {
+					assertThat(reachability.minMoves(source, tickets, target))
+							.as("from %d to %d with %s", source, target,
+									Arrays.toString(budget))
+							.isEqualTo(expected[target]);
+				}
+			}
+		}
+	}
+
+	@Test public void testSingleTaxiTicketOnlyReachesTaxiNeighbours() {
+		var reachability = TicketReachability.of(CompiledGraph.of(standardGraph()));
+		var tickets = tickets(Map.of(Ticket.TAXI, 1, Ticket.BUS, 0));
+		var expected = new HashSet<>(Set.of(46));
+		for (int v : standardGraph().adjacentNodes(46))
+			if (standardGraph().edgeValue(46, v).orElseThrow().contains(Transport.TAXI))
+				expected.add(v);
+		assertThat(reachability.within(46, tickets, 5))
+				.containsExactlyInAnyOrder(Ints.toArray(expected));
+	}
+
+	@Test public void testCanReachRespectsMoves() {
+		var reachability = TicketReachability.of(CompiledGraph.of(standardGraph()));
+		var player = new Player(RED, makeTickets(11, 8, 4, 0, 0), 1);
+		int moves = reachability.minMoves(player, 199);
+		assertThat(moves).isBetween(1, TicketReachability.UNREACHABLE - 1);
+		var tickets = TicketReachability.tickets(player);
+		assertThat(reachability.canReach(1, tickets, 199, moves)).isTrue();
+		assertThat(reachability.canReach(1, tickets, 199, moves - 1)).isFalse();
+		var broke = TicketReachability.tickets(new Player(RED, makeTickets(0, 0, 0, 0, 0), 1));
+		assertThat(reachability.canReach(1, broke, 199, 100)).isFalse();
+		assertThat(reachability.minMoves(1, broke, 1)).isZero();
+	}
+
+	@Test public void testNearestDetectiveCountsTickets() {
+		var board = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, makeTickets(0, 0, 0, 0, 0), 46),
+				new Player(BLUE, makeTickets(11, 8, 4, 0, 0), 128));
+		var reachability = TicketReachability.of(board);
+		assertThat(reachability.nearestDetective(board, 46)).isZero();
+		assertThat(reachability.nearestDetective(board, 45)).isEqualTo(
+				DistanceTables.of(board).distance(Mode.DETECTIVE, 128, 45));
+	}
+
+	private static TicketBoard tickets(Map<Ticket, Integer> counts) {
+		return ticket -> counts.getOrDefault(ticket, 0);
+	}
+
+	// tries every sequence of tickets the budget allows
+	private static void explore(int station, int[] budget, int moves, int[] best) {
+		best[station] = Math.min(best[station], moves);
+		for (int v : standardGraph().adjacentNodes(station)) {
+			ImmutableSet<Transport> transports =
+					standardGraph().edgeValueOrDefault(station, v, ImmutableSet.of());
+			for (int t = 0; t < budget.length; t++) {
+				if (budget[t] == 0) continue;
+				if (t < ROUTES.length && !transports.contains(ROUTES[t])) continue;
+				budget[t]--;
+				explore(v, budget, moves + 1, best);
+				budget[t]++;
+			}
+		}
+	}
+
+}
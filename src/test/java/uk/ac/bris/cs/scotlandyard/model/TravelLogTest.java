@@ -0,0 +1,61 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link TravelLog} and that game states keep their travel logs apart
+ */
+public class TravelLogTest extends ParameterisedModelTestBase {
+
+	@Test public void testAppendKeepsTheOriginalLog() {
+		var first = TravelLog.empty().append(LogEntry.hidden(TAXI));
+		var a = first.append(LogEntry.reveal(BUS, 46));
+		var b = first.append(LogEntry.hidden(SECRET));
+		assertThat(first.asList()).containsExactly(LogEntry.hidden(TAXI));
+		assertThat(a.asList()).containsExactly(LogEntry.hidden(TAXI), LogEntry.reveal(BUS, 46));
+		assertThat(b.asList()).containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(SECRET));
+		assertThat(a.get(0)).isSameAs(b.get(0));
+		assertThat(a.get(1)).isEqualTo(LogEntry.reveal(BUS, 46));
+		assertThatThrownBy(() -> a.get(2)).isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void testEqualityIsStructural() {
+		var entries = ImmutableList.of(LogEntry.hidden(TAXI), LogEntry.reveal(BUS, 46));
+		var a = TravelLog.of(entries);
+		var b = TravelLog.empty().append(LogEntry.hidden(TAXI)).append(LogEntry.reveal(BUS, 46));
+		assertThat(a).isEqualTo(b);
+		assertThat(a.hashCode()).isEqualTo(b.hashCode()).isEqualTo(entries.hashCode());
+		assertThat(a).isNotEqualTo(TravelLog.of(entries.reverse()));
+		assertThat(a).isNotEqualTo(TravelLog.of(entries.subList(0, 1)));
+	}
+
+	@Test public void testSiblingStatesHaveTheirOwnLog() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(true, false)), mrX, blue);
+		GameState a = state.advance(taxi(MRX, 45, 46));
+		GameState b = state.advance(secret(MRX, 45, 46));
+		assertThat(state.getMrXTravelLog()).isEmpty();
+		assertThat(a.getMrXTravelLog()).containsExactly(LogEntry.reveal(TAXI, 46));
+		assertThat(b.getMrXTravelLog()).containsExactly(LogEntry.reveal(SECRET, 46));
+		a = a.advance(taxi(BLUE, 94, 93));
+		assertThat(a.advance(a.getAvailableMoves().asList().get(0)).getMrXTravelLog())
+				.hasSize(2).startsWith(LogEntry.reveal(TAXI, 46));
+	}
+
+}